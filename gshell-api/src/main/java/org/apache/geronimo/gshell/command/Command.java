@@ -32,10 +32,19 @@ public interface Command
     /** Standard command failure status code. */
     int FAILURE = -1;
 
+    /** Status code of a command which was aborted for running longer than its timeout; as of the <tt>timeout</tt> utility. */
+    int TIMEOUT = 124;
+
     String getName();
 
     void init(CommandContext context); // throws Exception ?
 
+    /**
+     * Execute the command.
+     *
+     * @return  A status code; or the objects for the next command of a pipeline, as an
+     *          {@link ObjectStream}.  See {@link ObjectConsumer}.
+     */
     Object execute(Object... args) throws Exception;
     
     void abort(); // throws Exception ?
@@ -20,8 +20,10 @@
 package org.apache.geronimo.gshell.command;
 
 import org.apache.geronimo.gshell.util.Arguments;
+import org.apache.geronimo.gshell.util.Durations;
 import org.apache.commons.lang.NullArgumentException;
 
+import java.lang.ref.WeakReference;
 import java.util.Properties;
 
 /**
@@ -41,6 +43,12 @@ public class CommandDefinition
 
     private final String category;
 
+    private final boolean reusable;
+
+    private final long timeout;
+
+    private volatile ResolvedClass resolved;
+
     public CommandDefinition(final Properties props) throws InvalidDefinitionException {
         if (props == null) {
             throw new NullArgumentException("props");
@@ -64,6 +72,23 @@ public class CommandDefinition
         if (category == null) {
             throw new MissingPropertyException("category", props);
         }
+
+        // Commands are reusable unless the definition opts out
+        String tmp = props.getProperty("reusable");
+        this.reusable = tmp == null || Boolean.valueOf(tmp.trim());
+
+        tmp = props.getProperty("timeout");
+        if (tmp == null) {
+            this.timeout = -1;
+        }
+        else {
+            try {
+                this.timeout = Durations.parse(tmp);
+            }
+            catch (IllegalArgumentException e) {
+                throw new InvalidDefinitionException("Invalid timeout: " + tmp);
+            }
+        }
     }
 
     public String toString() {
@@ -71,6 +96,8 @@ public class CommandDefinition
                 "{ aliases=" + Arguments.asString(getAliases()) +
                 ", enabled=" + enabled +
                 ", category=" + category +
+                ", reusable=" + reusable +
+                ", timeout=" + timeout +
                 " }";
     }
 
@@ -114,9 +141,104 @@ public class CommandDefinition
         return category;
     }
 
-    public Class loadClass() throws ClassNotFoundException {
-        ClassLoader cl = Thread.currentThread().getContextClassLoader();
-        return cl.loadClass(getClassName());
+    /**
+     * Determine if command instances may be reused for more than one execution.
+     *
+     * <p>
+     * Commands which keep per-invocation state that is not reset when processing the
+     * command-line should set the <tt>reusable</tt> property to <tt>false</tt>.
+     *
+     * @return  True if instances may be pooled; else false for a new instance per execution.
+     */
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * Get the time the command may run before it is aborted, which overrides the default of the shell.
+     *
+     * <p>
+     * Commands which wait for others, or are meant to block, should set the <tt>timeout</tt>
+     * property to <tt>0</tt> to never time out.
+     *
+     * @return  The timeout in milliseconds; 0 for none, or -1 if not set to use the default
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public Class<?> loadClass() throws ClassNotFoundException {
+        return loadClass(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Load the command class from the given class loader.
+     *
+     * <p>
+     * The class last loaded is remembered, and returned again as long as the same class loader is given.
+     * Both are only weakly referenced, so a discarded class loader can still be collected.
+     *
+     * @param cl    The class loader to load the command class from; must not be null
+     * @return      The command class
+     *
+     * @throws ClassNotFoundException   The command class could not be found
+     */
+    public Class<?> loadClass(final ClassLoader cl) throws ClassNotFoundException {
+        if (cl == null) {
+            throw new NullArgumentException("cl");
+        }
+
+        ResolvedClass tmp = resolved;
+        if (tmp != null) {
+            Class<?> type = tmp.get(cl);
+            if (type != null) {
+                return type;
+            }
+        }
+
+        Class<?> type = cl.loadClass(getClassName());
+        resolved = new ResolvedClass(cl, type);
+
+        return type;
+    }
+
+    /**
+     * Get the command class last loaded from the given class loader, without loading it.
+     *
+     * @param cl    The class loader the command class was loaded from; must not be null
+     * @return      The command class; or null if it has not been loaded from that class loader
+     */
+    public Class<?> getLoadedClass(final ClassLoader cl) {
+        if (cl == null) {
+            throw new NullArgumentException("cl");
+        }
+
+        ResolvedClass tmp = resolved;
+
+        return tmp != null ? tmp.get(cl) : null;
+    }
+
+    /**
+     * Weakly holds a command class and the class loader it was loaded from.
+     */
+    private static class ResolvedClass
+    {
+        private final WeakReference<ClassLoader> loader;
+
+        private final WeakReference<Class<?>> type;
+
+        public ResolvedClass(final ClassLoader loader, final Class<?> type) {
+            this.loader = new WeakReference<ClassLoader>(loader);
+            this.type = new WeakReference<Class<?>>(type);
+        }
+
+        public Class<?> get(final ClassLoader cl) {
+            if (loader.get() != cl) {
+                return null;
+            }
+
+            return type.get();
+        }
     }
 
     //
@@ -31,6 +31,7 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.geronimo.gshell.console.IO;
 import org.apache.geronimo.gshell.util.Arguments;
 
+import java.io.File;
 import java.util.Iterator;
 
 /**
@@ -198,6 +199,45 @@ public abstract class CommandSupport
         return getCommandContext().getMessageSource();
     }
 
+    /**
+     * @see ObjectConsumerContext#getInput
+     */
+    protected Iterator<Object> getInput() {
+        CommandContext context = getCommandContext();
+
+        return context instanceof ObjectConsumerContext ? ((ObjectConsumerContext)context).getInput() : null;
+    }
+
+    /**
+     * Get the working directory of the shell, which the daemon sets to that of the client it
+     * runs the command for.
+     *
+     * @return  The working directory; or null if not set, to use that of the JVM
+     */
+    protected File getWorkingDirectory() {
+        Object cwd = getVariables().get("gshell.cwd");
+
+        return cwd != null ? new File(String.valueOf(cwd)) : null;
+    }
+
+    /**
+     * Resolve a file name given to the command against the {@link #getWorkingDirectory working directory}.
+     */
+    protected File resolveFile(final String name) {
+        if (name == null) {
+            throw new NullArgumentException("name");
+        }
+
+        File file = new File(name);
+        if (file.isAbsolute()) {
+            return file;
+        }
+
+        File dir = getWorkingDirectory();
+
+        return dir != null ? new File(dir, name) : file;
+    }
+
     //
     // Execute Helpers
     //
@@ -220,7 +260,7 @@ public abstract class CommandSupport
             // Handle the command-line
             Options options = getOptions();
             CommandLineParser parser = new PosixParser();
-            CommandLine line = parser.parse(options, Arguments.toStringArray(args));
+            CommandLine line = parser.parse(options, Arguments.toStringArray(args), isStopAtNonOption());
 
             // First check for help flags
             boolean usage = line.hasOption('h');
@@ -304,6 +344,17 @@ public abstract class CommandSupport
         return false;
     }
 
+    /**
+     * Check if option processing stops at the first argument which is not an option, so the
+     * rest are passed on as they are; as for commands which run another command.
+     *
+     * <p>
+     * The default is to process options anywhere on the command-line.
+     */
+    protected boolean isStopAtNonOption() {
+        return false;
+    }
+
     /**
      * Get the command-line options to process.
      *
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.command;
+
+/**
+ * Marker for a {@link Command} which takes the objects produced by the previous command of
+ * a pipeline, from {@link ObjectConsumerContext#getInput}, instead of its text output.
+ *
+ * <p>
+ * A command produces objects by returning an {@link ObjectStream} from {@link Command#execute}.
+ * When the next command of the pipeline is not a consumer, or there is no next command, the
+ * objects are written as text instead; one per line.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface ObjectConsumer
+{
+    // Marker
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.command;
+
+import java.util.Iterator;
+
+/**
+ * A {@link CommandContext} which also provides the objects of the previous command of a pipeline.
+ *
+ * <p>
+ * Kept apart from {@link CommandContext}, so existing implementations of it are unaffected;
+ * the shell gives all commands a context of this type.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface ObjectConsumerContext
+    extends CommandContext
+{
+    /**
+     * Objects produced by the previous command of a pipeline, read lazily as the iterator advances.
+     *
+     * @return  The objects; or null unless the command is an {@link ObjectConsumer} fed by a pipeline
+     */
+    Iterator<Object> getInput();
+}
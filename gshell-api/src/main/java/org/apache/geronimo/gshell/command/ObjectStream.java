@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.command;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Objects which a {@link Command} returns for the next command of a pipeline, instead of a status code.
+ *
+ * <p>
+ * Only results wrapped in a stream are taken for objects; a command returning an array or
+ * a collection as it is keeps doing so.  An iterator is only advanced once the command has
+ * completed, so it must not depend on the state of the command.
+ *
+ * @see ObjectConsumer
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ObjectStream
+{
+    private final Iterator<?> iterator;
+
+    public ObjectStream(final Iterator<?> iterator) {
+        if (iterator == null) {
+            throw new NullArgumentException("iterator");
+        }
+
+        this.iterator = iterator;
+    }
+
+    public ObjectStream(final Iterable<?> objects) {
+        this(objects == null ? null : objects.iterator());
+    }
+
+    public ObjectStream(final Object[] objects) {
+        this(objects == null ? null : Arrays.asList(objects).iterator());
+    }
+
+    /**
+     * Iterate the objects; only once, as they may be produced while iterating.
+     */
+    @SuppressWarnings("unchecked")
+    public Iterator<Object> iterator() {
+        return (Iterator<Object>)iterator;
+    }
+
+    public String toString() {
+        return "ObjectStream{ " + iterator + " }";
+    }
+}
@@ -21,20 +21,72 @@ package org.apache.geronimo.gshell.console;
 
 import org.apache.commons.lang.NullArgumentException;
 
+import java.io.BufferedWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
 
 /**
  * Container for input/output handles.
  *
+ * <p>
+ * How often the output writers are flushed depends on the {@link FlushPolicy}.  Buffered
+ * output is flushed when a command completes, before the prompt is displayed, before
+ * anything is written to the error output (so the two come out in order), on {@link #flush},
+ * and every so often by a background thread, so output of a command which is still running
+ * shows up in time.
+ *
  * @version $Rev$ $Date$
  */
 public class IO
 {
+    /**
+     * System property to configure the default flush policy; the name of a {@link FlushPolicy}.
+     */
+    public static final String FLUSH_POLICY_PROPERTY = IO.class.getName() + ".flushPolicy";
+
+    /**
+     * System property to configure the size in chars of buffered output.
+     */
+    public static final String BUFFER_SIZE_PROPERTY = IO.class.getName() + ".bufferSize";
+
+    /**
+     * System property to configure the milliseconds between flushes of buffered output; 0 to disable.
+     */
+    public static final String FLUSH_INTERVAL_PROPERTY = IO.class.getName() + ".flushInterval";
+
+    public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;
+
+    /**
+     * When the output writers are flushed.
+     */
+    public static enum FlushPolicy
+    {
+        /** Flush on every <tt>println</tt>. */
+        LINE,
+
+        /** Flush only once the buffer is full, or as described for {@link IO}. */
+        BUFFERED;
+
+        public static FlushPolicy getDefault() {
+            String value = System.getProperty(FLUSH_POLICY_PROPERTY);
+
+            return value == null ? BUFFERED : valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final FlushPolicy flushPolicy;
+
+    /** The buffer of the output; when it is buffered. */
+    private BufferedOutputWriter buffer;
+
     /**
      * Raw input stream.
      *
@@ -79,6 +131,18 @@ public class IO
      * @param err   The error output stream; must not be null
      */
     public IO(final InputStream in, final OutputStream out, final OutputStream err) {
+        this(in, out, err, FlushPolicy.getDefault());
+    }
+
+    /**
+     * Construct a new IO container.
+     *
+     * @param in            The input steam; must not be null
+     * @param out           The output stream; must not be null
+     * @param err           The error output stream; must not be null
+     * @param flushPolicy   When to flush the output writers; must not be null
+     */
+    public IO(final InputStream in, final OutputStream out, final OutputStream err, final FlushPolicy flushPolicy) {
         if (in == null) {
             throw new NullArgumentException("in");
         }
@@ -88,14 +152,30 @@ public class IO
         if (err == null) {
             throw new NullArgumentException("err");
         }
+        if (flushPolicy == null) {
+            throw new NullArgumentException("flushPolicy");
+        }
 
         this.inputStream = in;
         this.outputStream = out;
         this.errorStream = err;
+        this.flushPolicy = flushPolicy;
 
         this.in = new InputStreamReader(in);
-        this.out = new PrintWriter(out, true);
-        this.err = new PrintWriter(err, true);
+
+        if (flushPolicy == FlushPolicy.LINE) {
+            this.out = new PrintWriter(out, true);
+            this.err = new PrintWriter(err, true);
+        }
+        else {
+            int size = Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE).intValue();
+
+            this.buffer = new BufferedOutputWriter(new OutputStreamWriter(out), size);
+            this.out = new PrintWriter(buffer);
+            this.err = new PrintWriter(new OrderedWriter(new OutputStreamWriter(err)), true);
+
+            IntervalFlusher.register(this);
+        }
     }
 
     /**
@@ -115,6 +195,26 @@ public class IO
         this(System.in, System.out, System.err);
     }
 
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    /**
+     * Determine if anything has been written to the buffered output since it was last flushed.
+     */
+    boolean isWritten() {
+        return buffer != null && buffer.written;
+    }
+
+    /**
+     * Flush the output, if anything has been written to it since it was last flushed.
+     */
+    void flushIfWritten() {
+        if (isWritten()) {
+            out.flush();
+        }
+    }
+
     /**
      * Flush both output streams.
      */
@@ -124,8 +224,77 @@ public class IO
     }
 
     public void close() throws IOException {
+        IntervalFlusher.unregister(this);
+
         in.close();
         out.close();
         err.close();
     }
+
+    //
+    // BufferedOutputWriter
+    //
+
+    /**
+     * Tracks if there is anything to flush.
+     */
+    private static class BufferedOutputWriter
+        extends BufferedWriter
+    {
+        public volatile boolean written;
+
+        public BufferedOutputWriter(final Writer target, final int size) {
+            super(target, size);
+        }
+
+        public void write(final int c) throws IOException {
+            written = true;
+            super.write(c);
+        }
+
+        public void write(final char[] chars, final int off, final int len) throws IOException {
+            written = true;
+            super.write(chars, off, len);
+        }
+
+        public void write(final String str, final int off, final int len) throws IOException {
+            written = true;
+            super.write(str, off, len);
+        }
+
+        public void flush() throws IOException {
+            written = false;
+            super.flush();
+        }
+    }
+
+    //
+    // OrderedWriter
+    //
+
+    /**
+     * Flushes the output before anything is written to the error output.
+     */
+    private class OrderedWriter
+        extends Writer
+    {
+        private final Writer target;
+
+        public OrderedWriter(final Writer target) {
+            this.target = target;
+        }
+
+        public void write(final char[] chars, final int off, final int len) throws IOException {
+            out.flush();
+            target.write(chars, off, len);
+        }
+
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        public void close() throws IOException {
+            target.close();
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.console;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flushes the buffered output of all {@link IO}s every so often.
+ *
+ * <p>
+ * A single daemon thread checks which IOs were written to, and hands their flushes off to a
+ * pool of threads, as a flush may block, for example on a remote session whose client does not
+ * read.  An IO whose last flush has not completed yet is skipped, so it only holds up itself,
+ * and only ever one thread.
+ *
+ * <p>
+ * The IOs are held weakly, as most are never closed.
+ *
+ * @version $Rev$ $Date$
+ */
+class IntervalFlusher
+    implements Runnable
+{
+    /** The IOs to flush, and if a flush of each is in progress. */
+    private static final Map<IO,AtomicBoolean> ios = new WeakHashMap<IO,AtomicBoolean>();
+
+    private static ScheduledThreadPoolExecutor timer;
+
+    private static ExecutorService flushers;
+
+    public static void register(final IO io) {
+        assert io != null;
+
+        long interval = Long.getLong(IO.FLUSH_INTERVAL_PROPERTY, IO.DEFAULT_FLUSH_INTERVAL).longValue();
+        if (interval <= 0) {
+            return;
+        }
+
+        synchronized (ios) {
+            ios.put(io, new AtomicBoolean());
+
+            if (timer == null) {
+                timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    public Thread newThread(final Runnable task) {
+                        Thread t = new Thread(task, "GShell IO Flusher");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+                flushers = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable task) {
+                        Thread t = new Thread(task, "GShell IO Flusher-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+                timer.scheduleWithFixedDelay(new IntervalFlusher(), interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public static void unregister(final IO io) {
+        assert io != null;
+
+        synchronized (ios) {
+            ios.remove(io);
+        }
+    }
+
+    public void run() {
+        List<Map.Entry<IO,AtomicBoolean>> list;
+
+        synchronized (ios) {
+            list = new ArrayList<Map.Entry<IO,AtomicBoolean>>(ios.entrySet());
+        }
+
+        for (Map.Entry<IO,AtomicBoolean> entry : list) {
+            IO io = entry.getKey();
+            if (io == null || !io.isWritten()) {
+                continue;
+            }
+
+            // Skip the IO while its last flush is still blocked
+            AtomicBoolean flushing = entry.getValue();
+            if (flushing.compareAndSet(false, true)) {
+                flushers.execute(new Flush(io, flushing));
+            }
+        }
+    }
+
+    //
+    // Flush
+    //
+
+    /**
+     * Flushes one IO, and marks it as no longer flushing when done.
+     */
+    private static class Flush
+        implements Runnable
+    {
+        private final IO io;
+
+        private final AtomicBoolean flushing;
+
+        public Flush(final IO io, final AtomicBoolean flushing) {
+            this.io = io;
+            this.flushing = flushing;
+        }
+
+        public void run() {
+            // Must not keep the IO from being flushed again, whatever happens
+            try {
+                io.flushIfWritten();
+            }
+            catch (RuntimeException ignore) {}
+            finally {
+                flushing.set(false);
+            }
+        }
+    }
+}
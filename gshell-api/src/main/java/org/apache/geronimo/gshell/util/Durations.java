@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.util;
+
+import org.apache.commons.lang.NullArgumentException;
+
+/**
+ * Utils for durations, as given for timeouts.
+ *
+ * <p>
+ * A duration is a whole number with an optional unit; <tt>ms</tt>, <tt>s</tt>, <tt>m</tt>
+ * or <tt>h</tt>.  Without a unit the number is in seconds, as for the <tt>timeout</tt> utility.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Durations
+{
+    /**
+     * Parse a duration.
+     *
+     * @return  The duration in milliseconds
+     *
+     * @throws IllegalArgumentException     The duration is not valid
+     */
+    public static long parse(final String duration) {
+        if (duration == null) {
+            throw new NullArgumentException("duration");
+        }
+
+        String value = duration.trim().toLowerCase();
+        long unit;
+
+        if (value.endsWith("ms")) {
+            unit = 1;
+            value = value.substring(0, value.length() - 2);
+        }
+        else if (value.endsWith("s")) {
+            unit = 1000;
+            value = value.substring(0, value.length() - 1);
+        }
+        else if (value.endsWith("m")) {
+            unit = 60 * 1000;
+            value = value.substring(0, value.length() - 1);
+        }
+        else if (value.endsWith("h")) {
+            unit = 60 * 60 * 1000;
+            value = value.substring(0, value.length() - 1);
+        }
+        else {
+            unit = 1000;
+        }
+
+        long n;
+        try {
+            n = Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration: " + duration);
+        }
+
+        if (n < 0) {
+            throw new IllegalArgumentException("Negative duration: " + duration);
+        }
+
+        return n * unit;
+    }
+
+    /**
+     * Format a duration with the largest unit which represents it exactly.
+     */
+    public static String format(final long millis) {
+        if (millis != 0) {
+            if (millis % (60 * 60 * 1000) == 0) {
+                return millis / (60 * 60 * 1000) + "h";
+            }
+            else if (millis % (60 * 1000) == 0) {
+                return millis / (60 * 1000) + "m";
+            }
+            else if (millis % 1000 == 0) {
+                return millis / 1000 + "s";
+            }
+        }
+
+        return millis + "ms";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.util;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.geronimo.gshell.command.ObjectStream;
+
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Utils for the objects which commands of a pipeline pass to each other.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ObjectStreams
+{
+    private static final int CHECK_INTERVAL = 256;
+
+    /**
+     * Check if a command result is a stream of objects, rather than a status code.
+     */
+    public static boolean isStream(final Object result) {
+        return result instanceof ObjectStream;
+    }
+
+    /**
+     * Iterate the objects of a command result.
+     *
+     * @return  The objects of the stream; or no objects if the result is not a stream
+     */
+    public static Iterator<Object> iterator(final Object result) {
+        if (result instanceof ObjectStream) {
+            return ((ObjectStream)result).iterator();
+        }
+
+        return Collections.<Object>emptyList().iterator();
+    }
+
+    /**
+     * Write the objects of a stream as text; one per line.
+     *
+     * <p>
+     * Stops early once the output fails, as when nobody reads the other end of a pipe anymore,
+     * so an endless stream does not keep the writer busy forever.
+     *
+     * @return  The number of objects written
+     */
+    public static int print(final Iterator<Object> iter, final PrintWriter out) {
+        if (iter == null) {
+            throw new NullArgumentException("iter");
+        }
+        if (out == null) {
+            throw new NullArgumentException("out");
+        }
+
+        int count = 0;
+
+        while (iter.hasNext()) {
+            out.println(iter.next());
+
+            // Checking flushes, so only do it every so often
+            if (++count % CHECK_INTERVAL == 0 && out.checkError()) {
+                break;
+            }
+        }
+
+        out.flush();
+
+        return count;
+    }
+}
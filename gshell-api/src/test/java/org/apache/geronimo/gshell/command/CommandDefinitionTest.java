@@ -21,6 +21,8 @@ package org.apache.geronimo.gshell.command;
 
 import junit.framework.TestCase;
 
+import java.util.Properties;
+
 /**
  * Unit tests for the {@link CommandDefinition} class.
  *
@@ -39,6 +41,66 @@ public class CommandDefinitionTest
         }
     }
 
+    public void testReusable() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("name", "test");
+        props.setProperty("class", "Test");
+        props.setProperty("category", "test");
+
+        assertTrue(new CommandDefinition(props).isReusable());
+
+        props.setProperty("reusable", "false");
+        assertFalse(new CommandDefinition(props).isReusable());
+    }
+
+    public void testTimeout() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("name", "test");
+        props.setProperty("class", "Test");
+        props.setProperty("category", "test");
+
+        assertEquals(-1, new CommandDefinition(props).getTimeout());
+
+        props.setProperty("timeout", "5s");
+        assertEquals(5000, new CommandDefinition(props).getTimeout());
+
+        props.setProperty("timeout", "soon");
+        try {
+            new CommandDefinition(props);
+            fail("Accepted invalid timeout");
+        }
+        catch (CommandDefinition.InvalidDefinitionException expected) {
+            // ignore
+        }
+    }
+
+    public void testLoadClassCached() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("name", "test");
+        props.setProperty("class", CommandDefinitionTest.class.getName());
+        props.setProperty("category", "test");
+
+        final int[] count = { 0 };
+        ClassLoader cl = new ClassLoader(getClass().getClassLoader()) {
+            public Class<?> loadClass(final String name) throws ClassNotFoundException {
+                count[0]++;
+                return super.loadClass(name);
+            }
+        };
+
+        CommandDefinition def = new CommandDefinition(props);
+        assertNull(def.getLoadedClass(cl));
+        assertEquals(CommandDefinitionTest.class, def.loadClass(cl));
+        assertEquals(CommandDefinitionTest.class, def.getLoadedClass(cl));
+        assertEquals(CommandDefinitionTest.class, def.loadClass(cl));
+        assertEquals(1, count[0]);
+
+        // A different loader is asked again
+        assertEquals(CommandDefinitionTest.class, def.loadClass(getClass().getClassLoader()));
+        assertEquals(CommandDefinitionTest.class, def.loadClass(cl));
+        assertEquals(2, count[0]);
+    }
+
     //
     // TODO: Add more tests
     //
@@ -21,6 +21,12 @@ package org.apache.geronimo.gshell.console;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Unit tests for the {@link IO} class.
  *
@@ -29,6 +35,8 @@ import junit.framework.TestCase;
 public class IOTest
     extends TestCase
 {
+    private static final String NL = System.getProperty("line.separator");
+
     public void testConstructorArgs() throws Exception {
         try {
             new IO(null, null, null);
@@ -57,4 +65,133 @@ public class IOTest
         // Happy day...
         new IO(System.in, System.out, System.err);
     }
+
+    private IO createIO(final ByteArrayOutputStream out, final IO.FlushPolicy flushPolicy) {
+        return new IO(new ByteArrayInputStream(new byte[0]), out, out, flushPolicy);
+    }
+
+    public void testLineFlushPolicy() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO io = createIO(out, IO.FlushPolicy.LINE);
+
+        assertEquals(IO.FlushPolicy.LINE, io.getFlushPolicy());
+
+        io.out.println("foo");
+        assertEquals("foo", out.toString().trim());
+    }
+
+    public void testBufferedFlushPolicy() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO io = createIO(out, IO.FlushPolicy.BUFFERED);
+
+        io.out.println("foo");
+        assertEquals(0, out.size());
+
+        io.flush();
+        assertEquals("foo", out.toString().trim());
+    }
+
+    public void testErrorFlushesOutput() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO io = createIO(out, IO.FlushPolicy.BUFFERED);
+
+        io.out.println("out");
+        io.err.println("err");
+
+        // The output comes first, though only the error output was flushed
+        assertEquals("out" + NL + "err" + NL, out.toString());
+    }
+
+    public void testIntervalFlush() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO io = createIO(out, IO.FlushPolicy.BUFFERED);
+
+        io.out.print("foo");
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (out.size() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(IO.DEFAULT_FLUSH_INTERVAL / 2);
+        }
+
+        assertEquals("foo", out.toString());
+    }
+
+    public void testIntervalFlushNotHeldUpByBlockedIO() throws Exception {
+        BlockingOutputStream blocked = new BlockingOutputStream();
+        IO stuck = createIO(blocked, IO.FlushPolicy.BUFFERED);
+
+        stuck.out.print("stuck");
+        assertTrue("Not flushed", blocked.writing.await(5, TimeUnit.SECONDS));
+
+        try {
+            // Other IOs are still flushed, while the flush of the first one blocks
+            for (int i = 0; i < 3; i++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                IO io = createIO(out, IO.FlushPolicy.BUFFERED);
+
+                io.out.print("foo");
+
+                long timeout = System.currentTimeMillis() + 5000;
+                while (out.size() == 0 && System.currentTimeMillis() < timeout) {
+                    Thread.sleep(IO.DEFAULT_FLUSH_INTERVAL / 2);
+                }
+
+                assertEquals("foo", out.toString());
+            }
+
+            // And the blocked one is not written to again meanwhile
+            assertEquals(1, blocked.writers.get());
+        }
+        finally {
+            blocked.release.countDown();
+        }
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (blocked.size() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(IO.DEFAULT_FLUSH_INTERVAL / 2);
+        }
+
+        assertEquals("stuck", blocked.toString());
+    }
+
+    /**
+     * Blocks writes until released, as a connection whose client does not read.
+     */
+    private static class BlockingOutputStream
+        extends ByteArrayOutputStream
+    {
+        public final CountDownLatch writing = new CountDownLatch(1);
+
+        public final CountDownLatch release = new CountDownLatch(1);
+
+        public final AtomicInteger writers = new AtomicInteger();
+
+        public void write(final byte[] bytes, final int off, final int len) {
+            writers.incrementAndGet();
+            writing.countDown();
+
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (this) {
+                super.write(bytes, off, len);
+            }
+        }
+
+        public void write(final int b) {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        public synchronized int size() {
+            return super.size();
+        }
+
+        public synchronized String toString() {
+            return super.toString();
+        }
+    }
 }
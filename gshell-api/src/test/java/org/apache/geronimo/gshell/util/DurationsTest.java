@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link Durations} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DurationsTest
+    extends TestCase
+{
+    public void testParse() throws Exception {
+        assertEquals(250, Durations.parse("250ms"));
+        assertEquals(30 * 1000, Durations.parse("30s"));
+        assertEquals(30 * 1000, Durations.parse("30"));
+        assertEquals(5 * 60 * 1000, Durations.parse(" 5M "));
+        assertEquals(2 * 60 * 60 * 1000, Durations.parse("2h"));
+        assertEquals(0, Durations.parse("0"));
+    }
+
+    public void testParseInvalid() throws Exception {
+        String[] invalid = { "", "s", "1.5s", "-1", "10d" };
+
+        for (String value : invalid) {
+            try {
+                Durations.parse(value);
+                fail("Accepted invalid duration: " + value);
+            }
+            catch (IllegalArgumentException expected) {
+                // ignore
+            }
+        }
+    }
+
+    public void testFormat() throws Exception {
+        assertEquals("0ms", Durations.format(0));
+        assertEquals("1500ms", Durations.format(1500));
+        assertEquals("30s", Durations.format(30 * 1000));
+        assertEquals("5m", Durations.format(5 * 60 * 1000));
+        assertEquals("2h", Durations.format(2 * 60 * 60 * 1000));
+    }
+}
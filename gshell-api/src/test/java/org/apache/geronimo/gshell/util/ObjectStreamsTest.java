@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.util;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.command.ObjectStream;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Unit tests for the {@link ObjectStreams} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ObjectStreamsTest
+    extends TestCase
+{
+    public void testIsStream() throws Exception {
+        assertTrue(ObjectStreams.isStream(new ObjectStream(Arrays.asList("a", "b"))));
+        assertTrue(ObjectStreams.isStream(new ObjectStream(Arrays.asList("a", "b").iterator())));
+        assertTrue(ObjectStreams.isStream(new ObjectStream(new String[] { "a" })));
+
+        // Only when opted in
+        assertFalse(ObjectStreams.isStream(Arrays.asList("a", "b")));
+        assertFalse(ObjectStreams.isStream(Arrays.asList("a", "b").iterator()));
+        assertFalse(ObjectStreams.isStream(new String[] { "a" }));
+
+        assertFalse(ObjectStreams.isStream(null));
+        assertFalse(ObjectStreams.isStream(0));
+        assertFalse(ObjectStreams.isStream("a"));
+    }
+
+    public void testIterator() throws Exception {
+        Iterator<Object> iter = ObjectStreams.iterator(new ObjectStream(new Object[] { "a", 1 }));
+        assertEquals("a", iter.next());
+        assertEquals(1, iter.next());
+        assertFalse(iter.hasNext());
+
+        // Status codes and other results are not objects
+        assertFalse(ObjectStreams.iterator(0).hasNext());
+        assertFalse(ObjectStreams.iterator(null).hasNext());
+        assertFalse(ObjectStreams.iterator(new Object[] { "a" }).hasNext());
+    }
+
+    public void testStreamArgs() throws Exception {
+        try {
+            new ObjectStream((Iterator<?>)null);
+            fail("Accepted null value");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        try {
+            new ObjectStream((Object[])null);
+            fail("Accepted null value");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testPrint() throws Exception {
+        try {
+            ObjectStreams.print(null, new PrintWriter(new StringWriter()));
+            fail("Accepted null value");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        StringWriter buff = new StringWriter();
+        PrintWriter out = new PrintWriter(buff);
+
+        assertEquals(3, ObjectStreams.print(ObjectStreams.iterator(new ObjectStream(new Object[] { "a", 2, 'c' })), out));
+
+        String sep = System.getProperty("line.separator");
+        assertEquals("a" + sep + "2" + sep + "c" + sep, buff.toString());
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.benchmark;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.commands.standard.CatCommand;
+import org.apache.geronimo.gshell.console.IO;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Measures the throughput of <tt>cat</tt>, copying bytes compared to printing line by line.
+ *
+ * <p>
+ * A file of random text lines is generated, unless one is given, and printed with <tt>cat</tt>
+ * in a shell of this JVM: copying the bytes, the same printing line by line (as before
+ * <tt>cat</tt> copied bytes), and numbering the lines, both of the mapped file in parallel
+ * and line by line.  The output goes to a file, which lets
+ * the bytes be transferred by the OS, or else is discarded after crossing a plain stream.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CatBenchmark
+{
+    public static final int DEFAULT_ITERATIONS = 5;
+
+    public static final int DEFAULT_WARMUP = 1;
+
+    public static final int DEFAULT_SIZE = 256;
+
+    private final PrintStream out = System.out;
+
+    private int iterations = DEFAULT_ITERATIONS;
+
+    private int warmup = DEFAULT_WARMUP;
+
+    private int size = DEFAULT_SIZE;
+
+    private File file;
+
+    private File outputFile;
+
+    public void run(final String[] args) throws Exception {
+        assert args != null;
+
+        Options options = new Options();
+
+        options.addOption(OptionBuilder.withLongOpt("help")
+            .withDescription("Display this help message")
+            .create('h'));
+
+        options.addOption(OptionBuilder.withLongOpt("iterations")
+            .withDescription("Number of measured runs (default " + DEFAULT_ITERATIONS + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('n'));
+
+        options.addOption(OptionBuilder.withLongOpt("warmup")
+            .withDescription("Number of runs to discard first (default " + DEFAULT_WARMUP + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('w'));
+
+        options.addOption(OptionBuilder.withLongOpt("size")
+            .withDescription("Size in MB of the generated file (default " + DEFAULT_SIZE + ")")
+            .hasArg()
+            .withArgName("mb")
+            .create('s'));
+
+        options.addOption(OptionBuilder.withLongOpt("output")
+            .withDescription("Write to the given file, instead of discarding the output")
+            .hasArg()
+            .withArgName("file")
+            .create('o'));
+
+        CommandLineParser parser = new PosixParser();
+        CommandLine line = parser.parse(options, args);
+
+        if (line.hasOption('h')) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(CatBenchmark.class.getName() + " [options] [file]", options);
+            return;
+        }
+
+        if (line.hasOption('n')) {
+            iterations = Integer.parseInt(line.getOptionValue('n'));
+        }
+
+        if (line.hasOption('w')) {
+            warmup = Integer.parseInt(line.getOptionValue('w'));
+        }
+
+        if (line.hasOption('s')) {
+            size = Integer.parseInt(line.getOptionValue('s'));
+        }
+
+        if (line.hasOption('o')) {
+            outputFile = new File(line.getOptionValue('o'));
+        }
+
+        boolean generated = false;
+
+        if (line.getArgs().length != 0) {
+            file = new File(line.getArgs()[0]);
+        }
+        else {
+            file = File.createTempFile("gshell-cat", ".txt");
+            generate(file, size * 1024L * 1024L);
+            generated = true;
+        }
+
+        try {
+            out.println("Printing " + file + " (" + (file.length() / 1024 / 1024) + " MB) to " +
+                (outputFile == null ? "a discarding stream" : outputFile.getPath()));
+            out.println();
+
+            measure("bytes", true, "cat");
+            measure("lines", false, "cat");
+            measure("numbered", true, "cat -n");
+            measure("numbered lines", false, "cat -n");
+        }
+        finally {
+            if (generated) {
+                file.delete();
+            }
+        }
+    }
+
+    private void generate(final File file, final long length) throws IOException {
+        assert file != null;
+
+        Random random = new Random(0);
+        OutputStream output = new FileOutputStream(file);
+        byte[] line = new byte[128];
+
+        try {
+            long written = 0;
+
+            while (written < length) {
+                // Lines of 40 to 127 printable characters
+                int n = 40 + random.nextInt(line.length - 40);
+                for (int i = 0; i < n; i++) {
+                    line[i] = (byte)(' ' + random.nextInt(95));
+                }
+                line[n] = '\n';
+
+                output.write(line, 0, n + 1);
+                written += n + 1;
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    private void measure(final String name, final boolean transfer, final String command) throws Exception {
+        assert name != null;
+        assert command != null;
+
+        System.setProperty(CatCommand.TRANSFER_PROPERTY, String.valueOf(transfer));
+
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long sum = 0;
+
+        for (int i = 0; i < warmup + iterations; i++) {
+            long elapsed = runOnce(command);
+
+            if (i >= warmup) {
+                min = Math.min(min, elapsed);
+                max = Math.max(max, elapsed);
+                sum += elapsed;
+            }
+        }
+
+        long avg = sum / iterations;
+        long rate = avg == 0 ? 0 : file.length() * 1000 / avg / 1024 / 1024;
+
+        out.println("    " + name + ": min " + min + " ms, avg " + avg + " ms, max " + max + " ms; " + rate + " MB/s");
+    }
+
+    private long runOnce(final String command) throws Exception {
+        assert command != null;
+
+        OutputStream output = outputFile != null ? new FileOutputStream(outputFile) : new NullOutputStream();
+
+        try {
+            Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), output, System.err));
+
+            long start = System.nanoTime();
+            shell.execute(command + " " + file.getPath());
+
+            return (System.nanoTime() - start) / 1000000;
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    //
+    // NullOutputStream
+    //
+
+    private static class NullOutputStream
+        extends OutputStream
+    {
+        public void write(final int b) {
+            // discard
+        }
+
+        public void write(final byte[] bytes, final int off, final int len) {
+            // discard
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        assert args != null;
+
+        new CatBenchmark().run(args);
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.benchmark;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+
+import org.apache.geronimo.gshell.cli.Main;
+import org.apache.geronimo.gshell.cli.StartupTimings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the startup time of the CLI by running it repeatedly in new JVMs.
+ *
+ * <p>
+ * Each run executes a single command with <tt>--timing</tt>, and the breakdown it prints is
+ * collected per phase, along with the wall time of the whole process as seen from here.
+ * When given a GShell home directory the runs go through the bootstrap jar, the same as the
+ * <tt>gsh</tt> script, which includes the launcher and Classworlds boot; when given a script
+ * the runs go through that, with any extra environment variables, so launch modes of the
+ * script can be compared; otherwise the CLI is run directly from the classpath of this JVM.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StartupBenchmark
+{
+    public static final int DEFAULT_ITERATIONS = 10;
+
+    public static final int DEFAULT_WARMUP = 2;
+
+    public static final String DEFAULT_COMMAND = "echo";
+
+    private final PrintStream out = System.out;
+
+    private int iterations = DEFAULT_ITERATIONS;
+
+    private int warmup = DEFAULT_WARMUP;
+
+    private String command = DEFAULT_COMMAND;
+
+    private File homeDir;
+
+    private File script;
+
+    private final Map<String,String> environment = new LinkedHashMap<String,String>();
+
+    private String javaCommand = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+
+    private final List<String> jvmArgs = new ArrayList<String>();
+
+    private final Map<String,Stats> stats = new LinkedHashMap<String,Stats>();
+
+    private int failures;
+
+    public void run(final String[] args) throws Exception {
+        assert args != null;
+
+        Options options = new Options();
+
+        options.addOption(OptionBuilder.withLongOpt("help")
+            .withDescription("Display this help message")
+            .create('h'));
+
+        options.addOption(OptionBuilder.withLongOpt("iterations")
+            .withDescription("Number of measured runs (default " + DEFAULT_ITERATIONS + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('n'));
+
+        options.addOption(OptionBuilder.withLongOpt("warmup")
+            .withDescription("Number of runs to discard first (default " + DEFAULT_WARMUP + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('w'));
+
+        options.addOption(OptionBuilder.withLongOpt("home")
+            .withDescription("Run through the bootstrap jar of the given GShell home")
+            .hasArg()
+            .withArgName("dir")
+            .create('g'));
+
+        options.addOption(OptionBuilder.withLongOpt("script")
+            .withDescription("Run through the given launch script")
+            .hasArg()
+            .withArgName("file")
+            .create('s'));
+
+        options.addOption(OptionBuilder.withLongOpt("env")
+            .withDescription("Set an environment variable for the launch script")
+            .hasArg()
+            .withArgName("name=value")
+            .create('e'));
+
+        options.addOption(OptionBuilder.withLongOpt("java")
+            .withDescription("Java executable to run the CLI with")
+            .hasArg()
+            .withArgName("file")
+            .create('j'));
+
+        options.addOption(OptionBuilder.withLongOpt("jvm-arg")
+            .withDescription("Pass an argument to the JVM running the CLI")
+            .hasArg()
+            .withArgName("arg")
+            .create('J'));
+
+        CommandLineParser parser = new PosixParser();
+        CommandLine line = parser.parse(options, args, true);
+
+        if (line.hasOption('h')) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(StartupBenchmark.class.getName() + " [options] [command]", options);
+            return;
+        }
+
+        if (line.hasOption('n')) {
+            iterations = Integer.parseInt(line.getOptionValue('n'));
+        }
+
+        if (line.hasOption('w')) {
+            warmup = Integer.parseInt(line.getOptionValue('w'));
+        }
+
+        if (line.hasOption('g')) {
+            homeDir = new File(line.getOptionValue('g')).getCanonicalFile();
+        }
+
+        if (line.hasOption('s')) {
+            script = new File(line.getOptionValue('s')).getCanonicalFile();
+        }
+
+        if (line.hasOption('e')) {
+            for (String namevalue : line.getOptionValues('e')) {
+                int i = namevalue.indexOf('=');
+                if (i == -1) {
+                    environment.put(namevalue, Boolean.TRUE.toString());
+                }
+                else {
+                    environment.put(namevalue.substring(0, i), namevalue.substring(i + 1));
+                }
+            }
+        }
+
+        if (line.hasOption('j')) {
+            javaCommand = line.getOptionValue('j');
+        }
+
+        if (line.hasOption('J')) {
+            for (String arg : line.getOptionValues('J')) {
+                jvmArgs.add(arg);
+            }
+        }
+
+        if (line.getArgs().length != 0) {
+            StringBuffer buff = new StringBuffer();
+            for (String arg : line.getArgs()) {
+                if (buff.length() != 0) {
+                    buff.append(' ');
+                }
+                buff.append(arg);
+            }
+
+            command = buff.toString();
+        }
+
+        List<String> cmd = createCommand();
+        out.println("Running: " + cmd + (environment.isEmpty() ? "" : " with " + environment));
+
+        for (int i = 0; i < warmup; i++) {
+            runOnce(cmd, false);
+        }
+
+        for (int i = 0; i < iterations; i++) {
+            runOnce(cmd, true);
+        }
+
+        report();
+    }
+
+    private List<String> createCommand() {
+        List<String> cmd = new ArrayList<String>();
+
+        if (script != null) {
+            // The script picks the JVM and its arguments
+            cmd.add(script.getPath());
+        }
+        else if (homeDir != null) {
+            cmd.add(javaCommand);
+            cmd.addAll(jvmArgs);
+            cmd.add("-Dgshell.home=" + homeDir.getPath());
+            cmd.add("-jar");
+            cmd.add(new File(homeDir, "lib/boot/gshell-bootstrap.jar").getPath());
+        }
+        else {
+            cmd.add(javaCommand);
+            cmd.addAll(jvmArgs);
+            cmd.add("-classpath");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(Main.class.getName());
+        }
+
+        cmd.add("--timing");
+        cmd.add("-c");
+        cmd.add(command);
+
+        return cmd;
+    }
+
+    private void runOnce(final List<String> cmd, final boolean measure) throws Exception {
+        assert cmd != null;
+
+        ProcessBuilder builder = new ProcessBuilder(cmd);
+        builder.redirectErrorStream(true);
+        builder.environment().putAll(environment);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        process.getOutputStream().close();
+
+        Map<String,Long> phases = new LinkedHashMap<String,Long>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(StartupTimings.PREFIX)) {
+                    parsePhase(line.substring(StartupTimings.PREFIX.length()), phases);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        int code = process.waitFor();
+        long wall = (System.nanoTime() - start) / 1000000;
+
+        if (code != 0 || phases.isEmpty()) {
+            out.println("Run failed with exit code " + code + (phases.isEmpty() ? ", and no timings" : ""));
+            failures++;
+            return;
+        }
+
+        if (!measure) {
+            return;
+        }
+
+        phases.put("wall", new Long(wall));
+
+        for (Map.Entry<String,Long> entry : phases.entrySet()) {
+            Stats s = stats.get(entry.getKey());
+            if (s == null) {
+                s = new Stats();
+                stats.put(entry.getKey(), s);
+            }
+
+            s.add(entry.getValue().longValue());
+        }
+    }
+
+    private void parsePhase(final String text, final Map<String,Long> phases) {
+        assert text != null;
+        assert phases != null;
+
+        // Format is: <phase> <elapsed> ms
+        String[] parts = text.trim().split("\\s+");
+
+        if (parts.length == 3) {
+            try {
+                phases.put(parts[0], Long.valueOf(parts[1]));
+            }
+            catch (NumberFormatException ignore) {
+                // Not a timing line after all
+            }
+        }
+    }
+
+    private void report() {
+        out.println();
+        out.println("Startup of '" + command + "' over " + iterations + " runs (times in ms):");
+        out.println();
+        out.println(format("phase", "min", "avg", "max"));
+
+        for (Map.Entry<String,Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+
+            out.println(format(entry.getKey(),
+                String.valueOf(s.min),
+                String.valueOf(s.sum / s.count),
+                String.valueOf(s.max)));
+        }
+
+        if (failures != 0) {
+            out.println();
+            out.println("Failed runs: " + failures);
+        }
+    }
+
+    private String format(final String phase, final String min, final String avg, final String max) {
+        StringBuffer buff = new StringBuffer("    ");
+        pad(buff, phase, 16, false);
+        pad(buff, min, 8, true);
+        pad(buff, avg, 8, true);
+        pad(buff, max, 8, true);
+
+        return buff.toString();
+    }
+
+    private void pad(final StringBuffer buff, final String value, final int width, final boolean right) {
+        if (!right) {
+            buff.append(value);
+        }
+
+        for (int i = value.length(); i < width; i++) {
+            buff.append(' ');
+        }
+
+        if (right) {
+            buff.append(value);
+        }
+    }
+
+    //
+    // Stats
+    //
+
+    private static class Stats
+    {
+        public long min = Long.MAX_VALUE;
+
+        public long max = Long.MIN_VALUE;
+
+        public long sum;
+
+        public int count;
+
+        public void add(final long value) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        assert args != null;
+
+        new StartupBenchmark().run(args);
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.benchmark;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+
+import org.apache.geronimo.gshell.server.telnet.ShellImpl;
+
+import net.wimpi.telnetd.TelnetD;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Measures the throughput of output through a telnet session, buffered compared to written
+ * a byte at a time.
+ *
+ * <p>
+ * A telnet server is started in this JVM, on a free local port, and for each run a new
+ * session is opened with a minimal client, which refuses all telnet options.  The session
+ * prints a generated file with <tt>cat</tt>, followed by a marker; the time is from sending
+ * the command-line until the marker is seen.  Unbuffered runs set the output buffer of the
+ * session to a single byte, which writes and flushes every byte as it comes.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TelnetBenchmark
+{
+    public static final int DEFAULT_ITERATIONS = 3;
+
+    public static final int DEFAULT_WARMUP = 1;
+
+    public static final int DEFAULT_SIZE = 1;
+
+    private static final String MARKER = "done.marker";
+
+    private static final int IAC = 255;
+
+    private static final int WILL = 251;
+
+    private static final int WONT = 252;
+
+    private static final int DO = 253;
+
+    private static final int DONT = 254;
+
+    private static final int SB = 250;
+
+    private static final int SE = 240;
+
+    private final PrintStream out = System.out;
+
+    private int iterations = DEFAULT_ITERATIONS;
+
+    private int warmup = DEFAULT_WARMUP;
+
+    private int size = DEFAULT_SIZE;
+
+    private boolean unbuffered = true;
+
+    private File file;
+
+    private int port;
+
+    public void run(final String[] args) throws Exception {
+        assert args != null;
+
+        Options options = new Options();
+
+        options.addOption(OptionBuilder.withLongOpt("help")
+            .withDescription("Display this help message")
+            .create('h'));
+
+        options.addOption(OptionBuilder.withLongOpt("iterations")
+            .withDescription("Number of measured runs (default " + DEFAULT_ITERATIONS + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('n'));
+
+        options.addOption(OptionBuilder.withLongOpt("warmup")
+            .withDescription("Number of runs to discard first (default " + DEFAULT_WARMUP + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('w'));
+
+        options.addOption(OptionBuilder.withLongOpt("size")
+            .withDescription("Size in MB of the generated file (default " + DEFAULT_SIZE + ")")
+            .hasArg()
+            .withArgName("mb")
+            .create('s'));
+
+        options.addOption(OptionBuilder.withLongOpt("buffered-only")
+            .withDescription("Skip the runs writing a byte at a time, which are slow")
+            .create('b'));
+
+        CommandLineParser parser = new PosixParser();
+        CommandLine line = parser.parse(options, args);
+
+        if (line.hasOption('h')) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(TelnetBenchmark.class.getName() + " [options]", options);
+            return;
+        }
+
+        if (line.hasOption('n')) {
+            iterations = Integer.parseInt(line.getOptionValue('n'));
+        }
+
+        if (line.hasOption('w')) {
+            warmup = Integer.parseInt(line.getOptionValue('w'));
+        }
+
+        if (line.hasOption('s')) {
+            size = Integer.parseInt(line.getOptionValue('s'));
+        }
+
+        if (line.hasOption('b')) {
+            unbuffered = false;
+        }
+
+        file = File.createTempFile("gshell-telnet", ".txt");
+        generate(file, size * 1024L * 1024L);
+
+        TelnetD telnetd = startServer();
+
+        try {
+            out.println("Printing " + file + " (" + size + " MB) through telnet on port " + port);
+            out.println();
+
+            measure("buffered", ShellImpl.DEFAULT_BUFFER_SIZE);
+
+            if (unbuffered) {
+                measure("unbuffered", 1);
+            }
+        }
+        finally {
+            telnetd.stop();
+            file.delete();
+        }
+    }
+
+    private TelnetD startServer() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        port = socket.getLocalPort();
+        socket.close();
+
+        Properties props = new Properties();
+        InputStream input = ShellImpl.class.getResourceAsStream("telnetd.properties");
+
+        try {
+            props.load(input);
+        }
+        finally {
+            input.close();
+        }
+
+        props.setProperty("std.port", String.valueOf(port));
+
+        TelnetD telnetd = TelnetD.createTelnetD(props);
+        telnetd.start();
+
+        return telnetd;
+    }
+
+    private void generate(final File file, final long length) throws IOException {
+        assert file != null;
+
+        OutputStream output = new FileOutputStream(file);
+        byte[] line = "The quick brown fox jumps over the lazy dog, again and again and again\n".getBytes();
+
+        try {
+            for (long written = 0; written < length; written += line.length) {
+                output.write(line);
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    private void measure(final String name, final int bufferSize) throws Exception {
+        assert name != null;
+
+        System.setProperty(ShellImpl.BUFFER_SIZE_PROPERTY, String.valueOf(bufferSize));
+
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long sum = 0;
+
+        for (int i = 0; i < warmup + iterations; i++) {
+            long elapsed = runOnce();
+
+            if (i >= warmup) {
+                min = Math.min(min, elapsed);
+                max = Math.max(max, elapsed);
+                sum += elapsed;
+            }
+        }
+
+        long avg = sum / iterations;
+        long rate = avg == 0 ? 0 : file.length() * 1000 / avg / 1024;
+
+        out.println("    " + name + ": min " + min + " ms, avg " + avg + " ms, max " + max + " ms; " + rate + " KB/s");
+    }
+
+    private long runOnce() throws Exception {
+        Socket socket = connect();
+
+        try {
+            socket.setTcpNoDelay(true);
+
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+
+            // Wait for the prompt, refusing all options the server asks for along the way
+            readUntil(input, output, "> ");
+
+            long start = System.nanoTime();
+
+            output.write(("cat " + file.getPath() + "; echo " + MARKER + "\r\n").getBytes());
+            output.flush();
+
+            // Only the output starts a line with the marker, not the echo of the command-line
+            readUntil(input, output, "\n" + MARKER);
+
+            return (System.nanoTime() - start) / 1000000;
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    private Socket connect() throws Exception {
+        // The server starts listening in the background
+        long timeout = System.currentTimeMillis() + 10000;
+
+        while (true) {
+            try {
+                return new Socket("127.0.0.1", port);
+            }
+            catch (ConnectException e) {
+                if (System.currentTimeMillis() > timeout) {
+                    throw e;
+                }
+
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private void readUntil(final InputStream input, final OutputStream output, final String text) throws IOException {
+        assert input != null;
+        assert output != null;
+        assert text != null;
+
+        byte[] expected = text.getBytes();
+        int matched = 0;
+
+        while (matched < expected.length) {
+            int b = read(input, output);
+
+            if (b == expected[matched]) {
+                matched++;
+            }
+            else {
+                matched = b == expected[0] ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * Read the next byte of data, handling any telnet commands before it.
+     */
+    private int read(final InputStream input, final OutputStream output) throws IOException {
+        while (true) {
+            int b = readByte(input);
+            if (b != IAC) {
+                return b;
+            }
+
+            int command = readByte(input);
+
+            switch (command) {
+                case IAC:
+                    return IAC;
+
+                case DO:
+                    reply(output, WONT, readByte(input));
+                    break;
+
+                case WILL:
+                    reply(output, DONT, readByte(input));
+                    break;
+
+                case DONT:
+                case WONT:
+                    readByte(input);
+                    break;
+
+                case SB:
+                    // Skip up to IAC SE
+                    int last = 0;
+                    for (int c = readByte(input); last != IAC || c != SE; c = readByte(input)) {
+                        last = c;
+                    }
+                    break;
+
+                default:
+                    // Commands without an option
+                    break;
+            }
+        }
+    }
+
+    private int readByte(final InputStream input) throws IOException {
+        int b = input.read();
+        if (b == -1) {
+            throw new IOException("Connection closed");
+        }
+
+        return b;
+    }
+
+    private void reply(final OutputStream output, final int command, final int option) throws IOException {
+        output.write(new byte[] { (byte)IAC, (byte)command, (byte)option });
+        output.flush();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        assert args != null;
+
+        new TelnetBenchmark().run(args);
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.benchmark;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+
+import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.command.VariablesImpl;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures the throughput of variable lookups by concurrent readers, while a writer keeps changing
+ * a variable, comparing {@link VariablesImpl} to a map guarded by a lock.
+ *
+ * <p>
+ * The scopes are nested as in a shell: the root variables, those of the shell and those of the
+ * command being executed.  Readers look up names defined in all three from the command scope,
+ * while the writer sets a variable of the shell scope.
+ *
+ * @version $Rev$ $Date$
+ */
+public class VariablesBenchmark
+{
+    public static final int DEFAULT_ITERATIONS = 5;
+
+    public static final int DEFAULT_WARMUP = 1;
+
+    public static final int DEFAULT_DURATION = 1000;
+
+    public static final int DEFAULT_WRITE_INTERVAL = 1;
+
+    private static final int[] READERS = { 1, 4, 16 };
+
+    private static final int VARIABLES = 32;
+
+    private final PrintStream out = System.out;
+
+    private int iterations = DEFAULT_ITERATIONS;
+
+    private int warmup = DEFAULT_WARMUP;
+
+    private int duration = DEFAULT_DURATION;
+
+    private int writeInterval = DEFAULT_WRITE_INTERVAL;
+
+    private volatile boolean running;
+
+    public void run(final String[] args) throws Exception {
+        assert args != null;
+
+        Options options = new Options();
+
+        options.addOption(OptionBuilder.withLongOpt("help")
+            .withDescription("Display this help message")
+            .create('h'));
+
+        options.addOption(OptionBuilder.withLongOpt("iterations")
+            .withDescription("Number of measured runs (default " + DEFAULT_ITERATIONS + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('n'));
+
+        options.addOption(OptionBuilder.withLongOpt("warmup")
+            .withDescription("Number of runs to discard first (default " + DEFAULT_WARMUP + ")")
+            .hasArg()
+            .withArgName("count")
+            .create('w'));
+
+        options.addOption(OptionBuilder.withLongOpt("duration")
+            .withDescription("Duration in ms of each run (default " + DEFAULT_DURATION + ")")
+            .hasArg()
+            .withArgName("ms")
+            .create('d'));
+
+        options.addOption(OptionBuilder.withLongOpt("write-interval")
+            .withDescription("Pause in ms between writes; 0 for no writer (default " + DEFAULT_WRITE_INTERVAL + ")")
+            .hasArg()
+            .withArgName("ms")
+            .create('i'));
+
+        CommandLineParser parser = new PosixParser();
+        CommandLine line = parser.parse(options, args);
+
+        if (line.hasOption('h')) {
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp(VariablesBenchmark.class.getName() + " [options]", options);
+            return;
+        }
+
+        if (line.hasOption('n')) {
+            iterations = Integer.parseInt(line.getOptionValue('n'));
+        }
+
+        if (line.hasOption('w')) {
+            warmup = Integer.parseInt(line.getOptionValue('w'));
+        }
+
+        if (line.hasOption('d')) {
+            duration = Integer.parseInt(line.getOptionValue('d'));
+        }
+
+        if (line.hasOption('i')) {
+            writeInterval = Integer.parseInt(line.getOptionValue('i'));
+        }
+
+        out.println("Reading " + (VARIABLES * 3) + " variables in 3 scopes for " + duration + " ms per run, " +
+            (writeInterval > 0 ? "writing every " + writeInterval + " ms" : "without writes"));
+        out.println();
+
+        for (int readers : READERS) {
+            measure("concurrent", false, readers);
+            measure("synchronized", true, readers);
+        }
+    }
+
+    private void measure(final String name, final boolean synced, final int readers) throws Exception {
+        assert name != null;
+
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long sum = 0;
+
+        for (int i = 0; i < warmup + iterations; i++) {
+            long reads = runOnce(synced, readers);
+
+            if (i >= warmup) {
+                min = Math.min(min, reads);
+                max = Math.max(max, reads);
+                sum += reads;
+            }
+        }
+
+        long avg = sum / iterations;
+
+        out.println("    " + name + ", " + readers + " readers: min " + rate(min) + ", avg " + rate(avg) +
+            ", max " + rate(max) + " K reads/s");
+    }
+
+    private long rate(final long reads) {
+        return reads * 1000 / duration / 1000;
+    }
+
+    /**
+     * Run the readers and the writer for the duration.
+     *
+     * @return  The total number of reads
+     */
+    private long runOnce(final boolean synced, final int readers) throws Exception {
+        Variables root = synced ? new SynchronizedVariables(null) : new VariablesImpl();
+        final Variables shell = synced ? new SynchronizedVariables(root) : new VariablesImpl(root);
+        final Variables command = synced ? new SynchronizedVariables(shell) : new VariablesImpl(shell);
+
+        final String[] names = new String[VARIABLES * 3];
+        Variables[] scopes = { root, shell, command };
+
+        for (int s = 0; s < scopes.length; s++) {
+            for (int i = 0; i < VARIABLES; i++) {
+                String n = "var" + s + "." + i;
+                scopes[s].set(n, n);
+                names[s * VARIABLES + i] = n;
+            }
+        }
+
+        running = true;
+        final long[] counts = new long[readers];
+        Thread[] threads = new Thread[readers];
+
+        for (int r = 0; r < readers; r++) {
+            final int id = r;
+
+            threads[r] = new Thread("Reader-" + r) {
+                public void run() {
+                    long count = 0;
+                    int i = id;
+
+                    while (running) {
+                        for (int j = 0; j < 100; j++) {
+                            if (command.get(names[i]) == null) {
+                                throw new IllegalStateException("Missing variable: " + names[i]);
+                            }
+                            i = (i + 1) % names.length;
+                        }
+                        count += 100;
+                    }
+
+                    counts[id] = count;
+                }
+            };
+        }
+
+        Thread writer = new Thread("Writer") {
+            public void run() {
+                int i = 0;
+
+                try {
+                    while (running) {
+                        shell.set("written", String.valueOf(i++));
+                        Thread.sleep(writeInterval);
+                    }
+                }
+                catch (InterruptedException e) {
+                    // stop
+                }
+            }
+        };
+
+        for (Thread t : threads) {
+            t.start();
+        }
+
+        if (writeInterval > 0) {
+            writer.start();
+        }
+
+        Thread.sleep(duration);
+
+        running = false;
+
+        long total = 0;
+
+        for (int r = 0; r < readers; r++) {
+            threads[r].join();
+            total += counts[r];
+        }
+
+        writer.join();
+
+        return total;
+    }
+
+    //
+    // SynchronizedVariables
+    //
+
+    /**
+     * Variables in a plain map, with every access synchronized; as thread safety would have been added
+     * to the original implementation.
+     */
+    private static class SynchronizedVariables
+        implements Variables
+    {
+        private final Map<String,Object> map = new HashMap<String,Object>();
+
+        private final Set<String> immutables = new HashSet<String>();
+
+        private final Variables parent;
+
+        public SynchronizedVariables(final Variables parent) {
+            this.parent = parent;
+        }
+
+        public void set(final String name, final Object value) {
+            set(name, value, true);
+        }
+
+        public synchronized void set(final String name, final Object value, final boolean mutable) {
+            if (!isMutable(name)) {
+                throw new ImmutableVariableException(name);
+            }
+
+            map.put(name, value);
+
+            if (!mutable) {
+                immutables.add(name);
+            }
+        }
+
+        public synchronized Object get(final String name) {
+            Object value = map.get(name);
+            if (value == null && parent != null) {
+                value = parent.get(name);
+            }
+
+            return value;
+        }
+
+        public Object get(final String name, final Object _default) {
+            Object value = get(name);
+
+            return value != null ? value : _default;
+        }
+
+        public synchronized boolean isMutable(final String name) {
+            if (parent != null && !parent.isMutable(name)) {
+                return false;
+            }
+
+            return !immutables.contains(name);
+        }
+
+        public boolean isCloaked(final String name) {
+            int count = 0;
+
+            Variables vars = this;
+            while (vars != null && count < 2) {
+                if (vars.contains(name)) {
+                    count++;
+                }
+
+                vars = vars.parent();
+            }
+
+            return count > 1;
+        }
+
+        public synchronized void unset(final String name) {
+            if (!isMutable(name)) {
+                throw new ImmutableVariableException(name);
+            }
+
+            map.remove(name);
+        }
+
+        public synchronized boolean contains(final String name) {
+            return map.containsKey(name);
+        }
+
+        public synchronized Iterator<String> names() {
+            // Copy, as iterating the map while it is changed is not safe
+            return new HashSet<String>(map.keySet()).iterator();
+        }
+
+        public Variables parent() {
+            return parent;
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        assert args != null;
+
+        new VariablesBenchmark().run(args);
+    }
+}
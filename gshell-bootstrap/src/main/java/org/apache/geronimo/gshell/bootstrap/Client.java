@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Thin client which has a running <tt>cli.Daemon</tt> execute the command, and only falls back to
+ * booting the shell in this JVM, through {@link Launcher}, when there is no daemon or the
+ * arguments need a local shell (interactive mode, or any other option than <tt>-c</tt>).
+ *
+ * <p>
+ * Only classes of the JDK and this one are loaded to forward a command.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Client
+{
+    private static boolean debug = Boolean.getBoolean(Client.class.getName() + ".debug");
+
+    //
+    // NOTE: Keep in sync with org.apache.geronimo.gshell.cli.Daemon
+    //
+
+    private static final String FILE_PROPERTY = "org.apache.geronimo.gshell.cli.Daemon.file";
+
+    private static final int MAGIC = 0x47534844;
+
+    private static final byte REQUEST_RUN = 'R';
+
+    private static final byte REQUEST_STOP = 'S';
+
+    private static final byte FRAME_IN_REQUEST = 'Q';
+
+    private static final byte FRAME_IN = 'I';
+
+    private static final byte FRAME_IN_CLOSED = 'C';
+
+    private static final byte FRAME_OUT = 'O';
+
+    private static final byte FRAME_ERR = 'E';
+
+    private static final byte FRAME_EXIT = 'X';
+
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    public static void main(final String[] args) throws Exception {
+        assert args != null;
+
+        boolean stop = args.length == 1 && args[0].equals("--stop-daemon");
+
+        if (stop || isForwardable(args)) {
+            Socket socket = connect();
+
+            if (socket != null) {
+                System.exit(stop ? request(socket, REQUEST_STOP, args) : request(socket, REQUEST_RUN, args));
+            }
+            else if (stop) {
+                System.err.println("No daemon is running");
+                System.exit(1);
+            }
+        }
+
+        debug("Not using the daemon; launching locally");
+        Launcher.main(args);
+    }
+
+    private static void debug(final String message) {
+        if (debug) {
+            System.err.println("[DEBUG] " + message);
+        }
+    }
+
+    /**
+     * Check if the arguments are a single command, or commands given with -c, which the daemon can run.
+     */
+    private static boolean isForwardable(final String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+
+        if (args[0].equals("-c") || args[0].equals("--commands")) {
+            return args.length == 2;
+        }
+
+        return !args[0].startsWith("-");
+    }
+
+    private static File getFile() {
+        String path = System.getProperty(FILE_PROPERTY);
+        if (path != null) {
+            return new File(path);
+        }
+
+        return new File(new File(System.getProperty("user.home"), ".gshell"), "daemon.properties");
+    }
+
+    private static Properties load(final File file) throws IOException {
+        Properties props = new Properties();
+        InputStream input = new FileInputStream(file);
+
+        try {
+            props.load(input);
+        }
+        finally {
+            input.close();
+        }
+
+        return props;
+    }
+
+    /**
+     * Connect to the daemon and authenticate.
+     *
+     * @return  The connected socket; or null if there is no daemon to connect to
+     */
+    private static Socket connect() {
+        File file = getFile();
+        if (!file.isFile()) {
+            debug("No daemon file: " + file);
+            return null;
+        }
+
+        try {
+            Properties props = load(file);
+            int port = Integer.parseInt(props.getProperty("port"));
+
+            Socket socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress("127.0.0.1", port), CONNECT_TIMEOUT);
+
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeInt(MAGIC);
+            output.writeUTF(props.getProperty("token"));
+            output.flush();
+
+            return socket;
+        }
+        catch (Exception e) {
+            // Most likely a stale file of a daemon which is gone
+            debug("Failed to connect to daemon: " + e);
+            return null;
+        }
+    }
+
+    private static int request(final Socket socket, final byte type, final String[] args) throws IOException {
+        final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+        DataOutputStream request = new DataOutputStream(new BufferedOutputStream(output));
+
+        request.writeByte(type);
+
+        if (type == REQUEST_RUN) {
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+
+            request.writeUTF(new File(".").getCanonicalPath());
+
+            Map<String,String> env = System.getenv();
+            request.writeInt(env.size());
+            for (Iterator<Map.Entry<String,String>> iter = env.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<String,String> entry = iter.next();
+                request.writeUTF(entry.getKey());
+                request.writeUTF(entry.getValue());
+            }
+        }
+
+        request.flush();
+
+        return readFrames(new DataInputStream(new BufferedInputStream(socket.getInputStream())), new InputPump(output));
+    }
+
+    private static int readFrames(final DataInputStream input, final InputPump pump) throws IOException {
+        byte[] buffer = new byte[8192];
+
+        while (true) {
+            byte type = input.readByte();
+
+            if (type == FRAME_IN_REQUEST) {
+                pump.request();
+                continue;
+            }
+
+            if (type == FRAME_EXIT) {
+                int code = input.readInt();
+                System.out.flush();
+                System.err.flush();
+
+                return code;
+            }
+
+            PrintStream out;
+            if (type == FRAME_OUT) {
+                out = System.out;
+            }
+            else if (type == FRAME_ERR) {
+                out = System.err;
+            }
+            else {
+                throw new IOException("Unexpected frame type: " + type);
+            }
+
+            int remaining = input.readInt();
+            while (remaining > 0) {
+                int n = input.read(buffer, 0, Math.min(remaining, buffer.length));
+                if (n == -1) {
+                    throw new IOException("Connection closed");
+                }
+
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+
+            out.flush();
+        }
+    }
+
+    //
+    // InputPump
+    //
+
+    /**
+     * Sends standard input to the daemon, one read for each frame it requests, so nothing is
+     * read unless the command reads its input; started on the first request.
+     *
+     * <p>
+     * Reading is left to its own thread, so output keeps coming while it blocks.
+     */
+    private static class InputPump
+        extends Thread
+    {
+        private final DataOutputStream output;
+
+        private boolean started;
+
+        private int requested;
+
+        public InputPump(final DataOutputStream output) {
+            super("GShell Client Input");
+
+            this.output = output;
+
+            setDaemon(true);
+        }
+
+        public synchronized void request() {
+            if (!started) {
+                started = true;
+                start();
+            }
+
+            requested++;
+            notifyAll();
+        }
+
+        private synchronized void awaitRequest() throws InterruptedException {
+            while (requested == 0) {
+                wait();
+            }
+
+            requested--;
+        }
+
+        public void run() {
+            byte[] buffer = new byte[4096];
+
+            try {
+                while (true) {
+                    awaitRequest();
+
+                    int n = System.in.read(buffer);
+
+                    synchronized (output) {
+                        if (n == -1) {
+                            output.writeByte(FRAME_IN_CLOSED);
+                            output.flush();
+                            break;
+                        }
+
+                        output.writeByte(FRAME_IN);
+                        output.writeInt(n);
+                        output.write(buffer, 0, n);
+                        output.flush();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                // Ignore
+            }
+            catch (IOException e) {
+                // Connection closed once the command completed
+            }
+        }
+    }
+}
@@ -19,7 +19,11 @@
 
 package org.apache.geronimo.gshell.bootstrap;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 
 /**
  * Platform independent launcher to setup common configuration and delegate to
@@ -31,6 +35,21 @@ public class Launcher
 {
     private static boolean debug = Boolean.getBoolean(Launcher.class.getName() + ".debug");
 
+    /**
+     * Set to the time the launcher was started, so the CLI can report how long booting took.
+     */
+    public static final String START_TIME_PROPERTY = Launcher.class.getName() + ".startTime";
+
+    /**
+     * Set to the time the launcher delegated to Classworlds.
+     */
+    public static final String BOOT_TIME_PROPERTY = Launcher.class.getName() + ".bootTime";
+
+    /**
+     * When true, run the main class from the system classpath instead of booting Classworlds.
+     */
+    public static final String FLAT_PROPERTY = Launcher.class.getName() + ".flat";
+
     private static String programName;
     
     private static File homeDir;
@@ -38,6 +57,8 @@ public class Launcher
     public static void main(final String[] args) throws Exception {
         assert args != null;
 
+        setProperty(START_TIME_PROPERTY, String.valueOf(System.currentTimeMillis()));
+
         programName = getProgramName();
         setProperty("program.name", programName);
 
@@ -50,8 +71,65 @@ public class Launcher
         File log4jConf = getLog4jConf();
         setProperty("log4j.configuration", log4jConf.toURL().toString());
 
-        // Delegate to the Classworlds launcher to finish booting
-        org.codehaus.classworlds.Launcher.main(args);
+        setProperty(BOOT_TIME_PROPERTY, String.valueOf(System.currentTimeMillis()));
+
+        if (Boolean.getBoolean(FLAT_PROPERTY)) {
+            launchFlat(classworldsConf, args);
+        }
+        else {
+            // Delegate to the Classworlds launcher to finish booting
+            org.codehaus.classworlds.Launcher.main(args);
+        }
+    }
+
+    /**
+     * Invoke the main class named in the Classworlds configuration, which the caller has
+     * already put on the system classpath along with everything it needs.
+     *
+     * <p>
+     * This keeps all classes in the system class loader, so they can be put in a
+     * class data sharing archive.
+     */
+    private static void launchFlat(final File classworldsConf, final String[] args) throws Exception {
+        String mainClassName = getMainClassName(classworldsConf);
+        debug("Launching flat: " + mainClassName);
+
+        Class<?> type = ClassLoader.getSystemClassLoader().loadClass(mainClassName);
+        Method method = type.getMethod("main", new Class<?>[] { String[].class });
+
+        try {
+            method.invoke(null, new Object[] { args });
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            throw e;
+        }
+    }
+
+    private static String getMainClassName(final File classworldsConf) throws Exception {
+        BufferedReader reader = new BufferedReader(new FileReader(classworldsConf));
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Format is: main is <class> from <realm>
+                line = line.trim();
+                if (line.startsWith("main is ")) {
+                    String name = line.substring("main is ".length()).trim();
+                    int i = name.indexOf(' ');
+
+                    return i == -1 ? name : name.substring(0, i);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        throw new IllegalStateException("Missing main class in: " + classworldsConf);
     }
 
     private static void debug(final String message) {
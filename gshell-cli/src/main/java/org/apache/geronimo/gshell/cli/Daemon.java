@@ -0,0 +1,695 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.cli;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gshell.ExitNotification;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.ShellFactory;
+import org.apache.geronimo.gshell.command.StandardVariables;
+import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.console.IO;
+import org.apache.geronimo.gshell.util.Arguments;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident shell server, which runs commands for thin clients so they do not each pay for
+ * booting a JVM and discovering commands.
+ *
+ * <p>
+ * All requests share one {@link ShellFactory}, so command definitions, loaded classes and the
+ * parse cache stay warm between requests; each request gets its own {@link Shell}.
+ *
+ * <p>
+ * The daemon listens on the loopback interface only, and writes its port and a random token
+ * to a file which only the user starting it can read; clients must present the token.  Java 5
+ * has no UNIX domain sockets, nor an API for file permissions, so the file is made readable by
+ * the user only with <tt>chmod</tt>.  Its directory is always restricted to the user first, and
+ * the file is written to a new file in it which is renamed into place once complete; the daemon
+ * refuses to start where that fails.
+ *
+ * <p>
+ * Protocol, all numbers in network order and strings as modified UTF-8:
+ * <pre>
+ *   client: int MAGIC, utf token, byte REQUEST_RUN, int argc, utf arg..., utf cwd,
+ *           int envc, (utf name, utf value)...
+ *           then one FRAME_IN (int length, bytes) or FRAME_IN_CLOSED for each FRAME_IN_REQUEST
+ *   daemon: any number of FRAME_OUT or FRAME_ERR (int length, bytes), and FRAME_IN_REQUEST
+ *           whenever the command reads past the input received, then FRAME_EXIT (int code)
+ * </pre>
+ * So the client only reads its standard input for commands which read theirs.
+ * A REQUEST_STOP request stops the daemon, and is answered with FRAME_EXIT only.
+ *
+ * <p>
+ * The thin client is <tt>org.apache.geronimo.gshell.bootstrap.Client</tt>, which has a copy of
+ * these constants, as it can not depend on this module.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Daemon
+{
+    private static final Log log = LogFactory.getLog(Daemon.class);
+
+    /**
+     * System property to configure the file the port and token are written to.
+     */
+    public static final String FILE_PROPERTY = Daemon.class.getName() + ".file";
+
+    /**
+     * System property to configure the port to listen on; default is any free port.
+     */
+    public static final String PORT_PROPERTY = Daemon.class.getName() + ".port";
+
+    public static final String PORT = "port";
+
+    public static final String TOKEN = "token";
+
+    public static final int MAGIC = 0x47534844;
+
+    public static final byte REQUEST_RUN = 'R';
+
+    public static final byte REQUEST_STOP = 'S';
+
+    public static final byte FRAME_IN_REQUEST = 'Q';
+
+    public static final byte FRAME_IN = 'I';
+
+    public static final byte FRAME_IN_CLOSED = 'C';
+
+    public static final byte FRAME_OUT = 'O';
+
+    public static final byte FRAME_ERR = 'E';
+
+    public static final byte FRAME_EXIT = 'X';
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final ShellFactory shellFactory;
+
+    private final File file;
+
+    private final String token;
+
+    private final ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean running;
+
+    public Daemon(final ShellFactory shellFactory, final File file) {
+        if (shellFactory == null) {
+            throw new NullArgumentException("shellFactory");
+        }
+        if (file == null) {
+            throw new NullArgumentException("file");
+        }
+
+        this.shellFactory = shellFactory;
+        this.file = file;
+        this.token = createToken();
+
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable task) {
+                Thread t = new Thread(task, "GShell Daemon Request-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * The file clients find the daemon with, unless configured by {@link #FILE_PROPERTY}.
+     */
+    public static File getDefaultFile() {
+        String path = System.getProperty(FILE_PROPERTY);
+        if (path != null) {
+            return new File(path);
+        }
+
+        return new File(new File(System.getProperty("user.home"), ".gshell"), "daemon.properties");
+    }
+
+    private static String createToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+
+        StringBuffer buff = new StringBuffer();
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(b & 0xff);
+            if (hex.length() == 1) {
+                buff.append('0');
+            }
+            buff.append(hex);
+        }
+
+        return buff.toString();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Bind the server socket and publish the port and token, without accepting requests yet.
+     *
+     * @throws IOException  Failed to bind, or to publish the token where only this user can read it
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Already started");
+        }
+
+        ServerSocket socket = new ServerSocket(Integer.getInteger(PORT_PROPERTY, 0).intValue(), 50, InetAddress.getByName("127.0.0.1"));
+
+        try {
+            publish(socket.getLocalPort());
+        }
+        catch (IOException e) {
+            file.delete();
+            socket.close();
+            throw e;
+        }
+
+        serverSocket = socket;
+        running = true;
+
+        log.info("Listening on port " + serverSocket.getLocalPort() + "; published in: " + file);
+    }
+
+    private void publish(final int port) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(PORT, String.valueOf(port));
+        props.setProperty(TOKEN, token);
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+
+        // Restrict the directory, even when it already existed, so no other user can open files in it
+        chmod(dir, "700");
+
+        // Write to a new file in the restricted directory, and only then move it into place
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+
+        try {
+            chmod(tmp, "600");
+
+            OutputStream output = new FileOutputStream(tmp);
+            try {
+                props.store(output, "GShell daemon");
+            }
+            finally {
+                output.close();
+            }
+
+            if (!tmp.renameTo(file)) {
+                // Some platforms do not replace an existing file when renaming
+                file.delete();
+
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Failed to rename: " + tmp + " to: " + file);
+                }
+            }
+        }
+        finally {
+            tmp.delete();
+        }
+
+        file.deleteOnExit();
+    }
+
+    /**
+     * Compare the given token to ours, in a time which does not depend on where they differ.
+     */
+    private boolean isToken(final String value) {
+        assert value != null;
+
+        int diff = value.length() ^ token.length();
+
+        for (int i = 0; i < value.length(); i++) {
+            diff |= value.charAt(i) ^ token.charAt(i % token.length());
+        }
+
+        return diff == 0;
+    }
+
+    /**
+     * Set the permissions of a file with <tt>chmod</tt>, as Java 5 has no API for them.
+     */
+    private static void chmod(final File file, final String mode) throws IOException {
+        assert file != null;
+        assert mode != null;
+
+        Process process;
+
+        try {
+            process = Runtime.getRuntime().exec(new String[] { "chmod", mode, file.getPath() });
+        }
+        catch (IOException e) {
+            IOException failure = new IOException("Unable to restrict permissions of: " + file + "; " + e.getMessage());
+            failure.initCause(e);
+            throw failure;
+        }
+
+        int code;
+
+        try {
+            process.getOutputStream().close();
+            code = process.waitFor();
+        }
+        catch (InterruptedException e) {
+            process.destroy();
+            throw new InterruptedIOException("Interrupted while restricting permissions of: " + file);
+        }
+        finally {
+            process.getInputStream().close();
+            process.getErrorStream().close();
+        }
+
+        if (code != 0) {
+            throw new IOException("Unable to restrict permissions of: " + file + "; chmod " + mode + " exited with: " + code);
+        }
+    }
+
+    /**
+     * Accept requests until {@link #stop} is called.
+     */
+    public void run() throws IOException {
+        if (serverSocket == null) {
+            start();
+        }
+
+        while (running) {
+            final Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            }
+            catch (SocketException e) {
+                if (!running) {
+                    break;
+                }
+                throw e;
+            }
+
+            requests.incrementAndGet();
+            executor.execute(new Request(socket));
+        }
+
+        log.info("Stopped after " + requests.get() + " request(s)");
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+
+        file.delete();
+
+        try {
+            serverSocket.close();
+        }
+        catch (IOException e) {
+            log.warn("Failed to close server socket", e);
+        }
+
+        executor.shutdown();
+    }
+
+    /**
+     * Run a single request, the same way as a non-interactive run of the CLI.
+     */
+    private int execute(final IO io, final String[] args, final String cwd, final Map<String,String> env) throws Exception {
+        assert io != null;
+        assert args != null;
+
+        if (args.length == 0) {
+            io.err.println("Interactive mode is not supported by the daemon");
+            return 1;
+        }
+
+        Shell shell = shellFactory.create(io);
+
+        Variables vars = shell.getVariables();
+        vars.set(StandardVariables.CWD, cwd);
+        vars.set(StandardVariables.ENVIRONMENT, Collections.unmodifiableMap(env), false);
+
+        Object result = null;
+
+        try {
+            if (args.length == 2 && (args[0].equals("-c") || args[0].equals("--commands"))) {
+                shell.execute(args[1]);
+            }
+            else {
+                result = shell.execute(args[0], Arguments.shift(args));
+            }
+        }
+        catch (ExitNotification n) {
+            return n.getCode();
+        }
+        finally {
+            // Background jobs can not outlive the request, the client is gone once it completes
+            shell.getJobManager().close();
+        }
+
+        // If the result is a number, then pass that back to the client
+        if (result instanceof Number) {
+            return ((Number)result).intValue();
+        }
+
+        return 0;
+    }
+
+    //
+    // Request
+    //
+
+    private class Request
+        implements Runnable
+    {
+        private final Socket socket;
+
+        private DataInputStream input;
+
+        private DataOutputStream output;
+
+        public Request(final Socket socket) {
+            assert socket != null;
+
+            this.socket = socket;
+        }
+
+        public void run() {
+            active.incrementAndGet();
+
+            try {
+                input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                if (input.readInt() != MAGIC || !isToken(input.readUTF())) {
+                    log.warn("Rejected request from: " + socket.getRemoteSocketAddress());
+                    return;
+                }
+
+                byte type = input.readByte();
+
+                if (type == REQUEST_STOP) {
+                    log.info("Stop requested");
+                    exit(0);
+                    stop();
+                }
+                else if (type == REQUEST_RUN) {
+                    runCommand();
+                }
+                else {
+                    log.warn("Unknown request type: " + type);
+                }
+            }
+            catch (Exception e) {
+                log.warn("Request failed: " + e);
+            }
+            finally {
+                active.decrementAndGet();
+
+                try {
+                    socket.close();
+                }
+                catch (IOException ignore) {}
+            }
+        }
+
+        private void runCommand() throws IOException {
+            String[] args = new String[input.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = input.readUTF();
+            }
+
+            String cwd = input.readUTF();
+
+            Map<String,String> env = new HashMap<String,String>();
+            for (int i = input.readInt(); i > 0; i--) {
+                env.put(input.readUTF(), input.readUTF());
+            }
+
+            IO io = new IO(new FrameInputStream(input, output),
+                           new FrameOutputStream(output, FRAME_OUT),
+                           new FrameOutputStream(output, FRAME_ERR));
+
+            int code;
+
+            try {
+                code = execute(io, args, cwd, env);
+            }
+            catch (Exception e) {
+                log.debug("Command failed", e);
+                io.err.println("ERROR " + e);
+                code = 1;
+            }
+            finally {
+                io.flush();
+            }
+
+            exit(code);
+        }
+
+        private void exit(final int code) throws IOException {
+            synchronized (output) {
+                output.writeByte(FRAME_EXIT);
+                output.writeInt(code);
+                output.flush();
+            }
+        }
+    }
+
+    //
+    // FrameOutputStream
+    //
+
+    /**
+     * Buffers output and sends it to the client as frames of the given type when flushed.
+     */
+    static class FrameOutputStream
+        extends OutputStream
+    {
+        private final DataOutputStream output;
+
+        private final byte type;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int count;
+
+        public FrameOutputStream(final DataOutputStream output, final byte type) {
+            assert output != null;
+
+            this.output = output;
+            this.type = type;
+        }
+
+        public synchronized void write(final int b) throws IOException {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+
+            buffer[count++] = (byte)b;
+        }
+
+        public synchronized void write(final byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(bytes, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public synchronized void flush() throws IOException {
+            flushBuffer();
+
+            synchronized (output) {
+                output.flush();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count == 0) {
+                return;
+            }
+
+            // stdout and stderr frames share the connection
+            synchronized (output) {
+                output.writeByte(type);
+                output.writeInt(count);
+                output.write(buffer, 0, count);
+            }
+
+            count = 0;
+        }
+    }
+
+    //
+    // FrameInputStream
+    //
+
+    /**
+     * Reads the input the client sends in frames, requesting each frame once the command has
+     * read all of the previous one.
+     */
+    static class FrameInputStream
+        extends InputStream
+    {
+        private final DataInputStream input;
+
+        private final DataOutputStream output;
+
+        /** Bytes left in the current frame. */
+        private int remaining;
+
+        private boolean closed;
+
+        public FrameInputStream(final DataInputStream input, final DataOutputStream output) {
+            assert input != null;
+            assert output != null;
+
+            this.input = input;
+            this.output = output;
+        }
+
+        private boolean nextFrame() throws IOException {
+            while (remaining == 0 && !closed) {
+                // Shares the connection with the stdout and stderr frames
+                synchronized (output) {
+                    output.writeByte(FRAME_IN_REQUEST);
+                    output.flush();
+                }
+
+                byte type;
+
+                try {
+                    type = input.readByte();
+                }
+                catch (EOFException e) {
+                    closed = true;
+                    break;
+                }
+
+                if (type == FRAME_IN) {
+                    remaining = input.readInt();
+                }
+                else if (type == FRAME_IN_CLOSED) {
+                    closed = true;
+                }
+                else {
+                    throw new IOException("Unexpected frame type: " + type);
+                }
+            }
+
+            return remaining > 0;
+        }
+
+        public synchronized int read() throws IOException {
+            if (!nextFrame()) {
+                return -1;
+            }
+
+            remaining--;
+
+            return input.read();
+        }
+
+        public synchronized int read(final byte[] bytes, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!nextFrame()) {
+                return -1;
+            }
+
+            int n = input.read(bytes, off, Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+
+            return n;
+        }
+
+        public synchronized int available() throws IOException {
+            return Math.min(remaining, input.available());
+        }
+    }
+}
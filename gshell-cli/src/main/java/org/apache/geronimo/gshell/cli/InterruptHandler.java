@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.cli;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.console.InteractiveConsole;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Handles Ctrl-C (<tt>SIGINT</tt>) of the interactive shell by interrupting the command-line
+ * being executed, instead of letting it kill the JVM.
+ *
+ * <p>
+ * At the prompt Ctrl-C is ignored.  When a command-line is still running after it has been
+ * interrupted once, a further Ctrl-C exits; so a command which ignores being aborted can not
+ * hold the shell hostage.
+ *
+ * <p>
+ * Signals are handled with <tt>sun.misc.Signal</tt>, which is looked up reflectively as not all
+ * JVMs have it; on those Ctrl-C keeps its default behavior.
+ *
+ * @version $Rev$ $Date$
+ */
+public class InterruptHandler
+    implements InvocationHandler
+{
+    private static final Log log = LogFactory.getLog(InterruptHandler.class);
+
+    /** Exit code of a process killed by <tt>SIGINT</tt>, by shell convention. */
+    private static final int EXIT_CODE = 130;
+
+    private final InteractiveConsole console;
+
+    private final Shell shell;
+
+    private InterruptHandler(final InteractiveConsole console, final Shell shell) {
+        this.console = console;
+        this.shell = shell;
+    }
+
+    /**
+     * Install the handler for the given console and the shell it executes lines with.
+     *
+     * @return  True if installed; false if signals can not be handled on this JVM
+     */
+    public static boolean install(final InteractiveConsole console, final Shell shell) {
+        if (console == null) {
+            throw new NullArgumentException("console");
+        }
+        if (shell == null) {
+            throw new NullArgumentException("shell");
+        }
+
+        try {
+            Class<?> signalType = Class.forName("sun.misc.Signal");
+            Class<?> handlerType = Class.forName("sun.misc.SignalHandler");
+
+            Object handler = Proxy.newProxyInstance(handlerType.getClassLoader(), new Class<?>[] { handlerType },
+                new InterruptHandler(console, shell));
+            Object signal = signalType.getConstructor(String.class).newInstance("INT");
+
+            signalType.getMethod("handle", signalType, handlerType).invoke(null, signal, handler);
+
+            log.debug("Installed interrupt handler");
+
+            return true;
+        }
+        catch (Exception e) {
+            log.debug("Unable to handle interrupts: " + e);
+
+            return false;
+        }
+    }
+
+    private void handle() {
+        if (console.interrupt()) {
+            log.debug("Interrupted");
+        }
+        else if (shell.isBusy()) {
+            System.err.println();
+            System.err.println("Command did not stop when interrupted; exiting");
+            System.exit(EXIT_CODE);
+        }
+    }
+
+    //
+    // InvocationHandler
+    //
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        String name = method.getName();
+
+        if (name.equals("handle")) {
+            handle();
+            return null;
+        }
+        else if (name.equals("equals")) {
+            return proxy == args[0];
+        }
+        else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+
+        return InterruptHandler.class.getName();
+    }
+}
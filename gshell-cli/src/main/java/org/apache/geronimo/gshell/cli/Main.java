@@ -35,6 +35,9 @@ import org.apache.commons.logging.LogFactory;
 
 import org.apache.geronimo.gshell.Shell;
 import org.apache.geronimo.gshell.InteractiveShell;
+import org.apache.geronimo.gshell.ShellFactory;
+import org.apache.geronimo.gshell.command.CommandManagerImpl;
+import org.apache.geronimo.gshell.commandline.CommandLineCache;
 import org.apache.geronimo.gshell.console.IO;
 import org.apache.geronimo.gshell.console.Console;
 import org.apache.geronimo.gshell.console.JLineConsole;
@@ -65,8 +68,14 @@ public class Main
 
     private final StopWatch watch = new StopWatch();
 
+    private final StartupTimings timings = new StartupTimings();
+
+    private boolean timing;
+
     private boolean interactive;
 
+    private boolean daemon;
+
     private String commands;
 
     public Main(final ClassWorld world) {
@@ -130,6 +139,10 @@ public class Main
             .withDescription("Run in non-interactive mode")
             .create('n'));
 
+        options.addOption(OptionBuilder.withLongOpt("daemon")
+            .withDescription("Run as a daemon which executes commands for thin clients")
+            .create("daemon"));
+
         //
         // TODO: Add these output modifiers to a seperate group
         //
@@ -146,6 +159,10 @@ public class Main
             .withDescription("Limit logging output to ERROR")
             .create("quiet"));
 
+        options.addOption(OptionBuilder.withLongOpt("timing")
+            .withDescription("Display how long each phase of startup took")
+            .create("timing"));
+
         CommandLineParser parser = new PosixParser();
         CommandLine line = parser.parse(options, args, true);
 
@@ -217,6 +234,12 @@ public class Main
             interactive = false;
         }
 
+        timing = line.hasOption("timing");
+
+        daemon = line.hasOption("daemon");
+
+        timings.mark("options");
+
         int code;
         
         try {
@@ -240,14 +263,26 @@ public class Main
         // TODO: Need to pass Shell the ClassWorld, so that the application can add to it if needed
         //
 
+        if (daemon) {
+            return runDaemon();
+        }
+
+        // One-shot runs only use a few commands, so only load the definitions of those
+        boolean lazy = commands != null || !interactive || Boolean.getBoolean(CommandManagerImpl.LAZY_PROPERTY);
+
+        CommandManagerImpl commandManager = new CommandManagerImpl(lazy);
+        timings.mark("discovery");
+
         // Startup the shell
-        final Shell gshell = new Shell(io);
+        final Shell gshell = new Shell(io, commandManager, new CommandLineCache());
+        timings.mark("shell");
 
         //
         // TEMP: Log some info about the terminal
         //
 
         Terminal term = Terminal.getTerminal();
+        timings.mark("terminal");
 
         if (debug) {
             log.debug("Using terminal: " + term);
@@ -270,6 +305,7 @@ public class Main
 
         if (commands != null) {
             gshell.execute(commands);
+            printTimings("execute");
         }
         else if (interactive) {
             log.debug("Starting interactive console");
@@ -285,15 +321,21 @@ public class Main
             Console console = new JLineConsole(io);
             InteractiveShell interp = new InteractiveShell(console, gshell);
 
+            // Ctrl-C interrupts the running command-line, not the shell
+            InterruptHandler.install(interp, gshell);
+
             // Check if there are args, and run them and then enter interactive
             if (args.length != 0) {
                 gshell.execute(args);
             }
 
+            printTimings("execute");
+
             interp.run();
         }
         else {
             result = gshell.execute(args);
+            printTimings("execute");
         }
 
         if (debug) {
@@ -314,6 +356,32 @@ public class Main
         return code;
     }
 
+    private int runDaemon() throws Exception {
+        // Requests should never wait for discovery or class loading
+        CommandManagerImpl commandManager = new CommandManagerImpl(false);
+        commandManager.warmCommands(true);
+
+        ShellFactory factory = new ShellFactory(commandManager, new CommandLineCache());
+
+        Daemon server = new Daemon(factory, Daemon.getDefaultFile());
+        server.start();
+        printTimings("daemon");
+
+        server.run();
+
+        return 0;
+    }
+
+    private void printTimings(final String phase) {
+        assert phase != null;
+
+        timings.mark(phase);
+
+        if (timing) {
+            timings.print(io.err);
+        }
+    }
+
     //
     // Bootstrap
     //
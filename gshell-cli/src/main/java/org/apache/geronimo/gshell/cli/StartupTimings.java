@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.cli;
+
+import org.apache.commons.lang.NullArgumentException;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each phase of starting the CLI took, from JVM start up to the first command.
+ *
+ * <p>
+ * The bootstrap launcher runs in a different class loader, so it passes the times it
+ * started and handed off to Classworlds as system properties.  When the CLI is run without
+ * the launcher those phases are simply folded into the <tt>jvm</tt> phase.  The <tt>boot</tt> phase
+ * is Classworlds setting up its realms, or just loading the main class in flat launch mode.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StartupTimings
+{
+    /**
+     * System property set by <tt>bootstrap.Launcher</tt> to the time it was started.
+     */
+    public static final String LAUNCHER_START_PROPERTY = "org.apache.geronimo.gshell.bootstrap.Launcher.startTime";
+
+    /**
+     * System property set by <tt>bootstrap.Launcher</tt> to the time it delegated to Classworlds.
+     */
+    public static final String LAUNCHER_BOOT_PROPERTY = "org.apache.geronimo.gshell.bootstrap.Launcher.bootTime";
+
+    /**
+     * Prefix of each phase line printed by {@link #print}, so tools can pick them out of other output.
+     */
+    public static final String PREFIX = "[TIMING] ";
+
+    private final Map<String,Long> phases = new LinkedHashMap<String,Long>();
+
+    private final long start;
+
+    private long last;
+
+    public StartupTimings() {
+        start = ManagementFactory.getRuntimeMXBean().getStartTime();
+        last = start;
+
+        long launched = Long.getLong(LAUNCHER_START_PROPERTY, -1).longValue();
+        long booted = Long.getLong(LAUNCHER_BOOT_PROPERTY, -1).longValue();
+
+        if (launched >= start && booted >= launched) {
+            mark("jvm", launched);
+            mark("launcher", booted);
+            mark("boot");
+        }
+        else {
+            mark("jvm");
+        }
+    }
+
+    /**
+     * Record that a phase, which started when the previous one ended, has ended now.
+     *
+     * @param phase     The name of the phase; must not be null
+     */
+    public void mark(final String phase) {
+        mark(phase, System.currentTimeMillis());
+    }
+
+    private synchronized void mark(final String phase, final long time) {
+        if (phase == null) {
+            throw new NullArgumentException("phase");
+        }
+
+        long elapsed = Math.max(0, time - last);
+
+        // Time spent in a phase which is marked more than once accumulates
+        Long prev = phases.get(phase);
+        if (prev != null) {
+            elapsed += prev.longValue();
+        }
+
+        phases.put(phase, new Long(elapsed));
+        last = time;
+    }
+
+    /**
+     * Get the elapsed time of each phase, in the order they were first marked.
+     */
+    public synchronized Map<String,Long> getPhases() {
+        return new LinkedHashMap<String,Long>(phases);
+    }
+
+    /**
+     * Get the time from JVM start to the last marked phase.
+     */
+    public synchronized long getTotal() {
+        return last - start;
+    }
+
+    public void print(final PrintWriter out) {
+        if (out == null) {
+            throw new NullArgumentException("out");
+        }
+
+        for (Map.Entry<String,Long> entry : getPhases().entrySet()) {
+            print(out, entry.getKey(), entry.getValue().longValue());
+        }
+
+        print(out, "total", getTotal());
+
+        out.flush();
+    }
+
+    private void print(final PrintWriter out, final String phase, final long elapsed) {
+        StringBuffer buff = new StringBuffer(PREFIX);
+        buff.append(phase);
+
+        for (int i = phase.length(); i < 16; i++) {
+            buff.append(' ');
+        }
+
+        String value = String.valueOf(elapsed);
+        for (int i = value.length(); i < 8; i++) {
+            buff.append(' ');
+        }
+
+        buff.append(value).append(" ms");
+
+        out.println(buff);
+    }
+
+    public synchronized String toString() {
+        return "StartupTimings{ phases=" + phases + ", total=" + getTotal() + " }";
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.cli;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.ShellFactory;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.console.IO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Unit tests for the {@link Daemon} class, and its protocol.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DaemonTest
+    extends TestCase
+{
+    private File dir;
+
+    private Daemon daemon;
+
+    private Thread runner;
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("daemon", ".test");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        if (daemon != null) {
+            daemon.stop();
+        }
+        if (runner != null) {
+            runner.join(5000);
+        }
+
+        delete(dir);
+    }
+
+    private void delete(final File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    private void startDaemon() throws Exception {
+        daemon = new Daemon(new TestShellFactory(), new File(new File(dir, "gshell"), "daemon.properties"));
+        daemon.start();
+
+        runner = new Thread("Daemon Runner") {
+            public void run() {
+                try {
+                    daemon.run();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        runner.start();
+    }
+
+    private Properties load(final File file) throws IOException {
+        Properties props = new Properties();
+        InputStream input = new FileInputStream(file);
+
+        try {
+            props.load(input);
+        }
+        finally {
+            input.close();
+        }
+
+        return props;
+    }
+
+    private Socket connect(final String token) throws IOException {
+        Properties props = load(daemon.getFile());
+        assertEquals(String.valueOf(daemon.getPort()), props.getProperty(Daemon.PORT));
+
+        Socket socket = new Socket("127.0.0.1", daemon.getPort());
+        socket.setSoTimeout(5000);
+
+        DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+        output.writeInt(Daemon.MAGIC);
+        output.writeUTF(token != null ? token : props.getProperty(Daemon.TOKEN));
+
+        return socket;
+    }
+
+    /**
+     * Run a command as the client does, sending the input in one frame when it is first requested.
+     */
+    private Response run(final String input, final String... args) throws IOException {
+        Socket socket = connect(null);
+
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeByte(Daemon.REQUEST_RUN);
+            output.writeInt(args.length);
+            for (String arg : args) {
+                output.writeUTF(arg);
+            }
+            output.writeUTF(dir.getPath());
+            output.writeInt(0);
+            output.flush();
+
+            return new Response(new DataInputStream(new BufferedInputStream(socket.getInputStream())), output, input);
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    //
+    // Response
+    //
+
+    private static class Response
+    {
+        public final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        public final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        public int inputRequests;
+
+        public final int code;
+
+        public Response(final DataInputStream input, final DataOutputStream output, final String text) throws IOException {
+            while (true) {
+                byte type = input.readByte();
+
+                if (type == Daemon.FRAME_EXIT) {
+                    code = input.readInt();
+                    break;
+                }
+                else if (type == Daemon.FRAME_IN_REQUEST) {
+                    if (inputRequests++ == 0 && text != null) {
+                        byte[] bytes = text.getBytes();
+                        output.writeByte(Daemon.FRAME_IN);
+                        output.writeInt(bytes.length);
+                        output.write(bytes);
+                    }
+                    else {
+                        output.writeByte(Daemon.FRAME_IN_CLOSED);
+                    }
+                    output.flush();
+                }
+                else {
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+
+                    if (type == Daemon.FRAME_OUT) {
+                        out.write(bytes);
+                    }
+                    else if (type == Daemon.FRAME_ERR) {
+                        err.write(bytes);
+                    }
+                    else {
+                        fail("Unexpected frame type: " + type);
+                    }
+                }
+            }
+        }
+    }
+
+    //
+    // Frame streams
+    //
+
+    public void testFrameOutputStream() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Daemon.FrameOutputStream output = new Daemon.FrameOutputStream(new DataOutputStream(bytes), Daemon.FRAME_ERR);
+
+        output.write('a');
+        output.write("bc".getBytes(), 0, 2);
+        assertEquals("Sent before flushed", 0, bytes.size());
+
+        output.flush();
+        output.flush();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(Daemon.FRAME_ERR, input.readByte());
+        assertEquals(3, input.readInt());
+        byte[] data = new byte[3];
+        input.readFully(data);
+        assertEquals("abc", new String(data));
+        assertEquals("Empty frame sent", -1, input.read());
+    }
+
+    public void testFrameOutputStreamSplitsLargeWrites() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Daemon.FrameOutputStream output = new Daemon.FrameOutputStream(new DataOutputStream(bytes), Daemon.FRAME_OUT);
+
+        byte[] data = new byte[20 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)i;
+        }
+
+        output.write(data, 0, data.length);
+        output.flush();
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        int frames = 0;
+
+        while (input.available() > 0) {
+            assertEquals(Daemon.FRAME_OUT, input.readByte());
+            byte[] frame = new byte[input.readInt()];
+            input.readFully(frame);
+            received.write(frame);
+            frames++;
+        }
+
+        assertEquals(3, frames);
+        assertTrue(Arrays.equals(data, received.toByteArray()));
+    }
+
+    public void testFrameInputStream() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream client = new DataOutputStream(frames);
+        client.writeByte(Daemon.FRAME_IN);
+        client.writeInt(3);
+        client.writeBytes("abc");
+        client.writeByte(Daemon.FRAME_IN);
+        client.writeInt(2);
+        client.writeBytes("de");
+        client.writeByte(Daemon.FRAME_IN_CLOSED);
+
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        Daemon.FrameInputStream input = new Daemon.FrameInputStream(
+            new DataInputStream(new ByteArrayInputStream(frames.toByteArray())), new DataOutputStream(requests));
+
+        assertEquals("Requested before read", 0, requests.size());
+
+        byte[] buffer = new byte[10];
+        assertEquals(3, input.read(buffer, 0, buffer.length));
+        assertEquals("abc", new String(buffer, 0, 3));
+        assertEquals(1, requests.size());
+
+        assertEquals('d', input.read());
+        assertEquals('e', input.read());
+        assertEquals(2, requests.size());
+
+        assertEquals(-1, input.read(buffer, 0, buffer.length));
+        assertEquals(-1, input.read());
+        assertEquals("Requested after closed", 3, requests.size());
+
+        for (byte type : requests.toByteArray()) {
+            assertEquals(Daemon.FRAME_IN_REQUEST, type);
+        }
+    }
+
+    public void testFrameInputStreamRejectsUnknownFrame() throws Exception {
+        Daemon.FrameInputStream input = new Daemon.FrameInputStream(
+            new DataInputStream(new ByteArrayInputStream(new byte[] { Daemon.FRAME_OUT })),
+            new DataOutputStream(new ByteArrayOutputStream()));
+
+        try {
+            input.read();
+            fail("Accepted unknown frame");
+        }
+        catch (IOException expected) {
+            // ignore
+        }
+    }
+
+    //
+    // Requests
+    //
+
+    public void testExitCode() throws Exception {
+        startDaemon();
+
+        assertEquals(42, run(null, "code", "42").code);
+        assertEquals(3, run(null, "exit", "3").code);
+        assertEquals(0, run(null, "print", "hi").code);
+    }
+
+    public void testOutput() throws Exception {
+        startDaemon();
+
+        Response response = run(null, "print", "hi");
+        assertEquals("hi", response.out.toString());
+        assertEquals("", response.err.toString());
+
+        response = run(null, "warn", "oops");
+        assertEquals("", response.out.toString());
+        assertEquals("oops", response.err.toString());
+    }
+
+    public void testInputOnlyWhenRequested() throws Exception {
+        startDaemon();
+
+        Response response = run("ignored", "print", "hi");
+        assertEquals(0, response.inputRequests);
+
+        response = run("abc\n", "read");
+        assertEquals("abc\n", response.out.toString());
+        assertEquals(2, response.inputRequests);
+        assertEquals(0, response.code);
+    }
+
+    public void testWorkingDirectory() throws Exception {
+        startDaemon();
+
+        assertEquals(dir.getPath(), run(null, "cwd").out.toString());
+    }
+
+    public void testRejectsBadToken() throws Exception {
+        startDaemon();
+
+        Socket socket = connect("bad");
+
+        try {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeByte(Daemon.REQUEST_RUN);
+            output.flush();
+
+            assertEquals("Answered bad token", -1, socket.getInputStream().read());
+        }
+        catch (IOException expected) {
+            // Connection reset
+        }
+        finally {
+            socket.close();
+        }
+
+        assertTrue(daemon.isRunning());
+        assertEquals(7, run(null, "code", "7").code);
+    }
+
+    public void testStopRequest() throws Exception {
+        startDaemon();
+
+        Socket socket = connect(null);
+
+        try {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeByte(Daemon.REQUEST_STOP);
+            output.flush();
+
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            assertEquals(Daemon.FRAME_EXIT, input.readByte());
+            assertEquals(0, input.readInt());
+
+            try {
+                input.readByte();
+                fail("Connection not closed");
+            }
+            catch (EOFException expected) {
+                // ignore
+            }
+        }
+        finally {
+            socket.close();
+        }
+
+        runner.join(5000);
+        assertFalse(runner.isAlive());
+        assertFalse(daemon.isRunning());
+        assertFalse("File not removed", daemon.getFile().exists());
+    }
+
+    /**
+     * Get the permissions of a file as listed by <tt>ls</tt>, or null where there is no <tt>ls</tt>.
+     */
+    private String listMode(final File file) throws Exception {
+        Process process;
+
+        try {
+            process = Runtime.getRuntime().exec(new String[] { "ls", "-ld", file.getPath() });
+        }
+        catch (IOException e) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream input = process.getInputStream();
+        int b;
+        while ((b = input.read()) != -1) {
+            out.write(b);
+        }
+
+        if (process.waitFor() != 0) {
+            return null;
+        }
+
+        return out.toString().substring(0, 10);
+    }
+
+    public void testPublishedPrivately() throws Exception {
+        File parent = new File(dir, "gshell");
+        parent.mkdirs();
+
+        // A directory which already exists is restricted too
+        Process process;
+        try {
+            process = Runtime.getRuntime().exec(new String[] { "chmod", "755", parent.getPath() });
+        }
+        catch (IOException e) {
+            // No chmod, so no permissions to check
+            return;
+        }
+        assertEquals(0, process.waitFor());
+        assertEquals("drwxr-xr-x", listMode(parent));
+
+        // And an old file is replaced
+        new FileOutputStream(new File(parent, "daemon.properties")).close();
+
+        startDaemon();
+
+        assertEquals("drwx------", listMode(parent));
+        assertEquals("-rw-------", listMode(daemon.getFile()));
+        assertEquals(String.valueOf(daemon.getPort()), load(daemon.getFile()).getProperty(Daemon.PORT));
+        assertEquals("Temporary file left", 1, parent.list().length);
+    }
+
+    public void testRefusesToStartUnpublished() throws Exception {
+        File parent = new File(dir, "file");
+        new FileOutputStream(parent).close();
+
+        daemon = new Daemon(new TestShellFactory(), new File(parent, "daemon.properties"));
+
+        try {
+            daemon.start();
+            fail("Started without publishing the token");
+        }
+        catch (IOException expected) {
+            // ignore
+        }
+
+        assertEquals(-1, daemon.getPort());
+        assertFalse(daemon.isRunning());
+    }
+
+    //
+    // TestShellFactory
+    //
+
+    /**
+     * Creates shells with a few commands of their own, as the standard commands are not available here.
+     */
+    private static class TestShellFactory
+        extends ShellFactory
+    {
+        public TestShellFactory() throws CommandException {
+            super();
+        }
+
+        public Shell create(final IO io) throws CommandException {
+            return new Shell(io, getCommandManager(), getCommandLineCache()) {
+                public Object execute(final String name, final Object[] args) throws Exception {
+                    if (name.equals("code")) {
+                        return Integer.valueOf(String.valueOf(args[0]));
+                    }
+                    else if (name.equals("print")) {
+                        io.out.print(args[0]);
+                    }
+                    else if (name.equals("warn")) {
+                        io.err.print(args[0]);
+                    }
+                    else if (name.equals("cwd")) {
+                        io.out.print(getVariables().get("gshell.cwd"));
+                    }
+                    else if (name.equals("read")) {
+                        byte[] buffer = new byte[16];
+                        int n;
+                        while ((n = io.inputStream.read(buffer)) != -1) {
+                            io.outputStream.write(buffer, 0, n);
+                        }
+                    }
+                    else {
+                        return super.execute(name, args);
+                    }
+
+                    return null;
+                }
+            };
+        }
+    }
+}
@@ -75,17 +75,11 @@ public class ScriptCommand
     protected boolean processCommandLine(final CommandLine line) throws CommandException {
         assert line != null;
 
-        if (line.hasOption('l')) {
-            this.language = line.getOptionValue('l');
-        }
+        this.language = line.getOptionValue('l');
 
-        if (line.hasOption('e')) {
-            this.expression = line.getOptionValue('e');
-        }
+        this.expression = line.getOptionValue('e');
 
-        if (line.hasOption('i')) {
-            this.interactive = true;
-        }
+        this.interactive = line.hasOption('i');
 
         return false;
     }
@@ -28,25 +28,65 @@ import org.apache.geronimo.gshell.command.Command;
 import org.apache.geronimo.gshell.command.CommandSupport;
 import org.apache.geronimo.gshell.command.MessageSource;
 import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.commands.standard.util.LineNumberer;
 import org.apache.geronimo.gshell.console.IO;
 import org.apache.geronimo.gshell.util.Arguments;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
  * Concatenate and print files and/or URLs.
  *
+ * <p>
+ * Unless numbering lines, the bytes are copied to the output as they are, without decoding
+ * them into lines; files through {@link FileChannel#transferTo}, which lets the OS copy them
+ * directly when the output is a file or socket.  Numbered lines of files are written by a
+ * {@link LineNumberer}, which works on chunks of the file in parallel.  Files of no known size,
+ * as pipes and devices, are read as streams.
+ *
+ * <p>
+ * When {@link #abort aborted}, as by a timeout, the file or URL being read is closed, so a
+ * blocked read returns, and fails with an {@link InterruptedIOException}.  Standard input is
+ * left open, as it belongs to the shell.
+ *
  * @version $Rev$ $Date$
  */
 public class CatCommand
     extends CommandSupport
 {
+    /**
+     * System property to disable copying bytes, and always print line by line.
+     */
+    public static final String TRANSFER_PROPERTY = CatCommand.class.getName() + ".transfer";
+
+    /**
+     * True if lines can be found by looking for a newline byte, in the default encoding.
+     */
+    private static final boolean NEWLINE_IS_BYTE = Arrays.equals("\n".getBytes(), new byte[] { '\n' });
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private boolean displayLineNumbers;
+
+    /** The file or URL being read; closed to abort. */
+    private volatile Closeable reading;
+
+    private volatile boolean aborted;
     
     public CatCommand() {
         super("cat");
@@ -71,9 +111,7 @@ public class CatCommand
     protected boolean processCommandLine(final CommandLine line) throws CommandException {
         assert line != null;
 
-        if (line.hasOption('n')) {
-            displayLineNumbers = true;
-        }
+        displayLineNumbers = line.hasOption('n');
 
         return false;
     }
@@ -92,9 +130,11 @@ public class CatCommand
         }
 
         IO io = getIO();
+        boolean transfer = isTransferEnabled();
+        aborted = false;
 
         for (String filename : files) {
-            BufferedReader reader;
+            InputStream input;
 
             //
             // Support "-" if length is one, and read from io.in
@@ -102,38 +142,177 @@ public class CatCommand
             //
             if (files.length == 1 && "-".equals(files[0])) {
                 log.info("Printing STDIN");
-                reader = new BufferedReader(io.in);
+                input = io.inputStream;
             }
             else {
                 // First try a URL
                 try {
                     URL url = new URL(filename);
                     log.info("Printing URL: " + url);
-                    reader = new BufferedReader(new InputStreamReader(url.openStream()));
+                    input = url.openStream();
                 }
                 catch (MalformedURLException ignore) {
                     // They try a file
-                    File file = new File(filename);
+                    File file = resolveFile(filename);
                     log.info("Printing file: " + file);
-                    reader = new BufferedReader(new FileReader(file));
+                    input = new FileInputStream(file);
                 }
             }
 
-            String line;
-            int lineno = 1;
+            if (input != io.inputStream) {
+                reading = input;
+            }
 
-            while ((line = reader.readLine()) != null) {
-                if (displayLineNumbers) {
-                    String gutter = StringUtils.leftPad(String.valueOf(lineno++), 6);
-                    io.out.print(gutter);
-                    io.out.print("  ");
+            try {
+                if (transfer && !displayLineNumbers) {
+                    copy(input, io);
+                }
+                else if (transfer && NEWLINE_IS_BYTE && isSized(input)) {
+                    number((FileInputStream)input, io);
+                }
+                else if (input == io.inputStream) {
+                    printLines(new BufferedReader(io.in), io);
+                }
+                else {
+                    printLines(new BufferedReader(new InputStreamReader(interruptible(input))), io);
                 }
-                io.out.println(line);
             }
+            catch (IOException e) {
+                // Whatever closing the input made the read fail with
+                if (aborted) {
+                    InterruptedIOException failure = new InterruptedIOException("Aborted");
+                    failure.initCause(e);
+                    throw failure;
+                }
+
+                throw e;
+            }
+            finally {
+                reading = null;
 
-            reader.close();
+                if (input != io.inputStream) {
+                    input.close();
+                }
+            }
         }
 
         return Command.SUCCESS;
     }
+
+    /**
+     * Close the file or URL being read, so a read blocked on a pipe or connection returns.
+     */
+    public void abort() {
+        aborted = true;
+
+        Closeable tmp = reading;
+
+        if (tmp != null) {
+            log.info("Aborted; closing input");
+
+            try {
+                tmp.close();
+            }
+            catch (IOException e) {
+                log.debug("Failed to close input", e);
+            }
+        }
+    }
+
+    /**
+     * Check if the input is a file of known size, to work on its channel; else it is read as a stream.
+     */
+    private boolean isSized(final InputStream input) throws IOException {
+        return input instanceof FileInputStream && ((FileInputStream)input).getChannel().size() > 0;
+    }
+
+    /**
+     * Read files through their channel, as a read blocked on a stream is not woken up when it is closed.
+     */
+    private InputStream interruptible(final InputStream input) {
+        if (input instanceof FileInputStream) {
+            return Channels.newInputStream(((FileInputStream)input).getChannel());
+        }
+
+        return input;
+    }
+
+    private boolean isTransferEnabled() {
+        return Boolean.valueOf(System.getProperty(TRANSFER_PROPERTY, "true")).booleanValue();
+    }
+
+    private void printLines(final BufferedReader reader, final IO io) throws IOException {
+        assert reader != null;
+        assert io != null;
+
+        String line;
+        int lineno = 1;
+
+        while ((line = reader.readLine()) != null) {
+            if (displayLineNumbers) {
+                String gutter = StringUtils.leftPad(String.valueOf(lineno++), 6);
+                io.out.print(gutter);
+                io.out.print("  ");
+            }
+            io.out.println(line);
+        }
+    }
+
+    private void number(final FileInputStream input, final IO io) throws IOException {
+        assert input != null;
+        assert io != null;
+
+        io.out.flush();
+
+        new LineNumberer().number(input.getChannel(), io.outputStream);
+
+        io.outputStream.flush();
+    }
+
+    private void copy(final InputStream input, final IO io) throws IOException {
+        assert input != null;
+        assert io != null;
+
+        // Anything printed before must come out first
+        io.out.flush();
+
+        OutputStream output = io.outputStream;
+
+        if (isSized(input)) {
+            FileChannel channel = ((FileInputStream)input).getChannel();
+
+            // NOTE: Closing either channel would close the output
+            WritableByteChannel target;
+            if (output instanceof FileOutputStream) {
+                target = ((FileOutputStream)output).getChannel();
+            }
+            else {
+                target = Channels.newChannel(output);
+            }
+
+            long position = channel.position();
+            long size = channel.size();
+
+            while (position < size) {
+                long n = channel.transferTo(position, size - position, target);
+                if (n <= 0) {
+                    // Truncated while we were at it
+                    break;
+                }
+
+                position += n;
+            }
+        }
+        else {
+            InputStream source = interruptible(input);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+
+            while ((n = source.read(buffer)) != -1) {
+                output.write(buffer, 0, n);
+            }
+        }
+
+        output.flush();
+    }
 }
@@ -58,9 +58,7 @@ public class EchoCommand
     protected boolean processCommandLine(final CommandLine line) throws CommandException {
         assert line != null;
 
-        if (line.hasOption('n')) {
-            trailingNewline = false;
-        }
+        trailingNewline = !line.hasOption('n');
 
         return false;
     }
@@ -25,9 +25,13 @@ import org.apache.commons.cli.Options;
 import org.apache.geronimo.gshell.command.CommandSupport;
 import org.apache.geronimo.gshell.command.CommandException;
 import org.apache.geronimo.gshell.command.MessageSource;
+import org.apache.geronimo.gshell.command.Variables;
 import org.apache.geronimo.gshell.console.IO;
 import org.apache.geronimo.gshell.commands.standard.util.PumpStreamHandler;
 
+import java.io.File;
+import java.util.Map;
+
 /**
  * Execute system processes.
  *
@@ -38,6 +42,8 @@ public class ExecuteCommand
 {
     private ProcessBuilder builder;
 
+    private volatile Process process;
+
     public ExecuteCommand() {
         super("exec");
     }
@@ -72,11 +78,11 @@ public class ExecuteCommand
         }
 
         //
-        // TODO: Allow ENV to be changed (default is given environ)
+        // TODO: Allow ENV to be changed (default is given environ, or that of the daemon client)
         //
 
         //
-        // TODO: Allow working dir to be set (default is user.dir)
+        // TODO: Allow working dir to be set (default is user.dir, or that of the daemon client)
         //
 
         //
@@ -106,11 +112,10 @@ public class ExecuteCommand
 
         IO io = getIO();
 
-        //
-        // TODO: May need to expose the Process's destroy() if Command abort() is issued?
-        //
+        applyClientContext();
 
         Process p = builder.start();
+        process = p;
 
         PumpStreamHandler handler = new PumpStreamHandler(io);
         handler.attach(p);
@@ -118,7 +123,20 @@ public class ExecuteCommand
 
         log.debug("Waiting for process to exit...");
 
-        int status = p.waitFor();
+        int status;
+
+        try {
+            status = p.waitFor();
+        }
+        catch (InterruptedException e) {
+            log.info("Interrupted; destroying process");
+
+            p.destroy();
+            status = p.waitFor();
+        }
+        finally {
+            process = null;
+        }
 
         if (info) {
             log.info("Process exited w/status: " + status);
@@ -128,4 +146,40 @@ public class ExecuteCommand
 
         return status;
     }
+
+    /**
+     * Destroy the process, so it does not outlive the command.
+     */
+    public void abort() {
+        Process p = process;
+
+        if (p != null) {
+            log.info("Aborted; destroying process");
+            p.destroy();
+        }
+    }
+
+    /**
+     * Use the working directory and environment of the client, when run for one by the daemon.
+     */
+    private void applyClientContext() {
+        Variables vars = getVariables();
+
+        File cwd = getWorkingDirectory();
+        if (cwd != null) {
+            builder.directory(cwd);
+        }
+
+        // Name from StandardVariables, which is not visible to commands
+
+        Object env = vars.get("gshell.environment");
+        if (env instanceof Map) {
+            Map<String,String> environment = builder.environment();
+            environment.clear();
+
+            for (Map.Entry<?,?> entry : ((Map<?,?>)env).entrySet()) {
+                environment.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+            }
+        }
+    }
 }
@@ -44,7 +44,9 @@ import java.lang.reflect.Method;
 public class JavaCommand
     extends CommandSupport
 {
-    private String methodName = "main";
+    private static final String DEFAULT_METHOD_NAME = "main";
+
+    private String methodName = DEFAULT_METHOD_NAME;
 
     public JavaCommand() {
         super("java");
@@ -84,6 +86,9 @@ public class JavaCommand
         if (line.hasOption('M')) {
             methodName = line.getOptionValue('M');
         }
+        else {
+            methodName = DEFAULT_METHOD_NAME;
+        }
 
         return false;
     }
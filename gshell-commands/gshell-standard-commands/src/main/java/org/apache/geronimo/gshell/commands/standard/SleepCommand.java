@@ -66,8 +66,10 @@ public class SleepCommand
         try {
             Thread.sleep(time);
         }
-        catch (InterruptedException ignore) {
+        catch (InterruptedException e) {
             log.debug("Sleep was interrupted... :-(");
+
+            return Command.FAILURE;
         }
 
         log.info("Awake now");
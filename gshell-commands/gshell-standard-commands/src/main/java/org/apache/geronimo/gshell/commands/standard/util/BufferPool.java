@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.commands.standard.util;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Pool of byte buffers for {@link StreamPumper}s, so pumps of short lived processes do not
+ * each allocate their own.
+ *
+ * <p>
+ * Buffers come in sizes which are a power of two, from {@link #MIN_SIZE} to {@link #MAX_SIZE};
+ * only so many of each size are kept.
+ *
+ * @version $Rev$ $Date$
+ */
+class BufferPool
+{
+    public static final int MIN_SIZE = 1024;
+
+    public static final int MAX_SIZE = 64 * 1024;
+
+    static final int MAX_POOLED = 16;
+
+    /** Free buffers, by the power of two of their size. */
+    private static final List<LinkedList<byte[]>> pools = createPools();
+
+    private static List<LinkedList<byte[]>> createPools() {
+        int count = indexOf(MAX_SIZE) + 1;
+        List<LinkedList<byte[]>> tmp = new ArrayList<LinkedList<byte[]>>(count);
+
+        for (int i = 0; i < count; i++) {
+            tmp.add(new LinkedList<byte[]>());
+        }
+
+        return tmp;
+    }
+
+    private static int indexOf(final int size) {
+        return 31 - Integer.numberOfLeadingZeros(size);
+    }
+
+    /**
+     * Get a buffer of at least the given size, up to {@link #MAX_SIZE}.
+     */
+    public static byte[] acquire(final int size) {
+        int n;
+        if (size <= MIN_SIZE) {
+            n = MIN_SIZE;
+        }
+        else if (size >= MAX_SIZE) {
+            n = MAX_SIZE;
+        }
+        else {
+            n = Integer.highestOneBit(size - 1) << 1;
+        }
+
+        LinkedList<byte[]> pool = pools.get(indexOf(n));
+
+        synchronized (pool) {
+            if (!pool.isEmpty()) {
+                return pool.removeFirst();
+            }
+        }
+
+        return new byte[n];
+    }
+
+    /**
+     * Give back a buffer, once nothing uses it anymore.
+     */
+    public static void release(final byte[] buffer) {
+        assert buffer != null;
+
+        int n = buffer.length;
+        if (n < MIN_SIZE || n > MAX_SIZE || Integer.bitCount(n) != 1) {
+            return;
+        }
+
+        LinkedList<byte[]> pool = pools.get(indexOf(n));
+
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.addFirst(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.commands.standard.util;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Numbers the lines of a file, working on memory-mapped chunks of it in parallel.
+ *
+ * <p>
+ * The newlines of all chunks are counted first, which gives the number of the first line of
+ * each chunk; then the chunks are numbered, a few ahead of the one being written, and written
+ * in order.  Lines end at <tt>\n</tt>, which is kept along with any <tt>\r</tt> before it,
+ * so the file must be in an encoding where that byte is never part of another character;
+ * a last line without a newline is numbered and left without one.
+ *
+ * <p>
+ * The chunks are worked on by a pool of daemon threads, shared by all numberers.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LineNumberer
+{
+    private static final Log log = LogFactory.getLog(LineNumberer.class);
+
+    /**
+     * System property to configure the number of threads working on chunks.
+     */
+    public static final String THREADS_PROPERTY = LineNumberer.class.getName() + ".threads";
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** Width the line number is padded to, as for <tt>cat -n</tt>. */
+    private static final int WIDTH = 6;
+
+    private static ExecutorService executor;
+
+    private static int threads;
+
+    private final int chunkSize;
+
+    public LineNumberer(final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be > 0: " + chunkSize);
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+    public LineNumberer() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()).intValue();
+            threads = Math.max(1, threads);
+
+            log.debug("Creating pool of " + threads + " threads");
+
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(final Runnable task) {
+                    Thread t = new Thread(task, "GShell LineNumberer-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * The number of threads of the pool; once it has been created.
+     */
+    private static synchronized int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Write the lines of a file, from its current position, each prefixed by its number.
+     *
+     * @param channel   The file to number
+     * @param output    Where to write the numbered lines; not flushed
+     * @return          The number of lines
+     */
+    public long number(final FileChannel channel, final OutputStream output) throws IOException {
+        if (channel == null) {
+            throw new NullArgumentException("channel");
+        }
+        if (output == null) {
+            throw new NullArgumentException("output");
+        }
+
+        long position = channel.position();
+        long size = channel.size();
+
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (long offset = position; offset < size; offset += chunkSize) {
+            chunks.add(new Chunk(channel, offset, (int)Math.min(chunkSize, size - offset)));
+        }
+
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+
+        // A single chunk is not worth handing to another thread
+        if (chunks.size() == 1) {
+            Chunk chunk = chunks.get(0);
+            chunk.count();
+            chunk.firstLine = 1;
+            chunk.lineStart = true;
+
+            Output formatted = chunk.format();
+            output.write(formatted.bytes, 0, formatted.length);
+
+            return chunk.lines();
+        }
+
+        ExecutorService executor = getExecutor();
+        List<Future<?>> counts = new ArrayList<Future<?>>(chunks.size());
+        LinkedList<Future<Output>> pending = new LinkedList<Future<Output>>();
+
+        try {
+            for (final Chunk chunk : chunks) {
+                counts.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        chunk.count();
+                        return null;
+                    }
+                }));
+            }
+
+            long line = 1;
+            boolean lineStart = true;
+
+            // Only now, in order, do the chunks know their first line
+            for (int i = 0; i < chunks.size(); i++) {
+                get(counts.get(i));
+
+                Chunk chunk = chunks.get(i);
+                chunk.firstLine = line;
+                chunk.lineStart = lineStart;
+
+                line += chunk.lines();
+                lineStart = chunk.endsWithNewline;
+            }
+
+            // Keep enough chunks being numbered to have one ready whenever the last is written
+            int window = getThreads() + 1;
+            int next = 0;
+
+            while (next < chunks.size() || !pending.isEmpty()) {
+                while (next < chunks.size() && pending.size() < window) {
+                    final Chunk chunk = chunks.get(next++);
+
+                    pending.add(executor.submit(new Callable<Output>() {
+                        public Output call() throws Exception {
+                            return chunk.format();
+                        }
+                    }));
+                }
+
+                Output formatted = get(pending.removeFirst());
+                output.write(formatted.bytes, 0, formatted.length);
+            }
+
+            return line - 1;
+        }
+        finally {
+            // Once failed, nothing more is wanted
+            for (Future<?> future : counts) {
+                future.cancel(true);
+            }
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static <T> T get(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+
+            IOException ioe = new IOException("Failed to number lines: " + cause);
+            ioe.initCause(cause);
+            throw ioe;
+        }
+    }
+
+    //
+    // Chunk
+    //
+
+    private static class Chunk
+    {
+        private final FileChannel channel;
+
+        private final long offset;
+
+        private final int length;
+
+        public int newlines;
+
+        public boolean endsWithNewline;
+
+        /** Number of the first line which starts in this chunk. */
+        public long firstLine;
+
+        /** True if the chunk starts a line, instead of continuing that of the previous chunk. */
+        public boolean lineStart;
+
+        public Chunk(final FileChannel channel, final long offset, final int length) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private MappedByteBuffer map() throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+
+        public void count() throws IOException {
+            MappedByteBuffer buffer = map();
+            byte[] bytes = new byte[Math.min(length, 64 * 1024)];
+            int count = 0;
+
+            while (buffer.hasRemaining()) {
+                int n = Math.min(bytes.length, buffer.remaining());
+                buffer.get(bytes, 0, n);
+
+                for (int i = 0; i < n; i++) {
+                    if (bytes[i] == '\n') {
+                        count++;
+                    }
+                }
+
+                endsWithNewline = bytes[n - 1] == '\n';
+            }
+
+            newlines = count;
+        }
+
+        /**
+         * The number of lines starting in this chunk.
+         */
+        public int lines() {
+            return newlines + (lineStart ? 1 : 0) - (endsWithNewline ? 1 : 0);
+        }
+
+        public Output format() throws IOException {
+            MappedByteBuffer buffer = map();
+
+            // Room for the line numbers of lines of about 60 bytes
+            Output output = new Output(length + length / 8 + 64);
+
+            long line = firstLine;
+            boolean start = lineStart;
+
+            while (buffer.hasRemaining()) {
+                if (start) {
+                    output.gutter(line++);
+                }
+
+                // Copy up to and including the next newline
+                int from = buffer.position();
+                int to = from;
+                while (to < length && buffer.get(to) != '\n') {
+                    to++;
+                }
+
+                start = to < length;
+                if (start) {
+                    to++;
+                }
+
+                output.put(buffer, to - from);
+            }
+
+            return output;
+        }
+    }
+
+    //
+    // Output
+    //
+
+    private static class Output
+    {
+        public byte[] bytes;
+
+        public int length;
+
+        private final byte[] digits = new byte[20];
+
+        public Output(final int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensure(final int n) {
+            if (length + n > bytes.length) {
+                byte[] tmp = new byte[Math.max(length + n, bytes.length * 2)];
+                System.arraycopy(bytes, 0, tmp, 0, length);
+                bytes = tmp;
+            }
+        }
+
+        public void put(final MappedByteBuffer buffer, final int n) {
+            ensure(n);
+            buffer.get(bytes, length, n);
+            length += n;
+        }
+
+        /**
+         * Append the number of a line, padded as by {@link org.apache.commons.lang.StringUtils#leftPad}.
+         */
+        public void gutter(long line) {
+            int count = 0;
+            do {
+                digits[count++] = (byte)('0' + line % 10);
+                line /= 10;
+            }
+            while (line != 0);
+
+            ensure(Math.max(WIDTH, count) + 2);
+
+            for (int i = count; i < WIDTH; i++) {
+                bytes[length++] = ' ';
+            }
+            while (count > 0) {
+                bytes[length++] = digits[--count];
+            }
+
+            bytes[length++] = ' ';
+            bytes[length++] = ' ';
+        }
+    }
+}
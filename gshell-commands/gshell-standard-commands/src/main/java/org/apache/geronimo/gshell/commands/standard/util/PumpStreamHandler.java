@@ -26,6 +26,13 @@ import org.apache.commons.logging.LogFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //
 // Based on Apache Ant 1.6.5
@@ -34,28 +41,72 @@ import java.io.OutputStream;
 /**
  * Copies standard output and error of children streams to standard output and error of the parent.
  *
+ * <p>
+ * The output and error pumps of all handlers run on one shared pool of daemon threads, which
+ * keeps idle threads around for the next process.  A pump blocks until its process closes the
+ * stream, so none may ever wait for a free thread: once the pool has {@link #MAX_THREADS_PROPERTY}
+ * busy threads, further pumps each get a thread of their own, as they always did before.
+ *
+ * <p>
+ * The input pump always gets a thread of its own, as it stays blocked reading the input of the
+ * shell after the process is gone, until the next byte or the end of the input arrives.
+ *
  * @version $Rev$ $Date$
  */
 public class PumpStreamHandler
 {
     private static final Log log = LogFactory.getLog(PumpStreamHandler.class);
 
+    /**
+     * System property to configure the number of pooled pump threads.
+     */
+    public static final String MAX_THREADS_PROPERTY = PumpStreamHandler.class.getName() + ".maxThreads";
+
+    public static final int DEFAULT_MAX_THREADS = 32;
+
+    private static final ThreadFactory threadFactory = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable task) {
+            Thread t = new Thread(task, "GShell StreamPumper-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    private static Executor executor;
+
+    private static synchronized Executor getExecutor() {
+        if (executor == null) {
+            int max = Integer.getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS).intValue();
+
+            executor = new ThreadPoolExecutor(0, Math.max(1, max), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                threadFactory,
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(final Runnable task, final ThreadPoolExecutor pool) {
+                        log.debug("All pooled pump threads are busy; starting a new one");
+
+                        threadFactory.newThread(task).start();
+                    }
+                });
+        }
+
+        return executor;
+    }
+
     private InputStream in;
 
     private OutputStream out;
 
     private OutputStream err;
 
-    private Thread outputThread;
+    private StreamPumper outputPump;
 
-    private Thread errorThread;
+    private StreamPumper errorPump;
 
     private StreamPumper inputPump;
 
-    //
-    // NOTE: May want to use a ThreadPool here, 3 threads per/pair seems kinda expensive :-(
-    //
-
     public PumpStreamHandler(final InputStream in, final OutputStream out, final OutputStream err) {
         assert in != null;
         assert out != null;
@@ -134,13 +185,15 @@ public class PumpStreamHandler
      * Start pumping the streams.
      */
     public void start() {
-        outputThread.start();
-        errorThread.start();
+        Executor executor = getExecutor();
+
+        executor.execute(outputPump);
+        executor.execute(errorPump);
 
         if (inputPump != null) {
-            Thread inputThread = new Thread(inputPump);
-            inputThread.setDaemon(true);
-            inputThread.start();
+            Thread t = new Thread(inputPump, "GShell StreamPumper Input");
+            t.setDaemon(true);
+            t.start();
         }
     }
 
@@ -149,14 +202,14 @@ public class PumpStreamHandler
      */
     public void stop() {
         try {
-            outputThread.join();
+            outputPump.waitFor();
         }
         catch (InterruptedException e) {
             // ignore
         }
 
         try {
-            errorThread.join();
+            errorPump.waitFor();
         }
         catch (InterruptedException e) {
             // ignore
@@ -179,6 +232,32 @@ public class PumpStreamHandler
         catch (IOException e) {
             // ignore
         }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Pumped " + getOutputByteCount() + " bytes of output, " + getErrorByteCount() +
+                " bytes of error and " + getInputByteCount() + " bytes of input");
+        }
+    }
+
+    /**
+     * Get the number of bytes copied from the standard output of the child.
+     */
+    public long getOutputByteCount() {
+        return outputPump == null ? 0 : outputPump.getByteCount();
+    }
+
+    /**
+     * Get the number of bytes copied from the standard error of the child.
+     */
+    public long getErrorByteCount() {
+        return errorPump == null ? 0 : errorPump.getByteCount();
+    }
+
+    /**
+     * Get the number of bytes copied to the standard input of the child.
+     */
+    public long getInputByteCount() {
+        return inputPump == null ? 0 : inputPump.getByteCount();
     }
 
     /**
@@ -188,7 +267,7 @@ public class PumpStreamHandler
         assert in != null;
         assert out != null;
 
-        outputThread = createPump(in, out);
+        outputPump = createPump(in, out);
     }
 
     /**
@@ -198,13 +277,13 @@ public class PumpStreamHandler
         assert in != null;
         assert out != null;
 
-        errorThread = createPump(in, out);
+        errorPump = createPump(in, out);
     }
 
     /**
      * Creates a stream pumper to copy the given input stream to the given output stream.
      */
-    protected Thread createPump(final InputStream in, final OutputStream out) {
+    protected StreamPumper createPump(final InputStream in, final OutputStream out) {
         assert in != null;
         assert out != null;
 
@@ -218,15 +297,13 @@ public class PumpStreamHandler
      * @param in                    The input stream to copy from.
      * @param out                   The output stream to copy to.
      * @param closeWhenExhausted    If true close the inputstream.
-     * @return                      A thread object that does the pumping.
+     * @return                      The pumper, to be run by {@link #start()}.
      */
-    protected Thread createPump(final InputStream in, final OutputStream out, final boolean closeWhenExhausted) {
+    protected StreamPumper createPump(final InputStream in, final OutputStream out, final boolean closeWhenExhausted) {
         assert in != null;
         assert out != null;
 
-        final Thread result = new Thread(new StreamPumper(in, out, closeWhenExhausted));
-        result.setDaemon(true);
-        return result;
+        return new StreamPumper(in, out, closeWhenExhausted);
     }
 
     /**
@@ -33,6 +33,11 @@ import java.io.OutputStream;
 /**
  * Copies all data from an input stream to an output stream.
  *
+ * <p>
+ * The read buffer starts at the configured size and doubles, up to {@link #MAX_BUFFER_SIZE},
+ * each time a read fills it; so chatty interactive streams keep a small buffer, while bulk
+ * output is soon copied in large blocks.  Buffers are taken from a shared pool.
+ *
  * @version $Rev$ $Date$
  */
 public class StreamPumper
@@ -40,6 +45,10 @@ public class StreamPumper
 {
     private static final Log log = LogFactory.getLog(StreamPumper.class);
 
+    public static final int DEFAULT_BUFFER_SIZE = BufferPool.MIN_SIZE;
+
+    public static final int MAX_BUFFER_SIZE = BufferPool.MAX_SIZE;
+
     private InputStream in;
 
     private OutputStream out;
@@ -54,7 +63,9 @@ public class StreamPumper
 
     private Exception exception;
 
-    private int bufferSize = 128;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private volatile long byteCount;
 
     private boolean started;
 
@@ -106,15 +117,24 @@ public class StreamPumper
         finished = false;
         finish = false;
 
-        final byte[] buf = new byte[bufferSize];
+        byte[] buf = BufferPool.acquire(bufferSize);
 
         int length;
         try {
             while ((length = in.read(buf)) > 0 && !finish) {
                 out.write(buf, 0, length);
+                byteCount += length;
+
                 if (autoflush) {
                     out.flush();
                 }
+
+                // A full read means more is waiting; take it in larger blocks from now on
+                if (length == buf.length && buf.length < MAX_BUFFER_SIZE) {
+                    byte[] larger = BufferPool.acquire(buf.length * 2);
+                    BufferPool.release(buf);
+                    buf = larger;
+                }
             }
             out.flush();
         }
@@ -124,6 +144,8 @@ public class StreamPumper
             }
         }
         finally {
+            BufferPool.release(buf);
+
             if (closeWhenExhausted) {
                 try {
                     out.close();
@@ -161,9 +183,9 @@ public class StreamPumper
     }
 
     /**
-     * Set the size in bytes of the read buffer.
+     * Set the initial size in bytes of the read buffer.
      *
-     * @param bufferSize the buffer size to use.
+     * @param bufferSize the buffer size to start with.
      * @throws IllegalStateException if the StreamPumper is already running.
      */
     public synchronized void setBufferSize(final int bufferSize) {
@@ -175,14 +197,21 @@ public class StreamPumper
     }
 
     /**
-     * Get the size in bytes of the read buffer.
+     * Get the initial size in bytes of the read buffer.
      *
-     * @return The size of the read buffer.
+     * @return The initial size of the read buffer.
      */
     public synchronized int getBufferSize() {
         return bufferSize;
     }
 
+    /**
+     * Get the number of bytes copied so far.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
     /**
      * Get the exception encountered, if any.
      *
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commands.standard.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for the {@link BufferPool} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BufferPoolTest
+    extends TestCase
+{
+    private void assertSize(final int expected, final int requested) {
+        byte[] buffer = BufferPool.acquire(requested);
+        assertEquals("Size for " + requested, expected, buffer.length);
+        BufferPool.release(buffer);
+    }
+
+    public void testSizeClasses() throws Exception {
+        assertSize(BufferPool.MIN_SIZE, -1);
+        assertSize(BufferPool.MIN_SIZE, 0);
+        assertSize(BufferPool.MIN_SIZE, 1);
+        assertSize(BufferPool.MIN_SIZE, BufferPool.MIN_SIZE);
+
+        assertSize(2048, BufferPool.MIN_SIZE + 1);
+        assertSize(2048, 2048);
+        assertSize(4096, 2049);
+        assertSize(4096, 3000);
+        assertSize(32 * 1024, 32 * 1024 - 1);
+
+        assertSize(BufferPool.MAX_SIZE, BufferPool.MAX_SIZE - 1);
+        assertSize(BufferPool.MAX_SIZE, BufferPool.MAX_SIZE);
+        assertSize(BufferPool.MAX_SIZE, BufferPool.MAX_SIZE + 1);
+        assertSize(BufferPool.MAX_SIZE, (1 << 30) + 1);
+        assertSize(BufferPool.MAX_SIZE, Integer.MAX_VALUE);
+    }
+
+    public void testReused() throws Exception {
+        byte[] buffer = BufferPool.acquire(4096);
+        BufferPool.release(buffer);
+
+        // Any size of the same class
+        assertSame(buffer, BufferPool.acquire(3000));
+
+        BufferPool.release(buffer);
+        assertNotSame(buffer, BufferPool.acquire(2048));
+        assertNotSame(buffer, BufferPool.acquire(8192));
+        assertSame(buffer, BufferPool.acquire(4096));
+    }
+
+    public void testOtherSizesNotPooled() throws Exception {
+        int[] sizes = { 1, 512, 3000, BufferPool.MAX_SIZE * 2 };
+
+        for (int size : sizes) {
+            byte[] buffer = new byte[size];
+            BufferPool.release(buffer);
+
+            assertNotSame(buffer, BufferPool.acquire(size));
+        }
+    }
+
+    public void testPoolBounded() throws Exception {
+        List<byte[]> buffers = new ArrayList<byte[]>();
+        for (int i = 0; i <= BufferPool.MAX_POOLED; i++) {
+            buffers.add(BufferPool.acquire(16 * 1024));
+        }
+        for (byte[] buffer : buffers) {
+            BufferPool.release(buffer);
+        }
+
+        // Only as many as are pooled come back, the last kept first
+        List<byte[]> acquired = new ArrayList<byte[]>();
+        for (int i = 0; i <= BufferPool.MAX_POOLED; i++) {
+            acquired.add(BufferPool.acquire(16 * 1024));
+        }
+
+        for (int i = 0; i < BufferPool.MAX_POOLED; i++) {
+            assertSame(buffers.get(BufferPool.MAX_POOLED - 1 - i), acquired.get(i));
+        }
+        assertFalse(buffers.contains(acquired.get(BufferPool.MAX_POOLED)));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commands.standard.util;
+
+import junit.framework.TestCase;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * Unit tests for the {@link LineNumberer} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LineNumbererTest
+    extends TestCase
+{
+    private static final int[] CHUNK_SIZES = { 1, 2, 3, 4, 5, 7, 8, 16, 64, LineNumberer.DEFAULT_CHUNK_SIZE };
+
+    /** Every chunk is mapped, so larger files are not cut into tiny chunks. */
+    private static final int[] LARGE_CHUNK_SIZES = { 61, 64, 1000, 4096, LineNumberer.DEFAULT_CHUNK_SIZE };
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("numberer", ".txt");
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /**
+     * Number the lines one at a time, as <tt>cat -n</tt> would, keeping their line endings.
+     */
+    private String numberLines(final String text) {
+        StringBuffer buff = new StringBuffer();
+        int line = 1;
+        int start = 0;
+
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end == -1 ? text.length() : end + 1;
+
+            buff.append(StringUtils.leftPad(String.valueOf(line++), 6)).append("  ").append(text.substring(start, end));
+            start = end;
+        }
+
+        return buff.toString();
+    }
+
+    private int countLines(final String text) {
+        return StringUtils.countMatches(text, "\n") + (text.length() == 0 || text.endsWith("\n") ? 0 : 1);
+    }
+
+    private void write(final String text) throws Exception {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(text.getBytes("ISO-8859-1"));
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Number the text from the given position with each chunk size, and compare with numbering it line by line.
+     */
+    private void assertNumbered(final String text, final int position, final int[] chunkSizes) throws Exception {
+        write(text);
+
+        String expected = numberLines(text.substring(position));
+
+        for (int chunkSize : chunkSizes) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+            try {
+                FileChannel channel = raf.getChannel();
+                channel.position(position);
+
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                long lines = new LineNumberer(chunkSize).number(channel, output);
+
+                String message = "chunk size " + chunkSize + ", position " + position;
+                assertEquals(message, expected, output.toString("ISO-8859-1"));
+                assertEquals(message, countLines(text.substring(position)), lines);
+            }
+            finally {
+                raf.close();
+            }
+        }
+    }
+
+    private void assertNumbered(final String text) throws Exception {
+        assertNumbered(text, 0, CHUNK_SIZES);
+    }
+
+    public void testConstructor() throws Exception {
+        try {
+            new LineNumberer(0);
+            fail("Accepted chunk size of 0");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testEmptyFile() throws Exception {
+        assertNumbered("");
+    }
+
+    public void testLines() throws Exception {
+        assertNumbered("one\ntwo\nthree\n");
+        assertNumbered("a\nbb\nccc\ndddd\neeeee\nffffff\nggggggg\n");
+    }
+
+    public void testLastLineWithoutNewline() throws Exception {
+        assertNumbered("one\ntwo");
+        assertNumbered("x");
+    }
+
+    public void testEmptyLines() throws Exception {
+        assertNumbered("\n");
+        assertNumbered("\n\n\n");
+        assertNumbered("\none\n\n\ntwo\n\n");
+    }
+
+    public void testCRLF() throws Exception {
+        assertNumbered("one\r\ntwo\r\n\r\nthree\r\n");
+        assertNumbered("\r\n\r\nlast");
+        assertNumbered("lone\rcarriage return\r\n");
+    }
+
+    public void testManyLines() throws Exception {
+        StringBuffer buff = new StringBuffer();
+        for (int i = 0; i < 2000; i++) {
+            buff.append(StringUtils.repeat("x", i % 13)).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+
+        assertNumbered(buff.toString(), 0, LARGE_CHUNK_SIZES);
+        assertNumbered(buff.toString(), 1234, LARGE_CHUNK_SIZES);
+    }
+
+    public void testPosition() throws Exception {
+        String text = "one\ntwo\r\n\nthree\nfour";
+
+        for (int position = 0; position <= text.length(); position++) {
+            assertNumbered(text, position, CHUNK_SIZES);
+        }
+    }
+}
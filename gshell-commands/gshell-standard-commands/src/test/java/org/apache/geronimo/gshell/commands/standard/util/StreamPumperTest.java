@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commands.standard.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for the {@link StreamPumper} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StreamPumperTest
+    extends TestCase
+{
+    private byte[] data(final int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte)(i % 251);
+        }
+
+        return bytes;
+    }
+
+    public void testCopy() throws Exception {
+        byte[] bytes = data(300 * 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        StreamPumper pumper = new StreamPumper(new ByteArrayInputStream(bytes), out);
+        pumper.run();
+
+        assertTrue(pumper.isFinished());
+        assertNull(pumper.getException());
+        assertEquals(bytes.length, pumper.getByteCount());
+        assertTrue(Arrays.equals(bytes, out.toByteArray()));
+    }
+
+    public void testCloseWhenExhausted() throws Exception {
+        final boolean[] closed = new boolean[1];
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+
+        new StreamPumper(new ByteArrayInputStream(data(10)), out, false).run();
+        assertFalse(closed[0]);
+
+        new StreamPumper(new ByteArrayInputStream(data(10)), out, true).run();
+        assertTrue(closed[0]);
+    }
+
+    public void testBufferGrowsOnFullReads() throws Exception {
+        RecordingInputStream in = new RecordingInputStream(data(512 * 1024), Integer.MAX_VALUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new StreamPumper(in, out).run();
+
+        // Doubles with each full read, then stays at the maximum
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int size = StreamPumper.DEFAULT_BUFFER_SIZE; size < StreamPumper.MAX_BUFFER_SIZE; size *= 2) {
+            expected.add(size);
+        }
+        expected.add(StreamPumper.MAX_BUFFER_SIZE);
+        expected.add(StreamPumper.MAX_BUFFER_SIZE);
+
+        assertEquals(expected, in.lengths.subList(0, expected.size()));
+        assertEquals(512 * 1024, out.size());
+    }
+
+    public void testBufferKeptOnShortReads() throws Exception {
+        RecordingInputStream in = new RecordingInputStream(data(10 * 1024), 100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new StreamPumper(in, out).run();
+
+        for (int length : in.lengths) {
+            assertEquals(StreamPumper.DEFAULT_BUFFER_SIZE, length);
+        }
+        assertEquals(10 * 1024, out.size());
+    }
+
+    public void testInitialBufferSize() throws Exception {
+        RecordingInputStream in = new RecordingInputStream(data(64 * 1024), Integer.MAX_VALUE);
+
+        StreamPumper pumper = new StreamPumper(in, new ByteArrayOutputStream());
+        pumper.setBufferSize(8192);
+        pumper.run();
+
+        assertEquals(8192, in.lengths.get(0).intValue());
+        assertEquals(16384, in.lengths.get(1).intValue());
+
+        try {
+            pumper.setBufferSize(1024);
+            fail("Set buffer size once started");
+        }
+        catch (IllegalStateException expected) {
+            // ignore
+        }
+    }
+
+    //
+    // RecordingInputStream
+    //
+
+    /**
+     * Records the length asked for by each read, and returns at most the given number of bytes per read.
+     */
+    private static class RecordingInputStream
+        extends InputStream
+    {
+        public final List<Integer> lengths = new ArrayList<Integer>();
+
+        private final InputStream in;
+
+        private final int maxRead;
+
+        public RecordingInputStream(final byte[] bytes, final int maxRead) {
+            this.in = new ByteArrayInputStream(bytes);
+            this.maxRead = maxRead;
+        }
+
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        public int read(final byte[] bytes, final int off, final int len) throws IOException {
+            lengths.add(len);
+
+            return in.read(bytes, off, Math.min(len, maxRead));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandDefinition;
+import org.apache.geronimo.gshell.command.CommandInstantiationException;
+import org.picocontainer.PicoContainer;
+import org.picocontainer.defaults.ConstructorInjectionComponentAdapter;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Provides {@link Command} instances for execution.
+ *
+ * <p>
+ * The constructor injection for each {@link CommandDefinition} is resolved against the shell
+ * container only once, so creating an instance is a plain constructor call instead of building
+ * and tearing down a container per execution.  Instances of reusable commands are kept
+ * (up to a limit per command) after they have been destroyed and are handed out again.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandPool
+{
+    private static final Log log = LogFactory.getLog(CommandPool.class);
+
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    /**
+     * System property to configure the maximum number of idle instances kept per command; 0 disables reuse.
+     */
+    public static final String MAX_IDLE_PROPERTY = CommandPool.class.getName() + ".maxIdle";
+
+    private final PicoContainer container;
+
+    private final int maxIdle;
+
+    private final Map<CommandDefinition,Entry> entries = new HashMap<CommandDefinition,Entry>();
+
+    private long created;
+
+    private long reused;
+
+    public CommandPool(final PicoContainer container, final int maxIdle) {
+        if (container == null) {
+            throw new NullArgumentException("container");
+        }
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Max idle must be >= 0: " + maxIdle);
+        }
+
+        this.container = container;
+        this.maxIdle = maxIdle;
+    }
+
+    public CommandPool(final PicoContainer container) {
+        this(container, Integer.getInteger(MAX_IDLE_PROPERTY, DEFAULT_MAX_IDLE));
+    }
+
+    /**
+     * Get a command instance for exclusive use; the caller must {@link #release} it when done.
+     *
+     * @param def   The definition of the command; must not be null
+     * @return      A new or reused command instance, which has not been initialized
+     *
+     * @throws CommandInstantiationException    Failed to resolve or create the command
+     */
+    public Command borrow(final CommandDefinition def) throws CommandInstantiationException {
+        if (def == null) {
+            throw new NullArgumentException("def");
+        }
+
+        Entry entry = getEntry(def);
+
+        synchronized (this) {
+            if (!entry.idle.isEmpty()) {
+                reused++;
+                return entry.idle.removeFirst();
+            }
+
+            created++;
+        }
+
+        return entry.newInstance();
+    }
+
+    /**
+     * Return a command instance which was borrowed for the given definition.
+     *
+     * <p>
+     * The command <b>must</b> have been destroyed, so that it can be initialized again.
+     *
+     * @param def       The definition the command was borrowed for; must not be null
+     * @param command   The destroyed command; must not be null
+     */
+    public void release(final CommandDefinition def, final Command command) {
+        if (def == null) {
+            throw new NullArgumentException("def");
+        }
+        if (command == null) {
+            throw new NullArgumentException("command");
+        }
+
+        if (!def.isReusable()) {
+            return;
+        }
+
+        synchronized (this) {
+            Entry entry = entries.get(def);
+
+            if (entry != null && entry.idle.size() < maxIdle) {
+                entry.idle.addLast(command);
+            }
+        }
+    }
+
+    /**
+     * Discard all resolved constructors and idle instances.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public synchronized long getCreatedCount() {
+        return created;
+    }
+
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+
+    public synchronized String toString() {
+        return "CommandPool{ commands=" + entries.size() +
+                ", maxIdle=" + maxIdle +
+                ", created=" + created +
+                ", reused=" + reused +
+                " }";
+    }
+
+    private Entry getEntry(final CommandDefinition def) throws CommandInstantiationException {
+        assert def != null;
+
+        synchronized (this) {
+            Entry entry = entries.get(def);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        // Resolve outside of the lock, worst case two threads resolve the same definition
+        Entry entry = new Entry(def);
+
+        synchronized (this) {
+            Entry prev = entries.get(def);
+            if (prev != null) {
+                return prev;
+            }
+
+            entries.put(def, entry);
+        }
+
+        return entry;
+    }
+
+    //
+    // Entry
+    //
+
+    /**
+     * The resolved constructor injection and idle instances for a single command definition.
+     */
+    private class Entry
+    {
+        private final Constructor<?> constructor;
+
+        private final Object[] arguments;
+
+        private final LinkedList<Command> idle = new LinkedList<Command>();
+
+        public Entry(final CommandDefinition def) throws CommandInstantiationException {
+            assert def != null;
+
+            Class<?> type;
+            try {
+                type = def.loadClass();
+            }
+            catch (ClassNotFoundException e) {
+                throw new CommandInstantiationException("Failed to load command class: " + def.getClassName(), e);
+            }
+
+            if (!Command.class.isAssignableFrom(type)) {
+                throw new CommandInstantiationException("Type does not implement " + Command.class.getName() + ": " + type);
+            }
+
+            // Components visible to the command are the shell components plus its definition
+            ShellContainer scope = new ShellContainer(container);
+            scope.registerComponentInstance(def);
+
+            try {
+                InjectionPlan plan = new InjectionPlan(type);
+                constructor = plan.getConstructor(scope);
+                arguments = plan.getArguments(scope, constructor);
+            }
+            catch (RuntimeException e) {
+                throw new CommandInstantiationException("Failed to resolve constructor for command: " + def.getName(), e);
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Resolved constructor for command " + def.getName() + ": " + constructor);
+            }
+        }
+
+        public Command newInstance() throws CommandInstantiationException {
+            try {
+                return (Command) constructor.newInstance(arguments);
+            }
+            catch (InvocationTargetException e) {
+                throw new CommandInstantiationException(e.getTargetException());
+            }
+            catch (Exception e) {
+                throw new CommandInstantiationException(e);
+            }
+        }
+    }
+
+    //
+    // InjectionPlan
+    //
+
+    /**
+     * Exposes the constructor resolution of {@link ConstructorInjectionComponentAdapter}.
+     */
+    private static class InjectionPlan
+        extends ConstructorInjectionComponentAdapter
+    {
+        public InjectionPlan(final Class<?> type) {
+            super(type, type);
+        }
+
+        public Constructor<?> getConstructor(final PicoContainer container) {
+            return getGreediestSatisfiableConstructor(container);
+        }
+
+        public Object[] getArguments(final PicoContainer container, final Constructor<?> constructor) {
+            return getConstructorArguments(container, constructor);
+        }
+    }
+}
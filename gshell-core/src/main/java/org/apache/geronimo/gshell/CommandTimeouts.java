@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gshell.command.Command;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aborts commands which run longer than their timeout, and counts them.
+ *
+ * <p>
+ * All shells share a single timer thread.  When a timeout expires the command is
+ * {@link Command#abort aborted} and the thread executing it interrupted; once the command
+ * has been {@link Timeout#complete completed} neither can happen anymore.
+ *
+ * <p>
+ * The shell only completes the timeout once the command returns, so a command which blocks
+ * where an interrupt does not reach, as in a read of a stream, must unblock itself when aborted.
+ * A command which fails once timed out should do so with an {@link InterruptedException} or
+ * {@link java.io.InterruptedIOException}; other failures are not taken for the timeout.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandTimeouts
+{
+    private static final Log log = LogFactory.getLog(CommandTimeouts.class);
+
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        public Thread newThread(final Runnable task) {
+            Thread t = new Thread(task, "GShell Command Timeout");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    private final Map<String,AtomicLong> timedOutByCommand = new TreeMap<String,AtomicLong>();
+
+    /**
+     * Start timing a command which is about to execute in the calling thread.
+     *
+     * @param name      The name of the command, to count its timeouts
+     * @param command   The command to abort when the timeout expires
+     * @param timeout   The timeout in milliseconds; must be > 0
+     * @return          The timeout, to complete once the command has returned
+     */
+    public Timeout start(final String name, final Command command, final long timeout) {
+        if (name == null) {
+            throw new NullArgumentException("name");
+        }
+        if (command == null) {
+            throw new NullArgumentException("command");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be > 0: " + timeout);
+        }
+
+        Timeout t = new Timeout(name, command, Thread.currentThread());
+        t.future = timer.schedule(t, timeout, TimeUnit.MILLISECONDS);
+
+        return t;
+    }
+
+    private void expired(final String name) {
+        timedOut.incrementAndGet();
+
+        synchronized (timedOutByCommand) {
+            AtomicLong count = timedOutByCommand.get(name);
+            if (count == null) {
+                count = new AtomicLong();
+                timedOutByCommand.put(name, count);
+            }
+
+            count.incrementAndGet();
+        }
+    }
+
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    public long getTimedOutCount(final String name) {
+        synchronized (timedOutByCommand) {
+            AtomicLong count = timedOutByCommand.get(name);
+
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    public String toString() {
+        synchronized (timedOutByCommand) {
+            return "CommandTimeouts{ timedOut=" + timedOut + ", commands=" + timedOutByCommand + " }";
+        }
+    }
+
+    //
+    // Timeout
+    //
+
+    /**
+     * The timeout of a single command execution.
+     */
+    public class Timeout
+        implements Runnable
+    {
+        private final String name;
+
+        private final Command command;
+
+        private final Thread thread;
+
+        private ScheduledFuture<?> future;
+
+        private boolean completed;
+
+        private boolean expired;
+
+        private Timeout(final String name, final Command command, final Thread thread) {
+            this.name = name;
+            this.command = command;
+            this.thread = thread;
+        }
+
+        public synchronized void run() {
+            if (completed) {
+                return;
+            }
+
+            log.info("Command timed out: " + name);
+
+            expired = true;
+            expired(name);
+
+            try {
+                command.abort();
+            }
+            catch (Exception e) {
+                log.warn("Failed to abort command: " + name, e);
+            }
+
+            thread.interrupt();
+        }
+
+        /**
+         * Stop the timer; call once the command has returned, from the thread which executed it.
+         *
+         * <p>
+         * Once this returns the command is no longer aborted, so it may be released to execute
+         * again.  When the timeout expired, the interrupt status of the thread is cleared, so it
+         * does not hit whatever the thread does next.
+         *
+         * @return  True if the timeout expired
+         */
+        public synchronized boolean complete() {
+            if (!completed) {
+                completed = true;
+
+                future.cancel(false);
+                timer.remove((Runnable)future);
+
+                if (expired) {
+                    Thread.interrupted();
+                }
+            }
+
+            return expired;
+        }
+
+        public synchronized boolean isExpired() {
+            return expired;
+        }
+    }
+}
@@ -41,6 +41,8 @@ public class InteractiveShell
 {
     private static final Log log = LogFactory.getLog(InteractiveConsole.class);
 
+    private final Shell shell;
+
     //
     // TODO: Refactor InteractiveConsole to use method overides for extention
     //       Seems like that is what we are doing so far anyways (sub-classing that is)
@@ -80,6 +82,8 @@ public class InteractiveShell
                 }
             });
 
+        this.shell = shell;
+
         // Add a command completer of we are using JLine
         if (console instanceof JLineConsole) {
             ConsoleReader jline = ((JLineConsole)console).getReader();
@@ -95,4 +99,11 @@ public class InteractiveShell
             jline.addCompletor(c);
         }
     }
+
+    /**
+     * Interrupt the command-line being executed, aborting its commands.
+     */
+    public boolean interrupt() {
+        return shell.interrupt();
+    }
 }
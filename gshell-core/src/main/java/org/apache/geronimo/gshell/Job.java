@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gshell.command.Command;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A part of a command-line which runs in the background; see {@link JobManager}.
+ *
+ * <p>
+ * The commands a job executes, on whichever thread, are tracked so that cancelling the job
+ * can {@link Command#abort abort} them, as well as interrupt the threads running them; which
+ * includes the other threads of pipelines and groups.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Job
+    extends FutureTask<Object>
+{
+    private static final Log log = LogFactory.getLog(Job.class);
+
+    public static enum State {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED,
+        CANCELLED
+    }
+
+    private static final ThreadLocal<Job> current = new ThreadLocal<Job>();
+
+    private final int id;
+
+    private final String description;
+
+    private final Map<Command,Thread> commands = new HashMap<Command,Thread>();
+
+    private volatile boolean started;
+
+    public Job(final int id, final String description, final Callable<Object> task) {
+        super(task);
+
+        if (description == null) {
+            throw new NullArgumentException("description");
+        }
+
+        this.id = id;
+        this.description = description;
+    }
+
+    /**
+     * Get the job which the calling thread is working for.
+     *
+     * @return  The job; or null when not working for a job
+     */
+    public static Job current() {
+        return current.get();
+    }
+
+    /**
+     * Wrap a task, so that it works for the job of the calling thread; for work handed off to other threads.
+     */
+    public static <T> Callable<T> inherit(final Callable<T> task) {
+        if (task == null) {
+            throw new NullArgumentException("task");
+        }
+
+        final Job job = current();
+        if (job == null) {
+            return task;
+        }
+
+        return new Callable<T>() {
+            public T call() throws Exception {
+                Job previous = current.get();
+                current.set(job);
+
+                try {
+                    return task.call();
+                }
+                finally {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public State getState() {
+        if (isCancelled()) {
+            return State.CANCELLED;
+        }
+        else if (isDone()) {
+            try {
+                get();
+                return State.DONE;
+            }
+            catch (ExecutionException e) {
+                return State.FAILED;
+            }
+            catch (InterruptedException e) {
+                // Can not happen once done
+                throw new IllegalStateException(e.toString());
+            }
+        }
+
+        return started ? State.RUNNING : State.PENDING;
+    }
+
+    public void run() {
+        Job previous = current.get();
+        current.set(this);
+        started = true;
+
+        try {
+            super.run();
+        }
+        finally {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Cancel the job, and abort the commands it is running.
+     *
+     * <p>
+     * Cancelling, aborting the commands and interrupting their threads all happen under the
+     * lock of the running commands, so a command which returns meanwhile waits in
+     * {@link #completed} until that is done; neither reaches a command or thread which has
+     * moved on to other work.
+     */
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        synchronized (commands) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            if (cancelled) {
+                for (Map.Entry<Command,Thread> entry : commands.entrySet()) {
+                    Command command = entry.getKey();
+                    log.debug("Aborting command: " + command.getName());
+
+                    try {
+                        command.abort();
+                    }
+                    catch (Exception e) {
+                        log.warn("Failed to abort command: " + command.getName(), e);
+                    }
+
+                    if (mayInterruptIfRunning) {
+                        entry.getValue().interrupt();
+                    }
+                }
+            }
+
+            return cancelled;
+        }
+    }
+
+    void started(final Command command) {
+        assert command != null;
+
+        synchronized (commands) {
+            commands.put(command, Thread.currentThread());
+        }
+    }
+
+    /**
+     * Stop tracking a command, once it has returned; from the thread which executed it.
+     *
+     * <p>
+     * Once this returns, cancelling the job no longer aborts the command nor interrupts the
+     * thread, so the command may be released to execute for another job.
+     */
+    void completed(final Command command) {
+        assert command != null;
+
+        synchronized (commands) {
+            commands.remove(command);
+        }
+    }
+
+    public String toString() {
+        return "[" + id + "] " + getState() + " " + description;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Table of the {@link Job}s of a {@link Shell}.
+ *
+ * <p>
+ * Jobs run on a pool with a fixed number of threads, which is only created once the first job
+ * is submitted; when all threads are busy further jobs wait for one to become free.  Jobs are
+ * numbered from 1, reusing the numbers of jobs which have been removed.
+ *
+ * <p>
+ * Tasks {@link #fork forked} by a command-line, as the members of a group, are limited to the
+ * same number of threads.  They never wait for a thread though, as the job forking them may be
+ * holding one; once the limit is reached they run in the calling thread instead.
+ *
+ * @version $Rev$ $Date$
+ */
+public class JobManager
+{
+    private static final Log log = LogFactory.getLog(JobManager.class);
+
+    public static final int DEFAULT_MAX_THREADS = 8;
+
+    /**
+     * System property to configure the maximum number of jobs which run at the same time.
+     */
+    public static final String MAX_THREADS_PROPERTY = JobManager.class.getName() + ".maxThreads";
+
+    private final int maxThreads;
+
+    private final Map<Integer,Job> jobs = new TreeMap<Integer,Job>();
+
+    private Job lastJob;
+
+    private ExecutorService executor;
+
+    private final Semaphore forkPermits;
+
+    private ExecutorService forkExecutor;
+
+    public JobManager(final int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("Max threads must be > 0: " + maxThreads);
+        }
+
+        this.maxThreads = maxThreads;
+        this.forkPermits = new Semaphore(maxThreads);
+    }
+
+    public JobManager() {
+        this(Integer.getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS).intValue());
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    private ExecutorService getExecutor() {
+        assert Thread.holdsLock(this);
+
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(maxThreads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(final Runnable task) {
+                    Thread t = new Thread(task, "GShell Job-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    private synchronized ExecutorService getForkExecutor() {
+        if (forkExecutor == null) {
+            forkExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(final Runnable task) {
+                    Thread t = new Thread(task, "GShell Fork-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return forkExecutor;
+    }
+
+    /**
+     * Start a new job.
+     *
+     * @param description   Text to show for the job, as the command-line it runs
+     * @param task          The work of the job
+     * @return              The submitted job
+     */
+    public synchronized Job submit(final String description, final Callable<Object> task) {
+        if (description == null) {
+            throw new NullArgumentException("description");
+        }
+        if (task == null) {
+            throw new NullArgumentException("task");
+        }
+
+        int id = 1;
+        while (jobs.containsKey(id)) {
+            id++;
+        }
+
+        Job job = new Job(id, description, task);
+        jobs.put(id, job);
+        lastJob = job;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Submitting job: " + job);
+        }
+
+        getExecutor().execute(job);
+
+        return job;
+    }
+
+    /**
+     * Run a task alongside the caller, on a thread of its own unless {@link #getMaxThreads} forked
+     * tasks are running already; then the task is run in the calling thread before returning.
+     *
+     * @param task  The task to run
+     * @return      The result of the task, to wait for
+     */
+    public Future<Object> fork(final Callable<Object> task) {
+        if (task == null) {
+            throw new NullArgumentException("task");
+        }
+
+        final FutureTask<Object> future = new FutureTask<Object>(task);
+
+        if (!forkPermits.tryAcquire()) {
+            log.debug("All threads busy; running forked task in the calling thread");
+            future.run();
+            return future;
+        }
+
+        try {
+            getForkExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        future.run();
+                    }
+                    finally {
+                        forkPermits.release();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            forkPermits.release();
+            throw e;
+        }
+
+        return future;
+    }
+
+    /**
+     * @return  The job; or null if there is no job with the given number
+     */
+    public synchronized Job getJob(final int id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Find a job by its number, as given on the command-line; either <tt>n</tt> or <tt>%n</tt>.
+     *
+     * @return  The job; or null if there is no such job
+     */
+    public synchronized Job findJob(final String spec) {
+        if (spec == null) {
+            throw new NullArgumentException("spec");
+        }
+
+        String id = spec.startsWith("%") ? spec.substring(1) : spec;
+
+        try {
+            return getJob(Integer.parseInt(id));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the job which was submitted last, as the default job of <tt>fg</tt>.
+     *
+     * @return  The job; or null if there are no jobs
+     */
+    public synchronized Job getCurrentJob() {
+        if (lastJob != null && jobs.containsKey(lastJob.getId())) {
+            return lastJob;
+        }
+
+        Job job = null;
+        for (Job j : jobs.values()) {
+            job = j;
+        }
+
+        return job;
+    }
+
+    /**
+     * @return  A snapshot of the jobs, ordered by number
+     */
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<Job>(jobs.values());
+    }
+
+    /**
+     * Remove a job from the table; which does not stop it.
+     */
+    public synchronized void remove(final Job job) {
+        if (job == null) {
+            throw new NullArgumentException("job");
+        }
+
+        if (jobs.get(job.getId()) == job) {
+            jobs.remove(job.getId());
+        }
+    }
+
+    /**
+     * Cancel all jobs and release the threads of the pools.
+     */
+    public void close() {
+        List<Job> running;
+        ExecutorService pool;
+        ExecutorService forkPool;
+
+        synchronized (this) {
+            running = new ArrayList<Job>(jobs.values());
+            jobs.clear();
+            pool = executor;
+            executor = null;
+            forkPool = forkExecutor;
+            forkExecutor = null;
+        }
+
+        for (Job job : running) {
+            job.cancel(true);
+        }
+
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (forkPool != null) {
+            forkPool.shutdownNow();
+        }
+    }
+}
@@ -26,7 +26,6 @@ import org.apache.commons.lang.NullArgumentException;
 import org.apache.geronimo.gshell.console.IO;
 import org.apache.geronimo.gshell.command.Command;
 import org.apache.geronimo.gshell.command.CommandManager;
-import org.apache.geronimo.gshell.command.CommandContext;
 import org.apache.geronimo.gshell.command.Variables;
 import org.apache.geronimo.gshell.command.VariablesImpl;
 import org.apache.geronimo.gshell.command.CommandException;
@@ -35,11 +34,23 @@ import org.apache.geronimo.gshell.command.CommandManagerImpl;
 import org.apache.geronimo.gshell.command.MessageSource;
 import org.apache.geronimo.gshell.command.MessageSourceImpl;
 import org.apache.geronimo.gshell.command.StandardVariables;
+import org.apache.geronimo.gshell.command.ObjectConsumer;
+import org.apache.geronimo.gshell.command.ObjectConsumerContext;
+import org.apache.geronimo.gshell.command.ObjectStream;
 import org.apache.geronimo.gshell.commandline.CommandLineBuilder;
 import org.apache.geronimo.gshell.commandline.CommandLine;
+import org.apache.geronimo.gshell.commandline.CommandLineCache;
+import org.apache.geronimo.gshell.commandline.ExpressionCache;
 import org.apache.geronimo.gshell.util.Arguments;
+import org.apache.geronimo.gshell.util.Durations;
+import org.apache.geronimo.gshell.util.ObjectStreams;
 
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * This is the primary interface to executing named commands.
@@ -62,8 +73,50 @@ public class Shell
 
     private final CommandLineBuilder commandLineBuilder;
 
+    private final CommandPool commandPool;
+
     private final Variables variables = new VariablesImpl();
 
+    private final JobManager jobManager = new JobManager();
+
+    private final CommandTimeouts commandTimeouts = new CommandTimeouts();
+
+    /** The command-line being executed in the foreground; null when idle. */
+    private volatile Job foreground;
+
+    /** The expression cache size this shell last applied; only applied again once changed. */
+    private volatile Object expressionCacheSize;
+
+    /**
+     * Create a shell which uses the given command manager and parse cache, which may be shared with other shells.
+     *
+     * @see ShellFactory
+     */
+    public Shell(final IO io, final CommandManager commandManager, final CommandLineCache commandLineCache) throws CommandException {
+        if (io == null) {
+            throw new NullArgumentException("io");
+        }
+        if (commandManager == null) {
+            throw new NullArgumentException("commandManager");
+        }
+        if (commandLineCache == null) {
+            throw new NullArgumentException("commandLineCache");
+        }
+
+        this.io = io;
+
+        shellContainer.registerComponentInstance(this);
+        shellContainer.registerComponentInstance(CommandManager.class, commandManager);
+        shellContainer.registerComponentInstance(commandLineCache);
+        shellContainer.registerComponentImplementation(CommandLineBuilder.class);
+
+        this.commandManager = commandManager;
+        this.commandLineBuilder = (CommandLineBuilder) shellContainer.getComponentInstanceOfType(CommandLineBuilder.class);
+        this.commandPool = new CommandPool(shellContainer);
+
+        initVariables();
+    }
+
     public Shell(final IO io) throws CommandException {
         if (io == null) {
             throw new NullArgumentException("io");
@@ -81,12 +134,19 @@ public class Shell
 
         this.commandManager = (CommandManager) shellContainer.getComponentInstanceOfType(CommandManager.class);
         this.commandLineBuilder = (CommandLineBuilder) shellContainer.getComponentInstanceOfType(CommandLineBuilder.class);
+        this.commandPool = new CommandPool(shellContainer);
+
+        initVariables();
+    }
 
+    private void initVariables() {
         //
         // HACK: Set some default variables
         //
 
         variables.set(StandardVariables.PROMPT, "> ");
+        variables.set(StandardVariables.EXPRESSION_CACHE, ExpressionCache.getInstance(), false);
+        variables.set(StandardVariables.COMMAND_TIMEOUTS, commandTimeouts, false);
     }
 
     public Shell() throws CommandException {
@@ -105,6 +165,22 @@ public class Shell
         return commandManager;
     }
 
+    public CommandLineBuilder getCommandLineBuilder() {
+        return commandLineBuilder;
+    }
+
+    public CommandPool getCommandPool() {
+        return commandPool;
+    }
+
+    public JobManager getJobManager() {
+        return jobManager;
+    }
+
+    public CommandTimeouts getCommandTimeouts() {
+        return commandTimeouts;
+    }
+
     public Object execute(final String commandLine) throws Exception {
         assert commandLine != null;
 
@@ -112,8 +188,98 @@ public class Shell
             log.info("Executing (String): " + commandLine);
         }
 
-        CommandLine cl = commandLineBuilder.create(commandLine);
-        return cl.execute();
+        configureExpressionCache();
+
+        final CommandLine cl = commandLineBuilder.create(commandLine);
+
+        // Nested, as for source, the commands already are part of a job
+        if (Job.current() != null) {
+            return cl.execute();
+        }
+
+        Job job = new Job(0, commandLine, new Callable<Object>() {
+            public Object call() throws Exception {
+                return cl.execute();
+            }
+        });
+
+        foreground = job;
+
+        try {
+            job.run();
+        }
+        finally {
+            foreground = null;
+
+            // An interrupt meant for the job must not hit whatever runs next in this thread
+            Thread.interrupted();
+        }
+
+        try {
+            return job.get();
+        }
+        catch (CancellationException e) {
+            log.info("Interrupted: " + commandLine);
+
+            return Command.FAILURE;
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Interrupt the command-line executing in the foreground, as for Ctrl-C; its running commands
+     * are {@link Command#abort aborted} and the threads running them interrupted.
+     *
+     * @return  True if a command-line was interrupted; false if there was none, or it already was
+     */
+    public boolean interrupt() {
+        Job job = foreground;
+
+        return job != null && job.cancel(true);
+    }
+
+    /**
+     * Check if a command-line is executing in the foreground.
+     */
+    public boolean isBusy() {
+        return foreground != null;
+    }
+
+    /**
+     * Apply the expression cache size from the shell variables, once it has been changed.
+     *
+     * <p>
+     * The cache is shared by all shells of the process, so this changes the size for all of them;
+     * shells which do not change the variable do not undo that.
+     */
+    private void configureExpressionCache() {
+        Object value = variables.get(StandardVariables.EXPRESSION_CACHE_SIZE);
+        if (value == null || value.equals(expressionCacheSize)) {
+            return;
+        }
+
+        expressionCacheSize = value;
+
+        try {
+            int size = Integer.parseInt(String.valueOf(value).trim());
+
+            log.debug("Setting expression cache size: " + size);
+            ExpressionCache.getInstance().setMaxSize(size);
+        }
+        catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid " + StandardVariables.EXPRESSION_CACHE_SIZE + ": " + value);
+        }
     }
 
     //
@@ -134,7 +300,85 @@ public class Shell
         }
     }
 
+    /**
+     * Execute a command on its own; objects it returns are {@link #printObjects printed} to the output
+     * of the shell, as there is no command left to take them.
+     */
     public Object execute(final String commandName, final Object[] args) throws Exception {
+        return printObjects(io, execute(io, commandName, args));
+    }
+
+    /**
+     * Write the objects of a command result as text, one per line, when no command is left to take them.
+     *
+     * @return  {@link Command#SUCCESS} in place of an {@link ObjectStream}; else the result as it is
+     */
+    public Object printObjects(final IO io, final Object result) {
+        if (io == null) {
+            throw new NullArgumentException("io");
+        }
+
+        if (!ObjectStreams.isStream(result)) {
+            return result;
+        }
+
+        ObjectStreams.print(ObjectStreams.iterator(result), io.out);
+
+        return Command.SUCCESS;
+    }
+
+    /**
+     * Execute a command with the given IO instead of the IO of the shell, as for a stage of a pipeline.
+     * Objects it returns are returned as they are.
+     */
+    public Object execute(final IO io, final String commandName, final Object[] args) throws Exception {
+        return execute(io, null, commandName, args);
+    }
+
+    /**
+     * Execute a command with the given IO, feeding it the objects of the previous command of a pipeline.
+     *
+     * @param input     The objects for the command; or null.  Ignored unless the command is an {@link ObjectConsumer}
+     */
+    public Object execute(final IO io, final Iterator<Object> input, final String commandName, final Object[] args) throws Exception {
+        return doExecute(io, input, -1, commandName, args);
+    }
+
+    /**
+     * Execute a command with the given IO and timeout, instead of the timeout of its descriptor or the default.
+     *
+     * @param timeout   The timeout in milliseconds; 0 for none
+     */
+    public Object execute(final IO io, final long timeout, final String commandName, final Object[] args) throws Exception {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout must be >= 0: " + timeout);
+        }
+
+        return doExecute(io, null, timeout, commandName, args);
+    }
+
+    /**
+     * Get the time commands may run, unless their descriptor sets a timeout.
+     *
+     * @return  The timeout in milliseconds; 0 for none
+     */
+    private long getDefaultTimeout() {
+        Object value = variables.get(StandardVariables.COMMAND_TIMEOUT);
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Durations.parse(String.valueOf(value));
+        }
+        catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid " + StandardVariables.COMMAND_TIMEOUT + ": " + value);
+            return 0;
+        }
+    }
+
+    private Object doExecute(final IO io, final Iterator<Object> input, long timeout, final String commandName, final Object[] args) throws Exception {
+        assert io != null;
         assert commandName != null;
         assert args != null;
 
@@ -144,22 +388,20 @@ public class Shell
             log.info("Executing (" + commandName + "): " + Arguments.asString(args));
         }
 
-        // Setup the command container
-        ShellContainer container = new ShellContainer(shellContainer);
-
         final CommandDefinition def = commandManager.getCommandDefinition(commandName);
-        final Class type = def.loadClass();
+
+        // Don't start anything more for a job which has been cancelled
+        Job job = Job.current();
+        if (job != null && job.isCancelled()) {
+            throw new CancellationException("Job cancelled: " + job.getId());
+        }
 
         //
         // TODO: Pass the command instance the name it was registered with?, could be an alias
         //
 
-        container.registerComponentInstance(def);
-        container.registerComponentImplementation(type);
-
-        // container.start() ?
-
-        Command cmd = (Command) container.getComponentInstanceOfType(Command.class);
+        final Command cmd = commandPool.borrow(def);
+        final Class<?> type = cmd.getClass();
 
         //
         // TODO: DI all bits if we can, then free up "context" to replace "category" as a term
@@ -167,7 +409,7 @@ public class Shell
 
         final Variables vars = new VariablesImpl(getVariables());
 
-        cmd.init(new CommandContext() {
+        cmd.init(new ObjectConsumerContext() {
             public IO getIO() {
                 return io;
             }
@@ -176,6 +418,10 @@ public class Shell
                 return vars;
             }
 
+            public Iterator<Object> getInput() {
+                return cmd instanceof ObjectConsumer ? input : null;
+            }
+
             MessageSource messageSource;
 
             public MessageSource getMessageSource() {
@@ -195,7 +441,21 @@ public class Shell
             watch.start();
         }
 
-        Object result;
+        if (job != null) {
+            job.started(cmd);
+        }
+
+        // An explicit timeout wins over that of the descriptor, which wins over the default
+        if (timeout < 0) {
+            timeout = def.getTimeout() >= 0 ? def.getTimeout() : getDefaultTimeout();
+        }
+
+        CommandTimeouts.Timeout timer = null;
+        if (timeout > 0) {
+            timer = commandTimeouts.start(def.getName(), cmd, timeout);
+        }
+
+        Object result = null;
         try {
             result = cmd.execute(args);
 
@@ -203,16 +463,49 @@ public class Shell
                 log.debug("Command completed in " + watch);
             }
         }
+        catch (Exception e) {
+            // Only failures caused by the interrupt or abort of the timeout are expected
+            if (timer == null || !timer.isExpired() || !isInterruption(e)) {
+                throw e;
+            }
+
+            log.debug("Command failed after timing out", e);
+        }
         finally {
+            if (timer != null && timer.complete()) {
+                io.err.println(commandName + ": timed out after " + Durations.format(timeout));
+                io.err.flush();
+
+                result = Command.TIMEOUT;
+            }
+
+            if (job != null) {
+                job.completed(cmd);
+            }
+
             cmd.destroy();
 
-            shellContainer.removeChildContainer(container);
-            // container.stop() container.dispose() ?
+            // Only once destroyed is the command ready to be initialized again, and only
+            // once its timeout and job are completed can nothing abort it anymore
+            commandPool.release(def, cmd);
         }
 
         return result;
     }
 
+    /**
+     * Check if a failure was caused by an interrupt, or by a channel being closed to abort a command.
+     */
+    private static boolean isInterruption(final Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof InterruptedException || t instanceof InterruptedIOException || t instanceof ClosedChannelException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public Object execute(final Object... args) throws Exception {
         assert args != null;
         assert args.length > 1;
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.lang.time.StopWatch;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.command.CommandManager;
+import org.apache.geronimo.gshell.command.CommandManagerImpl;
+import org.apache.geronimo.gshell.commandline.CommandLineBuilder;
+import org.apache.geronimo.gshell.commandline.CommandLineCache;
+import org.apache.geronimo.gshell.console.IO;
+
+/**
+ * Creates {@link Shell} instances which share the infrastructure that does not depend on the session.
+ *
+ * <p>
+ * Commands are discovered once, when the factory is created, and parsed command-lines are
+ * cached for all shells; each shell only gets its own IO, variables and command instances.
+ * Message bundles are already shared, through the {@link java.util.ResourceBundle} cache.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ShellFactory
+{
+    private static final Log log = LogFactory.getLog(ShellFactory.class);
+
+    private final CommandManager commandManager;
+
+    private final CommandLineCache commandLineCache;
+
+    private long created;
+
+    private long lastCreateTime;
+
+    private long totalCreateTime;
+
+    public ShellFactory(final CommandManager commandManager, final CommandLineCache commandLineCache) {
+        if (commandManager == null) {
+            throw new NullArgumentException("commandManager");
+        }
+        if (commandLineCache == null) {
+            throw new NullArgumentException("commandLineCache");
+        }
+
+        this.commandManager = commandManager;
+        this.commandLineCache = commandLineCache;
+    }
+
+    public ShellFactory() throws CommandException {
+        this(new CommandManagerImpl(),
+             new CommandLineCache(Integer.getInteger(CommandLineBuilder.CACHE_SIZE_PROPERTY, CommandLineCache.DEFAULT_MAX_SIZE)));
+    }
+
+    public CommandManager getCommandManager() {
+        return commandManager;
+    }
+
+    public CommandLineCache getCommandLineCache() {
+        return commandLineCache;
+    }
+
+    /**
+     * Create a new shell for a session.
+     *
+     * @param io    The IO for the session; must not be null
+     * @return      A new shell
+     *
+     * @throws CommandException     Failed to create the shell
+     */
+    public Shell create(final IO io) throws CommandException {
+        if (io == null) {
+            throw new NullArgumentException("io");
+        }
+
+        StopWatch watch = new StopWatch();
+        watch.start();
+
+        Shell shell = new Shell(io, commandManager, commandLineCache);
+
+        watch.stop();
+        long time = watch.getTime();
+
+        synchronized (this) {
+            created++;
+            lastCreateTime = time;
+            totalCreateTime += time;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Created shell in " + watch);
+        }
+
+        return shell;
+    }
+
+    public synchronized long getCreatedCount() {
+        return created;
+    }
+
+    /**
+     * @return  The time taken to create the last shell, in milliseconds
+     */
+    public synchronized long getLastCreateTime() {
+        return lastCreateTime;
+    }
+
+    /**
+     * @return  The average time taken to create a shell, in milliseconds
+     */
+    public synchronized long getAverageCreateTime() {
+        return created == 0 ? 0 : totalCreateTime / created;
+    }
+
+    public synchronized String toString() {
+        return "ShellFactory{ created=" + created +
+                ", lastCreateTime=" + lastCreateTime +
+                ", averageCreateTime=" + getAverageCreateTime() +
+                " }";
+    }
+}
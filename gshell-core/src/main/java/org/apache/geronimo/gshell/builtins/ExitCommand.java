@@ -62,6 +62,9 @@ public class ExitCommand
         if (args.length == 1) {
             exitCode = Integer.parseInt(args[0]);
         }
+        else {
+            exitCode = 0;
+        }
 
         return false;
     }
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.builtins;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.geronimo.gshell.Job;
+import org.apache.geronimo.gshell.JobManager;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.command.CommandSupport;
+import org.apache.geronimo.gshell.command.MessageSource;
+import org.apache.geronimo.gshell.console.IO;
+import org.apache.geronimo.gshell.util.Arguments;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Wait for a background job of the current shell, as if it was run in the foreground.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ForegroundCommand
+    extends CommandSupport
+{
+    private Shell shell;
+
+    private volatile Job job;
+
+    public ForegroundCommand(final Shell shell) {
+        super("fg");
+
+        this.shell = shell;
+    }
+
+    protected String getUsage() {
+        return super.getUsage() + " [job]";
+    }
+
+    protected boolean processCommandLine(final CommandLine line) throws CommandException {
+        assert line != null;
+
+        String[] args = line.getArgs();
+
+        if (args.length > 1) {
+            IO io = getIO();
+            MessageSource messages = getMessageSource();
+
+            io.err.println(messages.getMessage("info.unexpected_args", Arguments.asString(args)));
+            io.err.println();
+            return true;
+        }
+
+        return false;
+    }
+
+    protected Object doExecute(final Object[] args) throws Exception {
+        assert args != null;
+
+        JobManager jobManager = shell.getJobManager();
+        IO io = getIO();
+        MessageSource messages = getMessageSource();
+
+        job = args.length == 0 ? jobManager.getCurrentJob() : jobManager.findJob(String.valueOf(args[0]));
+
+        if (job == null) {
+            io.err.println(messages.getMessage("info.no_such_job", args.length == 0 ? "current" : args[0]));
+            return Command.FAILURE;
+        }
+
+        io.out.println(job.getDescription());
+        io.out.flush();
+
+        try {
+            return job.get();
+        }
+        catch (ExecutionException e) {
+            io.err.println(messages.getMessage("info.job_failed", job.getId(), e.getCause()));
+            return Command.FAILURE;
+        }
+        catch (CancellationException e) {
+            io.err.println(messages.getMessage("info.job_cancelled", job.getId()));
+            return Command.FAILURE;
+        }
+        catch (InterruptedException e) {
+            // Only once aborted, which cancels the job
+            return Command.FAILURE;
+        }
+        finally {
+            if (job.isDone()) {
+                jobManager.remove(job);
+            }
+            job = null;
+        }
+    }
+
+    /**
+     * Aborting the command cancels the job it is waiting for, as it is in the foreground.
+     */
+    public void abort() {
+        Job tmp = job;
+        if (tmp != null) {
+            tmp.cancel(true);
+        }
+    }
+}
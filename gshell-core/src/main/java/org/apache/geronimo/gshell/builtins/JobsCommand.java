@@ -17,37 +17,49 @@
  * under the License.
  */
 
-package org.apache.geronimo.gshell.commands.standard;
+package org.apache.geronimo.gshell.builtins;
 
-import org.apache.geronimo.gshell.command.CommandSupport;
+import org.apache.commons.lang.StringUtils;
+import org.apache.geronimo.gshell.Job;
+import org.apache.geronimo.gshell.JobManager;
+import org.apache.geronimo.gshell.Shell;
 import org.apache.geronimo.gshell.command.Command;
-
-//
-// HACK: This is a temporary to handle shells which need to keep around after running
-//       commands that return.  Need to have better jobs support to get rid of this.
-//
+import org.apache.geronimo.gshell.command.CommandSupport;
+import org.apache.geronimo.gshell.console.IO;
 
 /**
- * Wait... just blocks command execution.
+ * List the background jobs of the current shell.
  *
  * @version $Rev$ $Date$
  */
-public class WaitCommand
+public class JobsCommand
     extends CommandSupport
 {
-    public WaitCommand() {
-        super("wait");
+    private Shell shell;
+
+    public JobsCommand(final Shell shell) {
+        super("jobs");
+
+        this.shell = shell;
     }
 
     protected Object doExecute(final Object[] args) throws Exception {
         assert args != null;
 
-        log.info("Waiting...");
+        JobManager jobManager = shell.getJobManager();
+        IO io = getIO();
+
+        for (Job job : jobManager.getJobs()) {
+            String state = StringUtils.capitalize(job.getState().name().toLowerCase());
 
-        synchronized (this) {
-            wait();
+            io.out.println("[" + job.getId() + "] " + StringUtils.rightPad(state, 10) + job.getDescription());
+
+            // Completed jobs are only reported once
+            if (job.isDone()) {
+                jobManager.remove(job);
+            }
         }
-        
+
         return Command.SUCCESS;
     }
 }
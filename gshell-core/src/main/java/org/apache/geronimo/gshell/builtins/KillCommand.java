@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.builtins;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.geronimo.gshell.Job;
+import org.apache.geronimo.gshell.JobManager;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.command.CommandSupport;
+import org.apache.geronimo.gshell.command.MessageSource;
+import org.apache.geronimo.gshell.console.IO;
+
+/**
+ * Cancel background jobs of the current shell, aborting the commands they are running.
+ *
+ * @version $Rev$ $Date$
+ */
+public class KillCommand
+    extends CommandSupport
+{
+    private Shell shell;
+
+    public KillCommand(final Shell shell) {
+        super("kill");
+
+        this.shell = shell;
+    }
+
+    protected String getUsage() {
+        return super.getUsage() + " (<job>)+";
+    }
+
+    protected boolean processCommandLine(final CommandLine line) throws CommandException {
+        assert line != null;
+
+        return line.getArgs().length == 0;
+    }
+
+    protected Object doExecute(final Object[] args) throws Exception {
+        assert args != null;
+
+        JobManager jobManager = shell.getJobManager();
+        IO io = getIO();
+        MessageSource messages = getMessageSource();
+
+        Object result = Command.SUCCESS;
+
+        for (Object arg : args) {
+            Job job = jobManager.findJob(String.valueOf(arg));
+
+            if (job == null) {
+                io.err.println(messages.getMessage("info.no_such_job", arg));
+                result = Command.FAILURE;
+            }
+            else if (!job.cancel(true)) {
+                log.debug("Job already completed: " + job);
+            }
+        }
+
+        return result;
+    }
+}
@@ -77,13 +77,14 @@ public class SetCommand
 
         String[] args = line.getArgs();
 
-        if (args.length == 0) {
-            display = true;
-        }
+        display = args.length == 0;
 
         if (line.hasOption('p')) {
             mode = Mode.PROPERTY;
         }
+        else {
+            mode = Mode.VARIABLE;
+        }
 
         return false;
     }
@@ -93,7 +93,7 @@ public class SourceCommand
         BufferedReader reader;
 
         if (source instanceof File) {
-            File file = (File)source;
+            File file = resolveFile(((File)source).getPath());
             log.info("Using source file: " + file);
 
             reader = new BufferedReader(new FileReader(file));
@@ -116,10 +116,10 @@ public class SourceCommand
             }
             catch (MalformedURLException ignore) {
                 // They try a file
-                File file = new File(tmp);
+                File file = resolveFile(tmp);
                 log.info("Using source file: " + file);
                 
-                reader = new BufferedReader(new FileReader(tmp));
+                reader = new BufferedReader(new FileReader(file));
             }
         }
         
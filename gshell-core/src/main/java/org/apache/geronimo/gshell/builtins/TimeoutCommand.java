@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.builtins;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.command.CommandSupport;
+import org.apache.geronimo.gshell.command.MessageSource;
+import org.apache.geronimo.gshell.console.IO;
+import org.apache.geronimo.gshell.util.Arguments;
+import org.apache.geronimo.gshell.util.Durations;
+
+/**
+ * Run a command, aborting it once it runs longer than the given time.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TimeoutCommand
+    extends CommandSupport
+{
+    private Shell shell;
+
+    public TimeoutCommand(final Shell shell) {
+        super("timeout");
+
+        this.shell = shell;
+    }
+
+    protected String getUsage() {
+        return super.getUsage() + " <duration> <command> [args]";
+    }
+
+    /**
+     * Options after the duration belong to the command.
+     */
+    protected boolean isStopAtNonOption() {
+        return true;
+    }
+
+    protected boolean processCommandLine(final CommandLine line) throws CommandException {
+        assert line != null;
+
+        String[] args = line.getArgs();
+
+        IO io = getIO();
+        MessageSource messages = getMessageSource();
+
+        if (args.length < 2) {
+            io.err.println(messages.getMessage("cli.error.missing_command"));
+            io.err.println();
+            return true;
+        }
+
+        try {
+            Durations.parse(args[0]);
+        }
+        catch (IllegalArgumentException e) {
+            io.err.println(messages.getMessage("cli.error.invalid_duration", args[0]));
+            io.err.println();
+            return true;
+        }
+
+        return false;
+    }
+
+    protected Object doExecute(final Object[] args) throws Exception {
+        assert args != null;
+
+        long timeout = Durations.parse(String.valueOf(args[0]));
+        Object[] rest = Arguments.shift(args);
+
+        return shell.execute(getIO(), timeout, String.valueOf(rest[0]), Arguments.shift(rest));
+    }
+}
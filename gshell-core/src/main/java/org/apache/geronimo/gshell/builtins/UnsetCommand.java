@@ -78,6 +78,9 @@ public class UnsetCommand
         if (line.hasOption('p')) {
             mode = Mode.PROPERTY;
         }
+        else {
+            mode = Mode.VARIABLE;
+        }
 
         return false;
     }
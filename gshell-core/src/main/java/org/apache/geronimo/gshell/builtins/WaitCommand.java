@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.builtins;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.geronimo.gshell.Job;
+import org.apache.geronimo.gshell.JobManager;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.command.CommandSupport;
+import org.apache.geronimo.gshell.command.MessageSource;
+import org.apache.geronimo.gshell.console.IO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Wait for background jobs of the current shell to complete.
+ *
+ * @version $Rev$ $Date$
+ */
+public class WaitCommand
+    extends CommandSupport
+{
+    private Shell shell;
+
+    private boolean forever;
+
+    public WaitCommand(final Shell shell) {
+        super("wait");
+
+        this.shell = shell;
+    }
+
+    protected Options getOptions() {
+        MessageSource messages = getMessageSource();
+
+        Options options = super.getOptions();
+
+        options.addOption(OptionBuilder.withLongOpt("forever")
+            .withDescription(messages.getMessage("cli.option.forever"))
+            .create('f'));
+
+        return options;
+    }
+
+    protected String getUsage() {
+        return super.getUsage() + " [job ...]";
+    }
+
+    protected boolean processCommandLine(final CommandLine line) throws CommandException {
+        assert line != null;
+
+        forever = line.hasOption('f');
+
+        return false;
+    }
+
+    protected Object doExecute(final Object[] args) throws Exception {
+        assert args != null;
+
+        try {
+            if (forever) {
+                // Keeps a shell around after commands which leave something running, like a server
+                log.info("Waiting forever...");
+
+                synchronized (this) {
+                    wait();
+                }
+            }
+
+            return waitFor(args);
+        }
+        catch (InterruptedException e) {
+            log.debug("Wait was interrupted");
+
+            return Command.FAILURE;
+        }
+    }
+
+    private Object waitFor(final Object[] args) throws InterruptedException {
+
+        JobManager jobManager = shell.getJobManager();
+        IO io = getIO();
+        MessageSource messages = getMessageSource();
+
+        List<Job> jobs;
+
+        if (args.length == 0) {
+            jobs = jobManager.getJobs();
+        }
+        else {
+            jobs = new ArrayList<Job>(args.length);
+
+            for (Object arg : args) {
+                Job job = jobManager.findJob(String.valueOf(arg));
+                if (job == null) {
+                    io.err.println(messages.getMessage("info.no_such_job", arg));
+                    return Command.FAILURE;
+                }
+
+                jobs.add(job);
+            }
+        }
+
+        Object result = Command.SUCCESS;
+
+        for (Job job : jobs) {
+            try {
+                job.get();
+            }
+            catch (ExecutionException e) {
+                io.err.println(messages.getMessage("info.job_failed", job.getId(), e.getCause()));
+                result = Command.FAILURE;
+            }
+            catch (CancellationException e) {
+                result = Command.FAILURE;
+            }
+
+            jobManager.remove(job);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.command;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.geronimo.gshell.command.CommandDefinition.InvalidDefinitionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reads the command index which is generated at build time for each jar with command descriptors.
+ *
+ * <p>
+ * The index is a single properties file, which saves finding and loading each descriptor.
+ * The <tt>commands</tt> property lists the descriptor ids (the file name without
+ * <tt>.properties</tt>) and each descriptor property is stored as <tt>&lt;id&gt;.&lt;property&gt;</tt>:
+ *
+ * <pre>
+ * commands=exit,set
+ * exit.name=exit
+ * exit.class=org.apache.geronimo.gshell.builtins.ExitCommand
+ * ...
+ * </pre>
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandIndex
+{
+    /**
+     * Location of command descriptors, relative to the root of a jar.
+     */
+    public static final String DESCRIPTOR_LOCATION = "META-INF/org.apache.geronimo.gshell.command";
+
+    /**
+     * Location of the command index, relative to the root of a jar.
+     */
+    public static final String INDEX_LOCATION = DESCRIPTOR_LOCATION + ".index";
+
+    public static final String COMMANDS_PROPERTY = "commands";
+
+    private final URL root;
+
+    private final List<Properties> descriptors;
+
+    public CommandIndex(final URL root, final Properties index) throws InvalidDefinitionException {
+        if (root == null) {
+            throw new NullArgumentException("root");
+        }
+        if (index == null) {
+            throw new NullArgumentException("index");
+        }
+
+        this.root = root;
+        this.descriptors = split(root, index);
+    }
+
+    /**
+     * Get the root of the jar (or directory) which the index was loaded from.
+     */
+    public URL getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the properties of each command descriptor in the index.
+     */
+    public List<Properties> getDescriptors() {
+        return descriptors;
+    }
+
+    private static List<Properties> split(final URL root, final Properties index) throws InvalidDefinitionException {
+        assert root != null;
+        assert index != null;
+
+        String ids = index.getProperty(COMMANDS_PROPERTY);
+        if (ids == null) {
+            throw new InvalidDefinitionException("Missing '" + COMMANDS_PROPERTY + "' property in command index: " + root);
+        }
+
+        List<Properties> list = new ArrayList<Properties>();
+
+        for (String id : ids.split(",")) {
+            id = id.trim();
+            if (id.length() == 0) {
+                continue;
+            }
+
+            String prefix = id + ".";
+            Properties props = new Properties();
+
+            for (Object key : index.keySet()) {
+                String name = (String)key;
+                if (name.startsWith(prefix)) {
+                    props.setProperty(name.substring(prefix.length()), index.getProperty(name));
+                }
+            }
+
+            list.add(props);
+        }
+
+        return list;
+    }
+
+    /**
+     * Load all command indexes visible to the given class loader.
+     *
+     * @param cl    The class loader to find indexes with; must not be null
+     * @return      The indexes found; may be empty
+     *
+     * @throws IOException                  Failed to read an index
+     * @throws InvalidDefinitionException   An index is not valid
+     */
+    public static List<CommandIndex> loadAll(final ClassLoader cl) throws IOException, InvalidDefinitionException {
+        if (cl == null) {
+            throw new NullArgumentException("cl");
+        }
+
+        List<CommandIndex> list = new ArrayList<CommandIndex>();
+        Enumeration<URL> iter = cl.getResources(INDEX_LOCATION);
+
+        while (iter.hasMoreElements()) {
+            URL url = iter.nextElement();
+
+            Properties props = new Properties();
+            InputStream input = url.openStream();
+            try {
+                props.load(input);
+            }
+            finally {
+                input.close();
+            }
+
+            list.add(new CommandIndex(rootOf(url, INDEX_LOCATION), props));
+        }
+
+        return list;
+    }
+
+    /**
+     * Get the root of the jar (or directory) which contains a resource.
+     *
+     * @param url       The URL of the resource
+     * @param location  The location of the resource, relative to the root
+     * @return          The root URL; the resource URL if it does not end with the location
+     *
+     * @throws IOException  Failed to create the root URL
+     */
+    public static URL rootOf(final URL url, final String location) throws IOException {
+        assert url != null;
+        assert location != null;
+
+        String path = url.toExternalForm();
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        if (path.endsWith(location)) {
+            return new URL(path.substring(0, path.length() - location.length()));
+        }
+
+        return url;
+    }
+}
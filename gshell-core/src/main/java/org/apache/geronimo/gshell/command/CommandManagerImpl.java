@@ -24,13 +24,26 @@ import org.apache.xbean.finder.ResourceFinder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.lang.NullArgumentException;
+import org.apache.geronimo.gshell.command.CommandDefinition.InvalidDefinitionException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.Collections;
 import java.util.Collection;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manager of command definitions and provides access to command instances.
@@ -42,29 +55,229 @@ public class CommandManagerImpl
 {
     private static final Log log = LogFactory.getLog(CommandManager.class);
 
-    private Map<String,CommandDefinition> commandDefMap = new HashMap<String,CommandDefinition>();
+    /**
+     * System property to enable loading all command classes in the background once discovered.
+     */
+    public static final String WARM_PROPERTY = CommandManagerImpl.class.getName() + ".warm";
 
-    private Map<String,CommandDefinition> commandAliasMap = new HashMap<String,CommandDefinition>();
+    /**
+     * System property to enable lazy discovery, where definitions are only created when first looked up.
+     */
+    public static final String LAZY_PROPERTY = CommandManagerImpl.class.getName() + ".lazy";
+
+    private final boolean lazy;
+
+    private Map<String,CommandDefinition> commandDefMap = new ConcurrentHashMap<String,CommandDefinition>();
+
+    private Map<String,CommandDefinition> commandAliasMap = new ConcurrentHashMap<String,CommandDefinition>();
+
+    /** Discovered descriptors not yet turned into definitions, by command name and by alias; guarded by this. */
+    private final Map<String,Descriptor> pending = new HashMap<String,Descriptor>();
+
+    /**
+     * @param lazy  True to only create definitions when they are first looked up
+     */
+    public CommandManagerImpl(final boolean lazy) throws CommandException {
+        this.lazy = lazy;
 
-    public CommandManagerImpl() throws CommandException {
         try {
             discoverCommands();
         }
         catch (Exception e) {
             throw new CommandException(e);
         }
+
+        if (Boolean.getBoolean(WARM_PROPERTY)) {
+            try {
+                warmCommands(false);
+            }
+            catch (InterruptedException e) {
+                throw new CommandException(e);
+            }
+        }
+    }
+
+    public CommandManagerImpl() throws CommandException {
+        this(Boolean.getBoolean(LAZY_PROPERTY));
+    }
+
+    public boolean isLazy() {
+        return lazy;
     }
 
+    /**
+     * Discover commands from the build-time indexes, and only scan for descriptors in jars which have no index.
+     */
     private void discoverCommands() throws Exception {
         log.info("Discovering commands");
 
-        ResourceFinder finder = new ResourceFinder("META-INF/");
-        Map<String, Properties> map = finder.mapAllProperties("org.apache.geronimo.gshell.command");
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        Set<String> indexed = new HashSet<String>();
+
+        for (CommandIndex index : CommandIndex.loadAll(cl)) {
+            log.debug("Loading command index: " + index.getRoot());
+
+            for (Properties props : index.getDescriptors()) {
+                register(new Descriptor(props));
+            }
+
+            indexed.add(index.getRoot().toExternalForm());
+        }
+
+        if (indexed.isEmpty()) {
+            scanCommands(new ResourceFinder("META-INF/"));
+            return;
+        }
+
+        // Find roots with descriptors but no index, this only lists the directories
+        List<URL> roots = new ArrayList<URL>();
+        Enumeration<URL> iter = cl.getResources(CommandIndex.DESCRIPTOR_LOCATION);
+
+        while (iter.hasMoreElements()) {
+            URL root = CommandIndex.rootOf(iter.nextElement(), CommandIndex.DESCRIPTOR_LOCATION);
+            if (!indexed.contains(root.toExternalForm())) {
+                roots.add(root);
+            }
+        }
+
+        if (!roots.isEmpty()) {
+            log.debug("Scanning for commands in: " + roots);
+
+            scanCommands(new ResourceFinder("META-INF/", cl, roots.toArray(new URL[roots.size()])));
+        }
+    }
+
+    private void scanCommands(final ResourceFinder finder) throws Exception {
+        assert finder != null;
+
+        // Only lists the descriptors, they are read when registered (or when first needed if lazy)
+        Map<String, URL> map = finder.getResourcesMap("org.apache.geronimo.gshell.command");
 
         for (String filename : map.keySet()) {
-            Properties props = map.get(filename);
-            CommandDefinition def = new CommandDefinition(props);
-            addCommandDefinition(def);
+            register(new Descriptor(filename, map.get(filename)));
+        }
+    }
+
+    private void register(final Descriptor descriptor) throws Exception {
+        assert descriptor != null;
+
+        if (!lazy) {
+            addCommandDefinition(descriptor.load());
+            return;
+        }
+
+        synchronized (this) {
+            pending.put(descriptor.name, descriptor);
+
+            for (String alias : descriptor.aliases) {
+                if (!pending.containsKey(alias)) {
+                    pending.put(alias, descriptor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the definition of a pending descriptor for the given name or alias.
+     *
+     * @return  True if a definition was created
+     */
+    private synchronized boolean materialize(final String name) throws InvalidDefinitionException {
+        assert name != null;
+
+        Descriptor descriptor = pending.get(name);
+        if (descriptor == null) {
+            return false;
+        }
+
+        materialize(descriptor);
+
+        return true;
+    }
+
+    private void materialize(final Descriptor descriptor) throws InvalidDefinitionException {
+        assert Thread.holdsLock(this);
+
+        // Remove all entries of the descriptor, so it is only materialized once
+        pending.values().removeAll(Collections.singleton(descriptor));
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loading command descriptor: " + descriptor);
+        }
+
+        addCommandDefinition(descriptor.load());
+    }
+
+    /**
+     * Create the definitions of all pending descriptors.
+     */
+    private void materializeAll() {
+        synchronized (this) {
+            while (!pending.isEmpty()) {
+                Descriptor descriptor = pending.values().iterator().next();
+
+                try {
+                    materialize(descriptor);
+                }
+                catch (InvalidDefinitionException e) {
+                    log.error("Invalid command descriptor: " + descriptor, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load and initialize the classes of all known commands in parallel, so that the first
+     * execution of each command does not pay for class loading.
+     *
+     * <p>
+     * Commands which fail to load are logged and skipped; they will fail again when executed.
+     *
+     * @param wait  True to block until all classes have been loaded; else load in the background
+     *
+     * @throws InterruptedException     Interrupted while waiting
+     */
+    public void warmCommands(final boolean wait) throws InterruptedException {
+        final ClassLoader cl = Thread.currentThread().getContextClassLoader();
+
+        materializeAll();
+        List<CommandDefinition> defs = new ArrayList<CommandDefinition>(commandDefMap.values());
+
+        log.debug("Warming " + defs.size() + " commands");
+
+        int threads = Math.max(1, Math.min(defs.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(final Runnable task) {
+                Thread t = new Thread(task, "CommandWarmer-" + (++count));
+                t.setDaemon(true);
+                t.setContextClassLoader(cl);
+                return t;
+            }
+        });
+
+        for (final CommandDefinition def : defs) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        // Initializing forces the class to be linked as well as loaded
+                        Class<?> type = def.loadClass(cl);
+                        Class.forName(type.getName(), true, type.getClassLoader());
+                    }
+                    catch (Throwable t) {
+                        log.warn("Failed to warm command: " + def.getName(), t);
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+
+        if (wait) {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting
+            }
         }
     }
 
@@ -118,23 +331,124 @@ public class CommandManagerImpl
         // Make sure there is not funky whitespace in there (from Telnet or something)
         name = name.trim();
 
+        CommandDefinition def = lookup(name);
+
+        if (def == null && lazy) {
+            // Names of scanned descriptors are only guessed from the file name, so if not found load all
+            try {
+                if (!materialize(name)) {
+                    materializeAll();
+                }
+            }
+            catch (InvalidDefinitionException e) {
+                log.error("Invalid command descriptor for: " + name, e);
+            }
+
+            def = lookup(name);
+        }
+
+        if (def == null) {
+            throw new CommandNotFoundException(name);
+        }
+
+        return def;
+    }
+
+    private CommandDefinition lookup(final String name) {
+        assert name != null;
+
         CommandDefinition def = commandDefMap.get(name);
         if (def == null) {
             def = commandAliasMap.get(name);
-
-            if (def == null) {
-                throw new CommandNotFoundException(name);
-            }
         }
 
         return def;
     }
 
     public Set<String> commandNames() {
+        materializeAll();
+
         return Collections.unmodifiableSet(commandDefMap.keySet());
     }
 
     public Collection<CommandDefinition> commandDefinitions() {
+        materializeAll();
+
         return Collections.unmodifiableCollection(commandDefMap.values());
     }
+
+    //
+    // Descriptor
+    //
+
+    /**
+     * A discovered command descriptor, which is either already loaded (from an index) or still to be read.
+     */
+    private static class Descriptor
+    {
+        public final String name;
+
+        public final String[] aliases;
+
+        private Properties props;
+
+        private final URL url;
+
+        public Descriptor(final Properties props) {
+            assert props != null;
+
+            this.props = props;
+            this.url = null;
+
+            // Index entries are validated at build time, so the name is known to be present
+            this.name = props.getProperty("name");
+
+            String tmp = props.getProperty("aliases");
+            if (tmp != null) {
+                aliases = tmp.split(",");
+                for (int i=0; i < aliases.length; i++) {
+                    aliases[i] = aliases[i].trim();
+                }
+            }
+            else {
+                aliases = new String[0];
+            }
+        }
+
+        public Descriptor(final String filename, final URL url) {
+            assert filename != null;
+            assert url != null;
+
+            this.url = url;
+
+            // Descriptors are normally named after their command
+            this.name = filename.endsWith(".properties") ? filename.substring(0, filename.length() - 11) : filename;
+            this.aliases = new String[0];
+        }
+
+        public CommandDefinition load() throws InvalidDefinitionException {
+            if (props == null) {
+                props = new Properties();
+
+                try {
+                    InputStream input = url.openStream();
+                    try {
+                        props.load(input);
+                    }
+                    finally {
+                        input.close();
+                    }
+                }
+                catch (IOException e) {
+                    throw new InvalidDefinitionException("Failed to read command descriptor: " + url + "; " + e);
+                }
+            }
+
+            return new CommandDefinition(props);
+        }
+
+        public String toString() {
+            return url != null ? url.toString() : name;
+        }
+    }
 }
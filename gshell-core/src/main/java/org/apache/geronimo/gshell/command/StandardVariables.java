@@ -27,4 +27,26 @@ package org.apache.geronimo.gshell.command;
 public interface StandardVariables
 {
     String PROMPT = "gshell.prompt";
+
+    /**
+     * Maximum number of compiled expressions kept in the expression cache; applied before the next
+     * command-line once changed.  The cache is shared by the whole process, and so is the limit;
+     * the shell which changed it last wins.
+     */
+    String EXPRESSION_CACHE_SIZE = "gshell.expressionCacheSize";
+
+    /** Read-only; the shared expression cache, displays its statistics. */
+    String EXPRESSION_CACHE = "gshell.expressionCache";
+
+    /** Working directory of the client which requested the command; default is user.dir. */
+    String CWD = "gshell.cwd";
+
+    /** Read-only; environment of the client which requested the command, as a Map; default is the JVM environment. */
+    String ENVIRONMENT = "gshell.environment";
+
+    /** Time a command may run before it is aborted, as <tt>30s</tt>, unless its descriptor sets a <tt>timeout</tt>; default is none. */
+    String COMMAND_TIMEOUT = "gshell.commandTimeout";
+
+    /** Read-only; the command timeouts of the shell, displays how many commands timed out. */
+    String COMMAND_TIMEOUTS = "gshell.commandTimeouts";
 }
\ No newline at end of file
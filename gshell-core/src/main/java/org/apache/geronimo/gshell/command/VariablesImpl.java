@@ -27,21 +27,47 @@ import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Variables backed up by a map.
  *
+ * <p>
+ * Safe for use by many threads.  The variables are kept in an immutable snapshot which is
+ * replaced (copy-on-write) on every change, so reads never lock and iteration always sees
+ * a consistent view, while writers retry on conflict.
+ *
+ * <p>
+ * Lookups and mutability checks go through a flattened index of everything visible from this
+ * scope, so they take the same time however deeply scopes are nested.  Each scope has its own
+ * version, and an index is only rebuilt when this scope or one of its parents changed.  All
+ * scopes created under the same root also share a version which is bumped on every change; as
+ * long as it has not moved, an index is known to be current without checking the parents.
+ *
  * @version $Rev$ $Date$
  */
 public class VariablesImpl
     implements Variables
 {
-    private final Map<String,Object> map;
+    private final AtomicReference<State> state;
 
     private final Variables parent;
 
-    private final Set<String> immutables = new HashSet<String>();
+    /** Version of all scopes sharing the same root; bumped on every change. */
+    private final AtomicLong version;
+
+    /** Version of this scope; bumped on every change of this scope. */
+    private final AtomicLong ownVersion = new AtomicLong();
 
+    private volatile Index index;
+
+    /**
+     * Create variables with the given initial contents and parent.
+     *
+     * <p>
+     * The contents of the map are copied; later changes to the map are not seen.
+     */
     public VariablesImpl(final Map<String,Object> map, final Variables parent) {
         if (map == null) {
             throw new NullArgumentException("map");
@@ -50,8 +76,9 @@ public class VariablesImpl
             throw new NullArgumentException("parent");
         }
 
-        this.map = map;
+        this.state = new AtomicReference<State>(new State(map));
         this.parent = parent;
+        this.version = chainVersion(parent);
     }
 
     public VariablesImpl(final Variables parent) {
@@ -59,8 +86,9 @@ public class VariablesImpl
             throw new NullArgumentException("parent");
         }
 
-        this.map = new HashMap<String,Object>();
+        this.state = new AtomicReference<State>(State.EMPTY);
         this.parent = parent;
+        this.version = chainVersion(parent);
     }
 
     public VariablesImpl(final Map<String,Object> map) {
@@ -68,12 +96,15 @@ public class VariablesImpl
             throw new NullArgumentException("map");
         }
 
-        this.map = map;
+        this.state = new AtomicReference<State>(new State(map));
         this.parent = null;
+        this.version = new AtomicLong();
     }
 
     public VariablesImpl() {
-        this(new HashMap<String,Object>());
+        this.state = new AtomicReference<State>(State.EMPTY);
+        this.parent = null;
+        this.version = new AtomicLong();
     }
 
     public void set(final String name, final Object value) {
@@ -83,19 +114,28 @@ public class VariablesImpl
     public void set(final String name, final Object value, boolean mutable) {
         assert name != null;
 
-        ensureMutable(name);
+        ensureParentMutable(name);
 
-        map.put(name, value);
-
-        if (!mutable) {
-            immutables.add(name);
+        State current, updated;
+        do {
+            current = state.get();
+            current.ensureMutable(name);
+            updated = current.set(name, value, mutable);
         }
+        while (!state.compareAndSet(current, updated));
+
+        changed();
     }
 
     public Object get(final String name) {
         assert name != null;
 
-        Object value = map.get(name);
+        Index index = index();
+        if (index != null) {
+            return index.values.get(name);
+        }
+
+        Object value = state.get().map.get(name);
         if (value == null && parent != null) {
             value = parent.get(name);
         }
@@ -115,20 +155,35 @@ public class VariablesImpl
     public void unset(final String name) {
         assert name != null;
 
-        ensureMutable(name);
+        ensureParentMutable(name);
 
-        map.remove(name);
+        State current, updated;
+        do {
+            current = state.get();
+            current.ensureMutable(name);
+            updated = current.unset(name);
+        }
+        while (!state.compareAndSet(current, updated));
+
+        if (updated != current) {
+            changed();
+        }
     }
 
     public boolean contains(final String name) {
         assert name != null;
 
-        return map.containsKey(name);
+        return state.get().map.containsKey(name);
     }
 
     public boolean isMutable(final String name) {
         assert name != null;
 
+        Index index = index();
+        if (index != null) {
+            return !index.immutables.contains(name);
+        }
+
         boolean mutable = true;
 
         // First ask out parent if there is one, if they are immutable, then so are we
@@ -137,16 +192,16 @@ public class VariablesImpl
         }
 
         if (mutable) {
-            mutable = !immutables.contains(name);
+            mutable = !state.get().immutables.contains(name);
         }
 
         return mutable;
     }
 
-    private void ensureMutable(final String name) {
+    private void ensureParentMutable(final String name) {
         assert name != null;
 
-        if (!isMutable(name)) {
+        if (parent != null && !parent.isMutable(name)) {
             throw new ImmutableVariableException(name);
         }
     }
@@ -171,7 +226,8 @@ public class VariablesImpl
     public Iterator<String> names() {
         // Chain to parent iterator if we have a parent
         return new Iterator<String>() {
-            Iterator<String> iter = map.keySet().iterator();
+            // Iterate over the snapshot at the time of the call, changes after this are not seen
+            Iterator<String> iter = state.get().map.keySet().iterator();
             boolean more = parent() != null;
 
             public boolean hasNext() {
@@ -199,6 +255,178 @@ public class VariablesImpl
         return parent;
     }
 
+    private static AtomicLong chainVersion(final Variables parent) {
+        if (parent instanceof VariablesImpl) {
+            return ((VariablesImpl)parent).version;
+        }
+
+        return new AtomicLong();
+    }
+
+    private void changed() {
+        // Own version first, so whoever sees the new shared version also sees it
+        ownVersion.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Get the flattened index of this scope, rebuilding it if stale.
+     *
+     * @return  The index; or null if the parent is not a {@link VariablesImpl} and can not be flattened
+     */
+    Index index() {
+        if (parent != null && !(parent instanceof VariablesImpl)) {
+            return null;
+        }
+
+        // Read the versions before the state, so that a concurrent change always leaves the index stale
+        long current = version.get();
+
+        Index idx = index;
+        if (idx != null && idx.checked == current) {
+            return idx;
+        }
+
+        // Something under the root changed; only rebuild if it was this scope or a parent
+        Index base = parent == null ? Index.EMPTY : ((VariablesImpl)parent).index();
+        long own = ownVersion.get();
+
+        if (idx != null && idx.own == own && idx.base == base) {
+            idx.checked = current;
+            return idx;
+        }
+
+        idx = new Index(current, own, base, state.get());
+        index = idx;
+
+        return idx;
+    }
+
+    //
+    // Index
+    //
+
+    /**
+     * Flattened view of all values and immutable names visible from a scope.
+     */
+    static class Index
+    {
+        public static final Index EMPTY = new Index(Collections.<String,Object>emptyMap(), Collections.<String>emptySet());
+
+        /** Shared version the index was last found current at. */
+        public volatile long checked;
+
+        /** Version of the scope the index was built from. */
+        public final long own;
+
+        /** Index of the parent the index was built on. */
+        public final Index base;
+
+        public final Map<String,Object> values;
+
+        public final Set<String> immutables;
+
+        private Index(final Map<String,Object> values, final Set<String> immutables) {
+            this.checked = -1;
+            this.own = -1;
+            this.base = null;
+            this.values = values;
+            this.immutables = immutables;
+        }
+
+        public Index(final long checked, final long own, final Index base, final State state) {
+            assert base != null;
+            assert state != null;
+
+            this.checked = checked;
+            this.own = own;
+            this.base = base;
+
+            // Share the parent's maps when this scope adds nothing, as most per-command scopes do
+            if (state.map.isEmpty()) {
+                values = base.values;
+            }
+            else {
+                Map<String,Object> map = new HashMap<String,Object>(base.values);
+                for (Map.Entry<String,Object> entry : state.map.entrySet()) {
+                    // Null values do not hide the parent's value
+                    if (entry.getValue() != null) {
+                        map.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                values = map;
+            }
+
+            if (state.immutables.isEmpty()) {
+                immutables = base.immutables;
+            }
+            else {
+                Set<String> set = new HashSet<String>(base.immutables);
+                set.addAll(state.immutables);
+                immutables = set;
+            }
+        }
+    }
+
+    //
+    // State
+    //
+
+    /**
+     * Immutable snapshot of variables and the names of those which are immutable.
+     */
+    private static class State
+    {
+        public static final State EMPTY = new State(Collections.<String,Object>emptyMap(), Collections.<String>emptySet());
+
+        public final Map<String,Object> map;
+
+        public final Set<String> immutables;
+
+        private State(final Map<String,Object> map, final Set<String> immutables) {
+            assert map != null;
+            assert immutables != null;
+
+            this.map = map;
+            this.immutables = immutables;
+        }
+
+        public State(final Map<String,Object> map) {
+            this(Collections.unmodifiableMap(new HashMap<String,Object>(map)), Collections.<String>emptySet());
+        }
+
+        public void ensureMutable(final String name) {
+            if (immutables.contains(name)) {
+                throw new ImmutableVariableException(name);
+            }
+        }
+
+        public State set(final String name, final Object value, final boolean mutable) {
+            Map<String,Object> m = new HashMap<String,Object>(map);
+            m.put(name, value);
+
+            Set<String> i = immutables;
+            if (!mutable) {
+                i = new HashSet<String>(immutables);
+                i.add(name);
+                i = Collections.unmodifiableSet(i);
+            }
+
+            return new State(Collections.unmodifiableMap(m), i);
+        }
+
+        public State unset(final String name) {
+            if (!map.containsKey(name)) {
+                return this;
+            }
+
+            Map<String,Object> m = new HashMap<String,Object>(map);
+            m.remove(name);
+
+            return new State(Collections.unmodifiableMap(m), immutables);
+        }
+    }
+
     public static boolean isIdentifier(final String name) {
         if (name == null || name.length() == 0) {
             return false;
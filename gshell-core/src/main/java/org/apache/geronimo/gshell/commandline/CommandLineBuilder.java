@@ -41,24 +41,63 @@ public class CommandLineBuilder
 {
     private static final Log log = LogFactory.getLog(CommandLineBuilder.class);
 
+    /**
+     * System property to configure the maximum number of parsed command-lines to cache; 0 disables caching.
+     */
+    public static final String CACHE_SIZE_PROPERTY = CommandLineBuilder.class.getName() + ".cacheSize";
+
     private final Shell shell;
 
     private final CommandLineParser parser;
 
-    public CommandLineBuilder(final Shell shell) {
+    private final CommandLineCache cache;
+
+    private final ExecutingVisitor visitor;
+
+    /**
+     * Create a builder which caches parsed command-lines in the given cache.
+     *
+     * <p>
+     * Parse trees hold no per-shell state, so a cache may be shared by many shells.
+     */
+    public CommandLineBuilder(final Shell shell, final CommandLineCache cache) {
         if (shell == null) {
             throw new NullArgumentException("shell");
         }
+        if (cache == null) {
+            throw new NullArgumentException("cache");
+        }
 
         this.shell = shell;
         this.parser = new CommandLineParser();
+        this.cache = cache;
+
+        // The visitor holds no per-execution state, so one instance can execute any tree
+        this.visitor = new ExecutingVisitor(shell);
+    }
+
+    public CommandLineBuilder(final Shell shell) {
+        this(shell, new CommandLineCache(Integer.getInteger(CACHE_SIZE_PROPERTY, CommandLineCache.DEFAULT_MAX_SIZE)));
+    }
+
+    public CommandLineCache getCache() {
+        return cache;
     }
 
     private ASTCommandLine parse(final String input) throws ParseException {
         assert input != null;
 
+        ASTCommandLine cl = cache.get(input);
+        if (cl != null) {
+            return cl;
+        }
+
         Reader reader = new StringReader(input);
-        ASTCommandLine cl = parser.parse(reader);
+
+        // The parser is re-initialized for each parse, so it can only be used by one thread at a time
+        synchronized (parser) {
+            cl = parser.parse(reader);
+        }
 
         // If debug is enabled, the log the parse tree
         if (log.isDebugEnabled()) {
@@ -66,6 +105,8 @@ public class CommandLineBuilder
             cl.jjtAccept(logger, null);
         }
 
+        cache.put(input, cl);
+
         return cl;
     }
 
@@ -78,7 +119,6 @@ public class CommandLineBuilder
         }
 
         final ASTCommandLine root = parse(commandLine);
-        final ExecutingVisitor visitor = new ExecutingVisitor(this.shell);
 
         return new CommandLine() {
             public Object execute() throws Exception {
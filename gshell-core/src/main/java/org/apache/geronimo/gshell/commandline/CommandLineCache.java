@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import org.apache.geronimo.gshell.commandline.parser.ASTCommandLine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed command-line trees, keyed by the raw command-line text.
+ *
+ * <p>
+ * Only the parse tree is cached; variable expansion happens when the tree is visited
+ * for execution, so cached entries never need to be invalidated when variables change.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandLineCache
+{
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private final int maxSize;
+
+    private final Map<String,ASTCommandLine> map;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public CommandLineCache(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size must be >= 0: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+
+        // Access-ordered so the eldest entry is always the least recently used
+        this.map = new LinkedHashMap<String,ASTCommandLine>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(final Map.Entry<String,ASTCommandLine> eldest) {
+                if (size() > CommandLineCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    public CommandLineCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Get the cached tree for the given command-line.
+     *
+     * @param commandLine   The raw command-line text; must not be null
+     * @return              The cached tree; or null if not cached
+     */
+    public synchronized ASTCommandLine get(final String commandLine) {
+        assert commandLine != null;
+
+        ASTCommandLine root = map.get(commandLine);
+        if (root != null) {
+            hits++;
+        }
+        else {
+            misses++;
+        }
+
+        return root;
+    }
+
+    /**
+     * Cache the tree for the given command-line, evicting the least recently used entry if full.
+     *
+     * @param commandLine   The raw command-line text; must not be null
+     * @param root          The parsed tree; must not be null
+     */
+    public synchronized void put(final String commandLine, final ASTCommandLine root) {
+        assert commandLine != null;
+        assert root != null;
+
+        if (maxSize > 0) {
+            map.put(commandLine, root);
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized String toString() {
+        return "CommandLineCache{ size=" + map.size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                " }";
+    }
+}
@@ -23,12 +23,20 @@ import org.apache.geronimo.gshell.commandline.parser.CommandLineParserVisitor;
 import org.apache.geronimo.gshell.commandline.parser.SimpleNode;
 import org.apache.geronimo.gshell.commandline.parser.ASTCommandLine;
 import org.apache.geronimo.gshell.commandline.parser.ASTExpression;
+import org.apache.geronimo.gshell.commandline.parser.ASTPipeline;
+import org.apache.geronimo.gshell.commandline.parser.ASTBackground;
+import org.apache.geronimo.gshell.commandline.parser.ASTGroup;
+import org.apache.geronimo.gshell.commandline.parser.Node;
 import org.apache.geronimo.gshell.commandline.parser.ASTQuotedString;
 import org.apache.geronimo.gshell.commandline.parser.ASTOpaqueString;
 import org.apache.geronimo.gshell.commandline.parser.ASTPlainString;
+import org.apache.geronimo.gshell.commandline.parser.StringSupport;
 import org.apache.geronimo.gshell.util.Arguments;
+import org.apache.geronimo.gshell.command.Command;
 import org.apache.geronimo.gshell.Shell;
 import org.apache.geronimo.gshell.ErrorNotification;
+import org.apache.geronimo.gshell.Job;
+import org.apache.geronimo.gshell.command.Notification;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,6 +44,9 @@ import org.apache.commons.lang.NullArgumentException;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Visitor which will execute command-lines as parsed.
@@ -77,31 +88,163 @@ public class ExecutingVisitor
         return node.childrenAccept(this, data);
     }
 
-    public Object visit(final ASTExpression node, final Object data) {
+    public Object visit(final ASTPipeline node, final Object data) {
+        assert node != null;
+
+        Pipeline pipeline = new Pipeline(shell);
+
+        // Expand the arguments of all commands before any of them runs
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            pipeline.add(arguments((ASTExpression)node.jjtGetChild(i)));
+        }
+
+        Object result;
+
+        try {
+            result = pipeline.execute();
+        }
+        catch (Exception e) {
+            throw new ErrorNotification(e);
+        }
+
+        return result;
+    }
+
+    public Object visit(final ASTBackground node, final Object data) {
+        assert node != null;
+
+        final Node child = node.jjtGetChild(0);
+        String description = describe(child);
+
+        Job job = shell.getJobManager().submit(description, new Callable<Object>() {
+            public Object call() throws Exception {
+                return child.jjtAccept(ExecutingVisitor.this, data);
+            }
+        });
+
+        shell.getIO().err.println("[" + job.getId() + "] " + description);
+        shell.getIO().err.flush();
+
+        return Command.SUCCESS;
+    }
+
+    public Object visit(final ASTGroup node, final Object data) {
+        assert node != null;
+
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(node.jjtGetNumChildren());
+
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            final Node child = node.jjtGetChild(i);
+
+            futures.add(shell.getJobManager().fork(Job.inherit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return child.jjtAccept(ExecutingVisitor.this, data);
+                }
+            })));
+        }
+
+        Object result = null;
+        Throwable failure = null;
+
+        try {
+            for (Future<Object> future : futures) {
+                try {
+                    result = future.get();
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+
+            throw new ErrorNotification(e);
+        }
+
+        if (failure instanceof Notification) {
+            throw (Notification)failure;
+        }
+        else if (failure != null) {
+            throw new ErrorNotification(failure);
+        }
+
+        return result;
+    }
+
+    /**
+     * Render the command-line of a node, as it was given, to describe a job.
+     */
+    private String describe(final Node node) {
+        assert node != null;
+
+        if (node instanceof StringSupport) {
+            return ((StringSupport)node).getValue();
+        }
+
+        String separator;
+        String prefix = "";
+        String suffix = "";
+
+        if (node instanceof ASTPipeline) {
+            separator = " | ";
+        }
+        else if (node instanceof ASTGroup) {
+            separator = " ; ";
+            prefix = "( ";
+            suffix = " )";
+        }
+        else {
+            separator = " ";
+        }
+
+        StringBuffer buff = new StringBuffer(prefix);
+
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            if (i > 0) {
+                buff.append(separator);
+            }
+            buff.append(describe(node.jjtGetChild(i)));
+        }
+
+        return buff.append(suffix).toString();
+    }
+
+    /**
+     * Create the argument list (cmd name + args) of an expression.
+     */
+    private Object[] arguments(final ASTExpression node) {
         assert node != null;
 
-        // Create the argument list (cmd name + args)
         List<Object> list = new ArrayList<Object>(node.jjtGetNumChildren());
         node.childrenAccept(this, list);
 
-        Object[] args = (Object[])list.toArray(new Object[list.size()]);
         assert list.size() >= 1;
 
+        return list.toArray(new Object[list.size()]);
+    }
+
+    public Object visit(final ASTExpression node, final Object data) {
+        assert node != null;
+
+        Object[] args = arguments(node);
+
         String commandName = String.valueOf(args[0]);
         args = Arguments.shift(args);
 
-        Object result;
-
         try {
-            result = shell.execute(commandName, args);
+            return shell.execute(commandName, args);
         }
         catch (Exception e) {
             throw new ErrorNotification(e);
         }
-
-        return result;
     }
 
+    @SuppressWarnings("unchecked")
     private Object appendString(final String value, final Object data) {
         assert data != null;
         assert data instanceof List;
@@ -116,9 +259,27 @@ public class ExecutingVisitor
     // TODO: Include parsed ${...} strings?
     //
 
+    /**
+     * Expand variable expressions in the value of the given node.
+     *
+     * <p>
+     * The value is compiled into a template the first time the node is visited, and the
+     * template is kept with the node, so re-executing the same tree does not parse it again.
+     */
+    private String expand(final StringSupport node) {
+        assert node != null;
+
+        VariableExpressionTemplate template = (VariableExpressionTemplate)node.getCompiledValue();
+        if (template == null) {
+            template = VariableExpressionTemplate.compile(node.getValue());
+            node.setCompiledValue(template);
+        }
+
+        return template.evaluate(shell.getVariables());
+    }
+
     public Object visit(final ASTQuotedString node, final Object data) {
-        VariableExpressionParser exprParser = new VariableExpressionParser(shell.getVariables());
-        String value = exprParser.parse(node.getValue());
+        String value = expand(node);
         return appendString(value, data);
     }
 
@@ -127,8 +288,7 @@ public class ExecutingVisitor
     }
 
     public Object visit(final ASTPlainString node, final Object data) {
-        VariableExpressionParser exprParser = new VariableExpressionParser(shell.getVariables());
-        String value = exprParser.parse(node.getValue());
+        String value = expand(node);
         return appendString(value, data);
     }
 }
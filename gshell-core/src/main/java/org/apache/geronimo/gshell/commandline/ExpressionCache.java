@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import org.apache.commons.jexl.Expression;
+import org.apache.commons.jexl.ExpressionFactory;
+import org.apache.commons.jexl.resolver.FlatResolver;
+import org.apache.commons.lang.NullArgumentException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of compiled <a href="http://jakarta.apache.org/commons/jexl/">JEXL</a>
+ * expressions, keyed by the expression text.
+ *
+ * <p>
+ * When the cache is full the least recently used entries are evicted first.  Lookups only
+ * hold the lock of the cache to find and reorder an entry; expressions are compiled outside of it.
+ * Expressions are stateless once compiled, so a single instance is shared by the whole process.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ExpressionCache
+{
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    /**
+     * System property to configure the initial maximum size of the shared cache; 0 disables caching.
+     */
+    public static final String MAX_SIZE_PROPERTY = ExpressionCache.class.getName() + ".maxSize";
+
+    private static final ExpressionCache instance =
+        new ExpressionCache(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+
+    public static ExpressionCache getInstance() {
+        return instance;
+    }
+
+    private static final FlatResolver resolver = new FlatResolver(true);
+
+    /** In access order, so the eldest entry is the least recently used. */
+    private final Map<String,Expression> map = new LinkedHashMap<String,Expression>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(final Map.Entry<String,Expression> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    private volatile int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ExpressionCache(final int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    public ExpressionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Get the compiled expression for the given text, compiling and caching it if needed.
+     *
+     * @param expression    The expression text; must not be null
+     * @return              The compiled expression
+     *
+     * @throws Exception    Failed to compile the expression
+     */
+    public Expression get(final String expression) throws Exception {
+        if (expression == null) {
+            throw new NullArgumentException("expression");
+        }
+
+        Expression expr;
+
+        synchronized (map) {
+            expr = map.get(expression);
+        }
+
+        if (expr != null) {
+            hits.incrementAndGet();
+            return expr;
+        }
+
+        misses.incrementAndGet();
+
+        expr = ExpressionFactory.createExpression(expression);
+        expr.addPreResolver(resolver);
+
+        if (maxSize > 0) {
+            synchronized (map) {
+                Expression prev = map.get(expression);
+                if (prev != null) {
+                    // Another thread compiled it first, use theirs
+                    return prev;
+                }
+
+                map.put(expression, expr);
+            }
+        }
+
+        return expr;
+    }
+
+    /**
+     * Change the maximum size, evicting the least recently used entries if the cache is now too large.
+     *
+     * @param maxSize   The new maximum size; 0 disables caching
+     */
+    public void setMaxSize(final int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Max size must be >= 0: " + maxSize);
+        }
+
+        synchronized (map) {
+            this.maxSize = maxSize;
+
+            Iterator<String> iter = map.keySet().iterator();
+            while (map.size() > maxSize && iter.hasNext()) {
+                iter.next();
+                iter.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public String toString() {
+        return "ExpressionCache{ size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                " }";
+    }
+}
@@ -23,6 +23,9 @@ import org.apache.geronimo.gshell.commandline.parser.CommandLineParserVisitor;
 import org.apache.geronimo.gshell.commandline.parser.SimpleNode;
 import org.apache.geronimo.gshell.commandline.parser.ASTCommandLine;
 import org.apache.geronimo.gshell.commandline.parser.ASTExpression;
+import org.apache.geronimo.gshell.commandline.parser.ASTPipeline;
+import org.apache.geronimo.gshell.commandline.parser.ASTBackground;
+import org.apache.geronimo.gshell.commandline.parser.ASTGroup;
 import org.apache.geronimo.gshell.commandline.parser.ASTQuotedString;
 import org.apache.geronimo.gshell.commandline.parser.ASTOpaqueString;
 import org.apache.geronimo.gshell.commandline.parser.ASTPlainString;
@@ -122,6 +125,18 @@ public class LoggingVisitor
         return log(ASTCommandLine.class, node, data);
     }
 
+    public Object visit(final ASTPipeline node, Object data) {
+        return log(ASTPipeline.class, node, data);
+    }
+
+    public Object visit(final ASTBackground node, Object data) {
+        return log(ASTBackground.class, node, data);
+    }
+
+    public Object visit(final ASTGroup node, Object data) {
+        return log(ASTGroup.class, node, data);
+    }
+
     public Object visit(final ASTExpression node, Object data) {
         return log(ASTExpression.class, node, data);
     }
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded byte buffer connecting the output of one thread to the input of another.
+ *
+ * <p>
+ * The writer blocks while the buffer is full and the reader blocks while it is empty, so a
+ * fast producer can never get more than the buffer size ahead of its consumer.  Closing the
+ * output signals end of stream to the reader; closing the input makes further writes fail,
+ * so the writer finds out nobody is listening anymore.
+ *
+ * <p>
+ * Unlike {@link java.io.PipedInputStream}, neither end is tied to the thread which first used it.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Pipe
+{
+    public static final int DEFAULT_SIZE = 64 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final byte[] buffer;
+
+    /** Index of the next byte to read. */
+    private int head;
+
+    /** Number of bytes in the buffer. */
+    private int count;
+
+    private boolean outputClosed;
+
+    private boolean inputClosed;
+
+    private final InputStream input = new PipeInputStream();
+
+    private final OutputStream output = new PipeOutputStream();
+
+    public Pipe(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be > 0: " + size);
+        }
+
+        this.buffer = new byte[size];
+    }
+
+    public Pipe() {
+        this(DEFAULT_SIZE);
+    }
+
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    public int getSize() {
+        return buffer.length;
+    }
+
+    //
+    // PipeOutputStream
+    //
+
+    private class PipeOutputStream
+        extends OutputStream
+    {
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        public void write(final byte[] bytes, int off, int len) throws IOException {
+            lock.lock();
+
+            try {
+                while (len > 0) {
+                    while (count == buffer.length && !inputClosed && !outputClosed) {
+                        notFull.await();
+                    }
+
+                    if (outputClosed) {
+                        throw new IOException("Pipe output closed");
+                    }
+                    if (inputClosed) {
+                        throw new IOException("Pipe closed by reader");
+                    }
+
+                    // Copy up to the end of the buffer, or the free space; whichever is less
+                    int tail = (head + count) % buffer.length;
+                    int n = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+
+                    System.arraycopy(bytes, off, buffer, tail, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+
+                    notEmpty.signal();
+                }
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public void close() {
+            lock.lock();
+
+            try {
+                outputClosed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //
+    // PipeInputStream
+    //
+
+    private class PipeInputStream
+        extends InputStream
+    {
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            int n = read(b, 0, 1);
+
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read(final byte[] bytes, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            lock.lock();
+
+            try {
+                while (count == 0 && !outputClosed && !inputClosed) {
+                    notEmpty.await();
+                }
+
+                if (inputClosed) {
+                    throw new IOException("Pipe input closed");
+                }
+                if (count == 0) {
+                    return -1;
+                }
+
+                // Copy up to the end of the buffer, or the available bytes; whichever is less
+                int n = Math.min(len, Math.min(count, buffer.length - head));
+
+                System.arraycopy(buffer, head, bytes, off, n);
+                head = (head + n) % buffer.length;
+                count -= n;
+
+                notFull.signal();
+
+                return n;
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public int available() {
+            lock.lock();
+
+            try {
+                return count;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public void close() {
+            lock.lock();
+
+            try {
+                inputClosed = true;
+                count = 0;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+}
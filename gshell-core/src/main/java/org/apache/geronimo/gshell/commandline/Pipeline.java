@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gshell.Job;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.command.ObjectConsumer;
+import org.apache.geronimo.gshell.command.ObjectStream;
+import org.apache.geronimo.gshell.console.IO;
+import org.apache.geronimo.gshell.util.Arguments;
+import org.apache.geronimo.gshell.util.ObjectStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs commands concurrently, with the output of each connected to the input of the next
+ * through a {@link Pipe}.
+ *
+ * <p>
+ * The first command reads the input of the shell and the last writes to the output of the
+ * shell; all commands share the error output of the shell.  The last command runs in the
+ * calling thread, the others on a shared pool of daemon threads.
+ *
+ * <p>
+ * When a command is an {@link ObjectConsumer}, the {@link ObjectStream} returned by the previous
+ * command is handed to it as it is, instead of being written to the pipe as text.  The consumer
+ * starts along with the others, but blocks on its first read of objects until the previous
+ * command has completed; from then on the objects are produced only as the consumer reads
+ * them.  Objects not taken by a consumer are written as text, one per line.  A consumer
+ * interrupted while it waits for the objects fails with a {@link CancellationException}, and
+ * keeps its interrupt status.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Pipeline
+{
+    private static final Log log = LogFactory.getLog(Pipeline.class);
+
+    /**
+     * System property to configure the size of the buffer between commands.
+     */
+    public static final String BUFFER_SIZE_PROPERTY = Pipeline.class.getName() + ".bufferSize";
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable task) {
+            Thread t = new Thread(task, "GShell Pipeline-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final Shell shell;
+
+    private final int bufferSize;
+
+    private final List<Stage> stages = new ArrayList<Stage>();
+
+    public Pipeline(final Shell shell, final int bufferSize) {
+        if (shell == null) {
+            throw new NullArgumentException("shell");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be > 0: " + bufferSize);
+        }
+
+        this.shell = shell;
+        this.bufferSize = bufferSize;
+    }
+
+    public Pipeline(final Shell shell) {
+        this(shell, Integer.getInteger(BUFFER_SIZE_PROPERTY, Pipe.DEFAULT_SIZE).intValue());
+    }
+
+    /**
+     * Append a command to the pipeline.
+     *
+     * @param args  The command name followed by its arguments; must not be null or empty
+     */
+    public void add(final Object[] args) {
+        if (args == null) {
+            throw new NullArgumentException("args");
+        }
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Missing command name");
+        }
+
+        stages.add(new Stage(String.valueOf(args[0]), Arguments.shift(args)));
+    }
+
+    public int size() {
+        return stages.size();
+    }
+
+    /**
+     * Run all commands and wait for them to complete.
+     *
+     * @return  The result of the last command
+     *
+     * @throws Exception    The failure of the last command, or else of the first command which failed
+     */
+    public Object execute() throws Exception {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Pipeline is empty");
+        }
+
+        IO io = shell.getIO();
+
+        // Connect the stages
+        InputStream in = io.inputStream;
+
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            stage.input = in;
+
+            if (i < stages.size() - 1) {
+                Pipe pipe = new Pipe(bufferSize);
+                stage.output = pipe.getOutputStream();
+                in = pipe.getInputStream();
+            }
+            else {
+                stage.output = io.outputStream;
+            }
+
+            stage.io = new IO(stage.input, stage.output, io.errorStream, io.getFlushPolicy());
+
+            if (i > 0 && isConsumer(stage.commandName)) {
+                Handoff handoff = new Handoff();
+                stages.get(i - 1).handoff = handoff;
+                stage.objects = handoff;
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Executing pipeline of " + stages.size() + " commands");
+        }
+
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(stages.size() - 1);
+
+        for (int i = 0; i < stages.size() - 1; i++) {
+            futures.add(executor.submit(Job.inherit(new StageTask(stages.get(i)))));
+        }
+
+        Stage last = stages.get(stages.size() - 1);
+        Object result = null;
+        Throwable failure = null;
+
+        try {
+            result = run(last);
+        }
+        catch (Throwable t) {
+            failure = t;
+        }
+
+        // Wait for the others, so nothing is left writing to the shell once we return
+        for (Future<Object> future : futures) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+            catch (InterruptedException e) {
+                // Stop the others instead of waiting for them
+                for (Future<Object> other : futures) {
+                    other.cancel(true);
+                }
+
+                if (failure == null) {
+                    failure = e;
+                }
+                break;
+            }
+        }
+
+        if (failure instanceof Exception) {
+            throw (Exception)failure;
+        }
+        else if (failure instanceof Error) {
+            throw (Error)failure;
+        }
+
+        return result;
+    }
+
+    private boolean isConsumer(final String commandName) {
+        try {
+            Class<?> type = shell.getCommandManager().getCommandDefinition(commandName).loadClass();
+
+            return ObjectConsumer.class.isAssignableFrom(type);
+        }
+        catch (Exception e) {
+            // Fails again once the command is executed, which reports it
+            return false;
+        }
+    }
+
+    private Object run(final Stage stage) throws Exception {
+        assert stage != null;
+
+        Object result = null;
+
+        try {
+            result = shell.execute(stage.io, stage.objects, stage.commandName, stage.args);
+
+            if (stage.handoff == null) {
+                result = shell.printObjects(stage.io, result);
+            }
+
+            return result;
+        }
+        finally {
+            // Release the next command, even when this one failed
+            if (stage.handoff != null) {
+                stage.handoff.set(result);
+            }
+
+            stage.io.flush();
+
+            // Tell the next command there is no more input, and the previous one that nobody is reading anymore
+            if (stage.output != shell.getIO().outputStream) {
+                close(stage.output);
+            }
+            if (stage.input != shell.getIO().inputStream) {
+                close(stage.input);
+            }
+        }
+    }
+
+    private void close(final InputStream input) {
+        try {
+            input.close();
+        }
+        catch (IOException ignore) {}
+    }
+
+    private void close(final OutputStream output) {
+        try {
+            output.close();
+        }
+        catch (IOException ignore) {}
+    }
+
+    //
+    // Stage
+    //
+
+    private static class Stage
+    {
+        public final String commandName;
+
+        public final Object[] args;
+
+        public InputStream input;
+
+        public OutputStream output;
+
+        public IO io;
+
+        /** Objects of the previous command; when this one is a consumer. */
+        public Iterator<Object> objects;
+
+        /** Objects of this command for the next; when that one is a consumer. */
+        public Handoff handoff;
+
+        public Stage(final String commandName, final Object[] args) {
+            this.commandName = commandName;
+            this.args = args;
+        }
+    }
+
+    //
+    // Handoff
+    //
+
+    /**
+     * Objects of a command, which the next command can start iterating before they exist.
+     */
+    private static class Handoff
+        implements Iterator<Object>
+    {
+        private final CountDownLatch ready = new CountDownLatch(1);
+
+        private Iterator<Object> objects;
+
+        public void set(final Object result) {
+            objects = ObjectStreams.iterator(result);
+            ready.countDown();
+        }
+
+        private Iterator<Object> objects() {
+            try {
+                ready.await();
+            }
+            catch (InterruptedException e) {
+                // Iterators can not throw it, so keep the interrupt for whatever checks next
+                Thread.currentThread().interrupt();
+
+                CancellationException failure = new CancellationException("Interrupted while waiting for objects");
+                failure.initCause(e);
+                throw failure;
+            }
+
+            return objects;
+        }
+
+        public boolean hasNext() {
+            return objects().hasNext();
+        }
+
+        public Object next() {
+            return objects().next();
+        }
+
+        public void remove() {
+            objects().remove();
+        }
+    }
+
+    private class StageTask
+        implements Callable<Object>
+    {
+        private final Stage stage;
+
+        public StageTask(final Stage stage) {
+            this.stage = stage;
+        }
+
+        public Object call() throws Exception {
+            return run(stage);
+        }
+    }
+}
@@ -29,8 +29,6 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.jexl.JexlHelper;
 import org.apache.commons.jexl.JexlContext;
 import org.apache.commons.jexl.Expression;
-import org.apache.commons.jexl.ExpressionFactory;
-import org.apache.commons.jexl.resolver.FlatResolver;
 import org.apache.commons.lang.NullArgumentException;
 
 import org.apache.geronimo.gshell.command.Variables;
@@ -128,15 +126,10 @@ public class VariableExpressionParser
         getVariables().putAll(map);
     }
 
-    private final FlatResolver resolver = new FlatResolver(true);
-
     protected Expression createExpression(final String expression) throws Exception {
         assert expression != null;
 
-        Expression expr = ExpressionFactory.createExpression(expression);
-        expr.addPreResolver(resolver);
-
-        return expr;
+        return ExpressionCache.getInstance().get(expression);
     }
 
     public Object evaluate(final String expression) throws Exception {
@@ -168,77 +161,13 @@ public class VariableExpressionParser
             log.trace("Parsing input: " + input);
         }
 
-        StringBuffer buff = new StringBuffer();
-
-        int current = 0;
-
-        while (current < input.length()) {
-            boolean complex = false;
-
-            int start = input.indexOf("$", current);
-
-            if (start == -1) {
-                break;
-            }
-            else if (start + 1 < input.length()) {
-                if (input.charAt(start + 1) == '{') {
-                    complex = true;
-                }
-            }
-
-            int end;
-            if (complex) {
-                end = input.indexOf("}", start);
-                if (end == -1) {
-                    throw new SyntaxException("Missing '}': " + input);
-                }
-            }
-            else {
-                end = input.indexOf(" ", start);
-                if (end == -1) {
-                    end = input.indexOf("\t", start);
-                    
-                    if (end == -1) {
-                        end = input.length();
-                    }
-                }
-            }
-
-            String expr = input.substring(start + (complex ? 2 : 1), end);
-
-            // System.err.println("b: " + buff);
-            String tmp = input.substring(current, start);
-            // System.err.println("t: " + tmp + "<");
-            buff.append(tmp);
-
-            try {
-                buff.append(evaluate(expr));
-            }
-            catch (Exception e) {
-                throw new SyntaxException("Failed to evaluate: " + expr, e);
-            }
-
-            // System.err.println("s:" + start);
-            // System.err.println("e:" + end);
-            // System.err.println("c:" + current);
-
-            current = end + (complex ? 1 : 0);
-        }
-
-        // System.err.println("c:" + current);
-
-        if (current < input.length()) {
-            // System.err.println("b: " + buff);
-            String tmp = input.substring(current);
-            // System.err.println("t: " + tmp);
-            buff.append(tmp);
-        }
+        String result = VariableExpressionTemplate.compile(input).evaluate(context);
 
         if (trace) {
-            log.trace("Parsed result: " + buff);
+            log.trace("Parsed result: " + result);
         }
 
-        return buff.toString();
+        return result;
     }
 
     public String parse(final String input, final boolean trim) throws SyntaxException {
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import org.apache.commons.jexl.Expression;
+import org.apache.commons.jexl.JexlContext;
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.commandline.VariableExpressionParser.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A string with ${...} and $xxx expressions, compiled once into literal segments and
+ * pre-parsed <a href="http://jakarta.apache.org/commons/jexl/">JEXL</a> expressions.
+ *
+ * <p>
+ * Evaluating the template only looks up the variables its expressions actually reference.
+ *
+ * @version $Rev$ $Date$
+ */
+public class VariableExpressionTemplate
+{
+    private static final Log log = LogFactory.getLog(VariableExpressionTemplate.class);
+
+    private final String input;
+
+    /** Literal {@link String} and {@link Expression} segments, in order. */
+    private final Object[] segments;
+
+    private VariableExpressionTemplate(final String input, final Object[] segments) {
+        assert input != null;
+        assert segments != null;
+
+        this.input = input;
+        this.segments = segments;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * Check if the template contains any expressions.
+     *
+     * @return  True if the template is just a literal string
+     */
+    public boolean isLiteral() {
+        return segments.length == 0 || (segments.length == 1 && segments[0] instanceof String);
+    }
+
+    private String getLiteral() {
+        assert isLiteral();
+
+        return segments.length == 0 ? "" : (String)segments[0];
+    }
+
+    public String toString() {
+        return input;
+    }
+
+    /**
+     * Compile the given input.
+     *
+     * @param input     The input to compile; must not be null
+     * @return          The compiled template
+     *
+     * @throws SyntaxException  The input is not valid
+     */
+    public static VariableExpressionTemplate compile(final String input) throws SyntaxException {
+        if (input == null) {
+            throw new NullArgumentException("input");
+        }
+
+        List<Object> segments = new ArrayList<Object>();
+
+        int current = 0;
+
+        while (current < input.length()) {
+            boolean complex = false;
+
+            int start = input.indexOf("$", current);
+
+            if (start == -1) {
+                break;
+            }
+            else if (start + 1 < input.length()) {
+                if (input.charAt(start + 1) == '{') {
+                    complex = true;
+                }
+            }
+
+            int end;
+            if (complex) {
+                end = input.indexOf("}", start);
+                if (end == -1) {
+                    throw new SyntaxException("Missing '}': " + input);
+                }
+            }
+            else {
+                end = input.indexOf(" ", start);
+                if (end == -1) {
+                    end = input.indexOf("\t", start);
+
+                    if (end == -1) {
+                        end = input.length();
+                    }
+                }
+            }
+
+            String expr = input.substring(start + (complex ? 2 : 1), end);
+
+            if (start > current) {
+                segments.add(input.substring(current, start));
+            }
+
+            try {
+                segments.add(ExpressionCache.getInstance().get(expr));
+            }
+            catch (Exception e) {
+                throw new SyntaxException("Failed to evaluate: " + expr, e);
+            }
+
+            current = end + (complex ? 1 : 0);
+        }
+
+        if (current < input.length()) {
+            segments.add(input.substring(current));
+        }
+
+        return new VariableExpressionTemplate(input, segments.toArray());
+    }
+
+    /**
+     * Evaluate the template with the given context.
+     *
+     * @param context   The context to resolve expressions with; must not be null
+     * @return          The expanded string
+     *
+     * @throws SyntaxException  Failed to evaluate an expression
+     */
+    public String evaluate(final JexlContext context) throws SyntaxException {
+        if (context == null) {
+            throw new NullArgumentException("context");
+        }
+
+        if (isLiteral()) {
+            return getLiteral();
+        }
+
+        boolean trace = log.isTraceEnabled();
+        if (trace) {
+            log.trace("Evaluating template: " + input);
+        }
+
+        StringBuffer buff = new StringBuffer();
+
+        for (Object segment : segments) {
+            if (segment instanceof String) {
+                buff.append(segment);
+            }
+            else {
+                Expression expr = (Expression)segment;
+
+                try {
+                    buff.append(expr.evaluate(context));
+                }
+                catch (Exception e) {
+                    throw new SyntaxException("Failed to evaluate: " + expr.getExpression(), e);
+                }
+            }
+        }
+
+        if (trace) {
+            log.trace("Evaluated result: " + buff);
+        }
+
+        return buff.toString();
+    }
+
+    /**
+     * Evaluate the template against the given variables, without copying them.
+     *
+     * @param vars  The variables to resolve expressions with; must not be null
+     * @return      The expanded string
+     *
+     * @throws SyntaxException  Failed to evaluate an expression
+     */
+    public String evaluate(final Variables vars) throws SyntaxException {
+        if (vars == null) {
+            throw new NullArgumentException("vars");
+        }
+
+        // Avoid creating a context when there is nothing to look up
+        if (isLiteral()) {
+            return getLiteral();
+        }
+
+        return evaluate(new VariablesContext(vars));
+    }
+}
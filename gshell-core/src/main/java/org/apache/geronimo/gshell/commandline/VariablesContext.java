@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import org.apache.commons.jexl.JexlContext;
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.geronimo.gshell.command.Variables;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JEXL context which looks up names directly in {@link Variables}, without copying them.
+ *
+ * <p>
+ * Values assigned by expressions only live as long as the context, and are never written
+ * back to the underlying variables.
+ *
+ * @version $Rev$ $Date$
+ */
+public class VariablesContext
+    implements JexlContext
+{
+    private Map<?,?> vars;
+
+    public VariablesContext(final Variables variables) {
+        if (variables == null) {
+            throw new NullArgumentException("variables");
+        }
+
+        this.vars = new VariablesMap(variables);
+    }
+
+    // JexlContext declares the raw type
+    @SuppressWarnings("rawtypes")
+    public void setVars(final Map vars) {
+        if (vars == null) {
+            throw new NullArgumentException("vars");
+        }
+
+        this.vars = vars;
+    }
+
+    public Map<?,?> getVars() {
+        return vars;
+    }
+
+    //
+    // VariablesMap
+    //
+
+    /**
+     * Live map view of {@link Variables}.
+     */
+    private static class VariablesMap
+        extends AbstractMap<Object,Object>
+    {
+        private final Variables variables;
+
+        /** Assignments made while evaluating, created on first use. */
+        private Map<Object,Object> local;
+
+        public VariablesMap(final Variables variables) {
+            assert variables != null;
+
+            this.variables = variables;
+        }
+
+        public Object get(final Object key) {
+            if (local != null && local.containsKey(key)) {
+                return local.get(key);
+            }
+
+            if (key instanceof String) {
+                return variables.get((String)key);
+            }
+
+            return null;
+        }
+
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+        public Object put(final Object key, final Object value) {
+            Object prev = get(key);
+
+            if (local == null) {
+                local = new HashMap<Object,Object>();
+            }
+            local.put(key, value);
+
+            return prev;
+        }
+
+        public Set<Map.Entry<Object,Object>> entrySet() {
+            // Only needed for bulk access, which expressions do not normally do
+            Map<Object,Object> snapshot = new LinkedHashMap<Object,Object>();
+            Iterator<String> iter = variables.names();
+
+            while (iter.hasNext()) {
+                String name = iter.next();
+                if (!snapshot.containsKey(name)) {
+                    snapshot.put(name, variables.get(name));
+                }
+            }
+
+            if (local != null) {
+                snapshot.putAll(local);
+            }
+
+            return Collections.unmodifiableMap(snapshot).entrySet();
+        }
+    }
+}
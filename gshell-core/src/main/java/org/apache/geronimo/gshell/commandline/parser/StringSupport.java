@@ -29,6 +29,8 @@ public abstract class StringSupport
 {
     protected Token token;
 
+    private volatile Object compiledValue;
+
     public StringSupport(final int id) {
         super(id);
     }
@@ -56,6 +58,19 @@ public abstract class StringSupport
         return t.image;
     }
 
+    /**
+     * Get the compiled form of the value, as attached by whatever interprets the node.
+     *
+     * @return  The compiled value; or null if not compiled yet
+     */
+    public Object getCompiledValue() {
+        return compiledValue;
+    }
+
+    public void setCompiledValue(final Object value) {
+        this.compiledValue = value;
+    }
+
     public String toString() {
         return super.toString() + "( " + getToken() + " )";
     }
@@ -23,6 +23,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.lang.NullArgumentException;
 
+import java.io.IOException;
+
 /**
  * Provides the framework to interactivly get input from a console
  * and "do something" with the line that was read.
@@ -48,6 +50,9 @@ public class InteractiveConsole
 
     private boolean shutdownOnNull = true;
 
+    /** The thread executing a line; null while reading one. */
+    private volatile Thread executing;
+
     public InteractiveConsole(final Console console, final Executor executor, final Prompter prompter) {
         if (console == null) {
             throw new NullArgumentException("console");
@@ -85,9 +90,24 @@ public class InteractiveConsole
         return running;
     }
 
-    //
-    // abort() ?
-    //
+    /**
+     * Interrupt the line being executed, if any; as for Ctrl-C or a telnet BREAK.
+     *
+     * <p>
+     * The default is to interrupt the thread executing the line.
+     *
+     * @return  True if a line was being executed
+     */
+    public boolean interrupt() {
+        Thread thread = executing;
+
+        if (thread != null) {
+            thread.interrupt();
+            return true;
+        }
+
+        return false;
+    }
 
     public void run() {
         log.info("Running...");
@@ -109,11 +129,20 @@ public class InteractiveConsole
         log.info("Stopped");
     }
 
+    private String readLine() throws IOException {
+        String prompt = doGetPrompt();
+
+        // Whatever is still buffered must be displayed before the prompt
+        console.getIO().flush();
+
+        return console.readLine(prompt);
+    }
+
     private void doRun() throws Exception {
         boolean debug = log.isDebugEnabled();
         String line;
 
-        while ((line = console.readLine(doGetPrompt())) != null) {
+        while ((line = readLine()) != null) {
             if (debug) {
                 log.debug("Read line: " + line);
 
@@ -133,7 +162,18 @@ public class InteractiveConsole
                 log.debug("     "  + idx);
             }
 
-            Executor.Result result = doExecute(line);
+            Executor.Result result;
+
+            executing = Thread.currentThread();
+            try {
+                result = doExecute(line);
+            }
+            finally {
+                executing = null;
+
+                // Don't let a late interrupt fail reading the next line
+                Thread.interrupted();
+            }
 
             // Allow executor to request that the loop stop
             if (result == Executor.Result.STOP) {
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandDefinition;
+import org.apache.geronimo.gshell.command.CommandSupport;
+
+import java.util.Properties;
+
+/**
+ * Unit tests for the {@link CommandPool} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandPoolTest
+    extends TestCase
+{
+    private ShellContainer container;
+
+    protected void setUp() throws Exception {
+        container = new ShellContainer();
+        container.registerComponentInstance("injected");
+    }
+
+    protected void tearDown() throws Exception {
+        container = null;
+    }
+
+    private CommandDefinition createDefinition(final boolean reusable) throws Exception {
+        Properties props = new Properties();
+        props.setProperty("name", "mock");
+        props.setProperty("class", MockCommand.class.getName());
+        props.setProperty("category", "test");
+        props.setProperty("reusable", String.valueOf(reusable));
+
+        return new CommandDefinition(props);
+    }
+
+    public void testConstructor() throws Exception {
+        try {
+            new CommandPool(null);
+            fail("Accepted null argument");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        try {
+            new CommandPool(container, -1);
+            fail("Accepted negative max idle");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testInjection() throws Exception {
+        CommandPool pool = new CommandPool(container);
+        CommandDefinition def = createDefinition(true);
+
+        MockCommand cmd = (MockCommand) pool.borrow(def);
+        assertEquals("injected", cmd.value);
+        assertSame(def, cmd.def);
+    }
+
+    public void testReusable() throws Exception {
+        CommandPool pool = new CommandPool(container);
+        CommandDefinition def = createDefinition(true);
+
+        Command cmd1 = pool.borrow(def);
+        Command cmd2 = pool.borrow(def);
+        assertNotSame(cmd1, cmd2);
+
+        pool.release(def, cmd1);
+        assertSame(cmd1, pool.borrow(def));
+
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+    }
+
+    public void testNotReusable() throws Exception {
+        CommandPool pool = new CommandPool(container);
+        CommandDefinition def = createDefinition(false);
+
+        Command cmd1 = pool.borrow(def);
+        pool.release(def, cmd1);
+
+        assertNotSame(cmd1, pool.borrow(def));
+        assertEquals(0, pool.getReusedCount());
+    }
+
+    public void testMaxIdle() throws Exception {
+        CommandPool pool = new CommandPool(container, 1);
+        CommandDefinition def = createDefinition(true);
+
+        Command cmd1 = pool.borrow(def);
+        Command cmd2 = pool.borrow(def);
+        pool.release(def, cmd1);
+        pool.release(def, cmd2);
+
+        assertSame(cmd1, pool.borrow(def));
+        assertNotSame(cmd2, pool.borrow(def));
+    }
+
+    //
+    // MockCommand
+    //
+
+    public static class MockCommand
+        extends CommandSupport
+    {
+        public final String value;
+
+        public final CommandDefinition def;
+
+        public MockCommand(final String value, final CommandDefinition def) {
+            super("mock");
+
+            this.value = value;
+            this.def = def;
+        }
+
+        protected Object doExecute(final Object[] args) throws Exception {
+            return Command.SUCCESS;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandContext;
+import org.apache.geronimo.gshell.command.CommandDefinition;
+import org.apache.geronimo.gshell.console.IO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the {@link JobManager} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class JobManagerTest
+    extends TestCase
+{
+    private JobManager jobManager;
+
+    protected void setUp() throws Exception {
+        jobManager = new JobManager(2);
+    }
+
+    protected void tearDown() throws Exception {
+        jobManager.close();
+        jobManager = null;
+    }
+
+    private Callable<Object> result(final Object result) {
+        return new Callable<Object>() {
+            public Object call() throws Exception {
+                return result;
+            }
+        };
+    }
+
+    public void testConstructor() throws Exception {
+        try {
+            new JobManager(0);
+            fail("Accepted zero threads");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testSubmit() throws Exception {
+        Job job1 = jobManager.submit("one", result("a"));
+        Job job2 = jobManager.submit("two", result("b"));
+
+        assertEquals(1, job1.getId());
+        assertEquals(2, job2.getId());
+        assertSame(job2, jobManager.getCurrentJob());
+        assertSame(job1, jobManager.findJob("%1"));
+        assertSame(job2, jobManager.findJob("2"));
+        assertNull(jobManager.findJob("3"));
+        assertNull(jobManager.findJob("x"));
+
+        assertEquals("a", job1.get());
+        assertEquals(Job.State.DONE, job1.getState());
+
+        // Numbers of removed jobs are reused
+        jobManager.remove(job1);
+        assertEquals(1, jobManager.submit("three", result("c")).getId());
+    }
+
+    public void testCancelAbortsCommands() throws Exception {
+        final MockCommand command = new MockCommand();
+        final CountDownLatch started = new CountDownLatch(1);
+
+        Job job = jobManager.submit("blocked", new Callable<Object>() {
+            public Object call() throws Exception {
+                Job.current().started(command);
+                started.countDown();
+
+                // Never counted down, only interrupted
+                new CountDownLatch(1).await();
+                return null;
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(Job.State.RUNNING, job.getState());
+
+        assertTrue(job.cancel(true));
+        assertTrue(command.aborted);
+        assertEquals(Job.State.CANCELLED, job.getState());
+    }
+
+    public void testCompletingCommandWaitsForAbort() throws Exception {
+        final CountDownLatch aborting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final MockCommand command = new MockCommand() {
+            public void abort() {
+                super.abort();
+                aborting.countDown();
+
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        final Job job = jobManager.submit("completing", new Callable<Object>() {
+            public Object call() throws Exception {
+                Job.current().started(command);
+                started.countDown();
+
+                // The command returns once aborted, while its abort is still in progress
+                while (true) {
+                    try {
+                        aborting.await();
+                        break;
+                    }
+                    catch (InterruptedException ignore) {}
+                }
+
+                Job.current().completed(command);
+                completed.countDown();
+
+                return null;
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        Thread canceller = new Thread("Canceller") {
+            public void run() {
+                job.cancel(true);
+            }
+        };
+        canceller.start();
+
+        try {
+            assertTrue(aborting.await(5, TimeUnit.SECONDS));
+
+            // Not completed, and so not released to other jobs, while cancel may still reach it
+            assertFalse(completed.await(200, TimeUnit.MILLISECONDS));
+        }
+        finally {
+            release.countDown();
+        }
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        canceller.join(5000);
+        assertEquals(Job.State.CANCELLED, job.getState());
+    }
+
+    public void testCompletedCommandNotAborted() throws Exception {
+        final MockCommand done = new MockCommand();
+        final MockCommand running = new MockCommand();
+        final CountDownLatch started = new CountDownLatch(1);
+
+        Job job = jobManager.submit("completed", new Callable<Object>() {
+            public Object call() throws Exception {
+                Job.current().started(done);
+                Job.current().completed(done);
+
+                Job.current().started(running);
+                started.countDown();
+
+                new CountDownLatch(1).await();
+                return null;
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(job.cancel(true));
+        assertTrue(running.aborted);
+        assertFalse(done.aborted);
+    }
+
+    public void testInherit() throws Exception {
+        final Job[] inherited = new Job[1];
+
+        Job job = jobManager.submit("inherit", new Callable<Object>() {
+            public Object call() throws Exception {
+                Callable<Object> task = Job.inherit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        inherited[0] = Job.current();
+                        return null;
+                    }
+                });
+
+                // Run on another thread, as a stage of a pipeline would
+                Thread t = new Thread(new FutureTask<Object>(task));
+                t.start();
+                t.join();
+
+                return null;
+            }
+        });
+
+        job.get();
+        assertSame(job, inherited[0]);
+        assertNull(Job.current());
+    }
+
+    public void testForkLimited() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Callable<Object> blocked = new Callable<Object>() {
+            public Object call() throws Exception {
+                started.countDown();
+                release.await();
+                return Thread.currentThread();
+            }
+        };
+
+        Future<Object> first = jobManager.fork(blocked);
+        Future<Object> second = jobManager.fork(blocked);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Both threads are busy, so the next task runs in this thread, instead of waiting for one
+        Future<Object> third = jobManager.fork(new Callable<Object>() {
+            public Object call() throws Exception {
+                return Thread.currentThread();
+            }
+        });
+        assertTrue(third.isDone());
+        assertSame(Thread.currentThread(), third.get());
+
+        release.countDown();
+        assertNotSame(Thread.currentThread(), first.get(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), second.get(5, TimeUnit.SECONDS));
+
+        // Threads are available again once the tasks completed
+        long end = System.currentTimeMillis() + 5000;
+        Object thread;
+        do {
+            thread = jobManager.fork(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return Thread.currentThread();
+                }
+            }).get(5, TimeUnit.SECONDS);
+        }
+        while (thread == Thread.currentThread() && System.currentTimeMillis() < end);
+
+        assertNotSame(Thread.currentThread(), thread);
+    }
+
+    public void testGroupLimited() throws Exception {
+        Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+
+        Properties props = new Properties();
+        props.setProperty("name", "record");
+        props.setProperty("class", RecordCommand.class.getName());
+        props.setProperty("category", "test");
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+
+        RecordCommand.records.clear();
+
+        // More members than threads, in more groups than threads, some in jobs which hold threads
+        StringBuffer line = new StringBuffer();
+        int count = 0;
+        for (int i = 0; i < 3; i++) {
+            line.append("( ");
+            for (int j = 0; j < shell.getJobManager().getMaxThreads() * 2; j++) {
+                line.append(j > 0 ? " ; " : "").append("record ").append(count++);
+            }
+            line.append(" )").append(i < 2 ? " & " : "");
+        }
+
+        shell.execute(line.toString());
+
+        for (Job job : shell.getJobManager().getJobs()) {
+            job.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(count, RecordCommand.records.size());
+
+        shell.getJobManager().close();
+    }
+
+    public void testBackgroundGroup() throws Exception {
+        Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+
+        Properties props = new Properties();
+        props.setProperty("name", "record");
+        props.setProperty("class", RecordCommand.class.getName());
+        props.setProperty("category", "test");
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+
+        RecordCommand.records.clear();
+
+        shell.execute("( record a ; record b ) & record c");
+
+        Job job = shell.getJobManager().getJob(1);
+        assertEquals("( record a ; record b )", job.getDescription());
+        job.get();
+
+        List<String> records = new ArrayList<String>(RecordCommand.records);
+        Collections.sort(records);
+        assertEquals("[a, b, c]", records.toString());
+
+        shell.getJobManager().close();
+    }
+
+    //
+    // MockCommand
+    //
+
+    public static class MockCommand
+        implements Command
+    {
+        public volatile boolean aborted;
+
+        public String getName() {
+            return "mock";
+        }
+
+        public void init(final CommandContext context) {
+            // ignore
+        }
+
+        public Object execute(final Object... args) throws Exception {
+            return Command.SUCCESS;
+        }
+
+        public void abort() {
+            aborted = true;
+        }
+
+        public void destroy() {
+            // ignore
+        }
+    }
+
+    /**
+     * Records its argument.
+     */
+    public static class RecordCommand
+        extends MockCommand
+    {
+        public static final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+
+        public Object execute(final Object... args) throws Exception {
+            records.add(String.valueOf(args[0]));
+
+            return Command.SUCCESS;
+        }
+    }
+}
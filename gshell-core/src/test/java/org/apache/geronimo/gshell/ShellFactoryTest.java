@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.console.IO;
+
+/**
+ * Unit tests for the {@link ShellFactory} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ShellFactoryTest
+    extends TestCase
+{
+    public void testCreateArgs() throws Exception {
+        ShellFactory factory = new ShellFactory();
+
+        try {
+            factory.create(null);
+            fail("Accepted null value");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testSharedInfrastructure() throws Exception {
+        ShellFactory factory = new ShellFactory();
+
+        Shell shell1 = factory.create(new IO());
+        Shell shell2 = factory.create(new IO());
+
+        assertSame(factory.getCommandManager(), shell1.getCommandManager());
+        assertSame(factory.getCommandManager(), shell2.getCommandManager());
+        assertSame(factory.getCommandLineCache(), shell1.getCommandLineBuilder().getCache());
+        assertSame(factory.getCommandLineCache(), shell2.getCommandLineBuilder().getCache());
+
+        // Session state is never shared
+        assertNotSame(shell1.getVariables(), shell2.getVariables());
+        assertNotSame(shell1.getCommandPool(), shell2.getCommandPool());
+
+        assertEquals(2, factory.getCreatedCount());
+    }
+}
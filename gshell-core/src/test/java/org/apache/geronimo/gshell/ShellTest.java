@@ -21,7 +21,22 @@ package org.apache.geronimo.gshell;
 
 import junit.framework.TestCase;
 import org.apache.geronimo.gshell.console.IO;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandDefinition;
 import org.apache.geronimo.gshell.command.CommandNotFoundException;
+import org.apache.geronimo.gshell.command.ObjectStream;
+import org.apache.geronimo.gshell.command.StandardVariables;
+import org.apache.geronimo.gshell.commandline.ExpressionCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Unit tests for the {@link Shell} class.
@@ -66,4 +81,279 @@ public class ShellTest
             // ignore
         }
     }
+
+    public void testSourceRelativeToWorkingDirectory() throws Exception {
+        File dir = File.createTempFile("shell", ".test");
+        dir.delete();
+        dir.mkdirs();
+
+        File script = new File(dir, "script.gsh");
+        Writer writer = new FileWriter(script);
+        writer.write("set sourced=yes\n");
+        writer.close();
+
+        try {
+            Shell shell = new Shell();
+            shell.getVariables().set(StandardVariables.CWD, dir.getPath());
+
+            shell.execute("source", new Object[] { "script.gsh" });
+
+            assertEquals("yes", shell.getVariables().get("sourced"));
+        }
+        finally {
+            script.delete();
+            dir.delete();
+        }
+    }
+
+    public void testInterrupt() throws Exception {
+        final Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+
+        Properties props = new Properties();
+        props.setProperty("name", "block");
+        props.setProperty("class", BlockCommand.class.getName());
+        props.setProperty("category", "test");
+        props.setProperty("reusable", "false");
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+
+        assertFalse(shell.interrupt());
+
+        BlockCommand.started = new CountDownLatch(1);
+        BlockCommand.executed = 0;
+
+        final Object[] result = new Object[1];
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    result[0] = shell.execute("block; block");
+                }
+                catch (Exception e) {
+                    result[0] = e;
+                }
+            }
+        };
+        t.start();
+
+        assertTrue(BlockCommand.started.await(5, TimeUnit.SECONDS));
+        assertTrue(shell.isBusy());
+        assertTrue(shell.interrupt());
+
+        t.join(5000);
+        assertFalse(t.isAlive());
+
+        assertEquals(Command.FAILURE, result[0]);
+        assertTrue(BlockCommand.aborted);
+
+        // The rest of the command-line is not executed
+        assertEquals(1, BlockCommand.executed);
+        assertFalse(shell.isBusy());
+    }
+
+    public void testTimeout() throws Exception {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), err));
+
+        Properties props = new Properties();
+        props.setProperty("name", "block");
+        props.setProperty("class", BlockCommand.class.getName());
+        props.setProperty("category", "test");
+        props.setProperty("reusable", "false");
+        props.setProperty("timeout", "100ms");
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+
+        BlockCommand.started = new CountDownLatch(1);
+        BlockCommand.executed = 0;
+        BlockCommand.aborted = false;
+
+        assertEquals(Command.TIMEOUT, shell.execute("block", new Object[0]));
+        assertTrue(BlockCommand.aborted);
+        assertTrue(err.toString().startsWith("block: timed out after 100ms"));
+
+        // An explicit timeout wins over the one of the descriptor
+        assertEquals(Command.TIMEOUT, shell.execute(shell.getIO(), 50, "block", new Object[0]));
+
+        CommandTimeouts timeouts = shell.getCommandTimeouts();
+        assertEquals(2, timeouts.getTimedOutCount());
+        assertEquals(2, timeouts.getTimedOutCount("block"));
+        assertEquals(0, timeouts.getTimedOutCount("other"));
+
+        // The interrupt of the timeout does not leak to the caller
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    public void testFailureAfterTimeout() throws Exception {
+        Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+
+        Properties props = new Properties();
+        props.setProperty("name", "fail");
+        props.setProperty("class", FailCommand.class.getName());
+        props.setProperty("category", "test");
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+
+        // Failures caused by the interrupt are taken for the timeout
+        assertEquals(Command.TIMEOUT, shell.execute(shell.getIO(), 50, "fail", new Object[] { "interrupted" }));
+        assertEquals(Command.TIMEOUT, shell.execute(shell.getIO(), 50, "fail", new Object[] { "io" }));
+
+        // Others are not
+        try {
+            shell.execute(shell.getIO(), 50, "fail", new Object[] { "other" });
+            fail("Failure after timeout not thrown");
+        }
+        catch (IllegalStateException expected) {
+            // ignore
+        }
+
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    public void testExpressionCacheSize() throws Exception {
+        ExpressionCache cache = ExpressionCache.getInstance();
+        int size = cache.getMaxSize();
+
+        try {
+            Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+            shell.execute("set " + StandardVariables.EXPRESSION_CACHE_SIZE + "=7");
+            shell.execute("set a=b");
+            assertEquals(7, cache.getMaxSize());
+
+            // Shared by all shells; one which does not set the variable leaves it
+            Shell other = new Shell(new IO(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+            other.execute("set a=b");
+            assertEquals(7, cache.getMaxSize());
+
+            // Nor does the first undo a change of another
+            cache.setMaxSize(9);
+            shell.execute("set a=b");
+            assertEquals(9, cache.getMaxSize());
+        }
+        finally {
+            cache.setMaxSize(size);
+        }
+    }
+
+    public void testObjectsPrinted() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream()));
+
+        Properties props = new Properties();
+        props.setProperty("name", "objects");
+        props.setProperty("class", ObjectsCommand.class.getName());
+        props.setProperty("category", "test");
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+
+        String nl = System.getProperty("line.separator");
+
+        // On its own, as run by the CLI or the daemon
+        assertEquals(Command.SUCCESS, shell.execute("objects", new Object[0]));
+        assertEquals("a" + nl + "b" + nl, out.toString());
+
+        out.reset();
+        assertEquals(Command.SUCCESS, shell.execute(new Object[] { "objects", "c" }));
+        assertEquals("c" + nl, out.toString());
+
+        out.reset();
+        shell.execute("objects d");
+        assertEquals("d" + nl, out.toString());
+
+        // As a stage of a pipeline, the objects are left for the next command
+        out.reset();
+        Object result = shell.execute(shell.getIO(), "objects", new Object[0]);
+        assertTrue(result instanceof ObjectStream);
+        assertEquals("", out.toString());
+
+        // Other results, as arrays, are not taken for objects
+        Object[] array = new Object[] { "e" };
+        assertSame(array, shell.printObjects(shell.getIO(), array));
+        assertEquals("", out.toString());
+
+        // Other results are returned as they are
+        assertEquals(Command.FAILURE, shell.printObjects(shell.getIO(), Command.FAILURE));
+    }
+
+    public void testExpressionArguments() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Shell shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream()));
+
+        Properties props = new Properties();
+        props.setProperty("name", "objects");
+        props.setProperty("class", ObjectsCommand.class.getName());
+        props.setProperty("category", "test");
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+
+        shell.getVariables().set("x", "abcd");
+
+        String nl = System.getProperty("line.separator");
+
+        // Operators inside of unquoted expressions are not pipes, jobs or groups
+        shell.execute("objects ${x.length()} ${x == 'a' || x == 'abcd'} ${x != null && x.length() < 2}");
+        assertEquals("4" + nl + "true" + nl + "false" + nl, out.toString());
+    }
+
+    /**
+     * Returns its arguments as objects, or a and b if there are none.
+     */
+    public static class ObjectsCommand
+        extends JobManagerTest.MockCommand
+    {
+        public Object execute(final Object... args) throws Exception {
+            return new ObjectStream(args.length == 0 ? new Object[] { "a", "b" } : args);
+        }
+    }
+
+    /**
+     * Blocks until interrupted, then fails as its argument tells.
+     */
+    public static class FailCommand
+        extends JobManagerTest.MockCommand
+    {
+        public Object execute(final Object... args) throws Exception {
+            try {
+                new CountDownLatch(1).await();
+            }
+            catch (InterruptedException e) {
+                if ("interrupted".equals(args[0])) {
+                    throw e;
+                }
+                else if ("io".equals(args[0])) {
+                    throw new InterruptedIOException();
+                }
+
+                throw new IllegalStateException("Failed");
+            }
+
+            return Command.SUCCESS;
+        }
+    }
+
+    /**
+     * Blocks until interrupted.
+     */
+    public static class BlockCommand
+        extends JobManagerTest.MockCommand
+    {
+        public static CountDownLatch started;
+
+        public static volatile int executed;
+
+        public static volatile boolean aborted;
+
+        public Object execute(final Object... args) throws Exception {
+            executed++;
+            started.countDown();
+
+            try {
+                new CountDownLatch(1).await();
+            }
+            catch (InterruptedException e) {
+                return Command.FAILURE;
+            }
+
+            return Command.SUCCESS;
+        }
+
+        public void abort() {
+            aborted = true;
+        }
+    }
 }
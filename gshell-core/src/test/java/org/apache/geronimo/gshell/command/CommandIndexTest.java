@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.command;
+
+import junit.framework.TestCase;
+
+import java.net.URL;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Unit tests for the {@link CommandIndex} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandIndexTest
+    extends TestCase
+{
+    public void testDescriptors() throws Exception {
+        Properties index = new Properties();
+        index.setProperty("commands", "a, b");
+        index.setProperty("a.name", "a");
+        index.setProperty("a.class", "A");
+        index.setProperty("b.name", "b");
+        index.setProperty("b.aliases", "bb");
+
+        List<Properties> list = new CommandIndex(new URL("file:/tmp/"), index).getDescriptors();
+        assertEquals(2, list.size());
+
+        Properties a = list.get(0);
+        assertEquals(2, a.size());
+        assertEquals("a", a.getProperty("name"));
+        assertEquals("A", a.getProperty("class"));
+
+        Properties b = list.get(1);
+        assertEquals(2, b.size());
+        assertEquals("bb", b.getProperty("aliases"));
+    }
+
+    public void testMissingCommands() throws Exception {
+        try {
+            new CommandIndex(new URL("file:/tmp/"), new Properties());
+            fail("Accepted index without commands");
+        }
+        catch (CommandDefinition.InvalidDefinitionException expected) {
+            // ignore
+        }
+    }
+
+    public void testRootOf() throws Exception {
+        URL url = new URL("jar:file:/lib/foo.jar!/" + CommandIndex.INDEX_LOCATION);
+        assertEquals("jar:file:/lib/foo.jar!/", CommandIndex.rootOf(url, CommandIndex.INDEX_LOCATION).toExternalForm());
+
+        url = new URL("file:/classes/" + CommandIndex.DESCRIPTOR_LOCATION + "/");
+        assertEquals("file:/classes/", CommandIndex.rootOf(url, CommandIndex.DESCRIPTOR_LOCATION).toExternalForm());
+    }
+}
@@ -21,6 +21,13 @@ package org.apache.geronimo.gshell.command;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
 /**
  * Unit tests for the {@link CommandManager} class.
  *
@@ -29,7 +36,202 @@ import junit.framework.TestCase;
 public class CommandManagerImplTest
     extends TestCase
 {
+    /** Set once {@link WarmedCommand} is initialized. */
+    private static volatile boolean warmed;
+
+    private File dir;
+
+    private ClassLoader savedLoader;
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("commands", "");
+        dir.delete();
+        dir.mkdirs();
+
+        savedLoader = Thread.currentThread().getContextClassLoader();
+    }
+
+    protected void tearDown() throws Exception {
+        Thread.currentThread().setContextClassLoader(savedLoader);
+
+        delete(dir);
+    }
+
+    private void delete(final File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    private void store(final Properties props, final File file) throws Exception {
+        file.getParentFile().mkdirs();
+
+        OutputStream output = new FileOutputStream(file);
+        try {
+            props.store(output, null);
+        }
+        finally {
+            output.close();
+        }
+    }
+
+    private Properties descriptor(final String name, final Class<?> type) {
+        Properties props = new Properties();
+        props.setProperty("name", name);
+        props.setProperty("class", type.getName());
+        props.setProperty("category", "test");
+
+        return props;
+    }
+
+    /**
+     * Create a root of command descriptors, which is not indexed.
+     */
+    private URL createRoot(final String path, final Properties[] descriptors) throws Exception {
+        File root = new File(dir, path);
+
+        for (Properties props : descriptors) {
+            store(props, new File(root, CommandIndex.DESCRIPTOR_LOCATION + "/" + props.getProperty("name") + ".properties"));
+        }
+
+        return root.toURI().toURL();
+    }
+
     public void testConstructor() throws Exception {
         new CommandManagerImpl();
     }
+
+    public void testWarmCommands() throws Exception {
+        URL root = createRoot("warm", new Properties[] { descriptor("warmed", WarmedCommand.class) });
+        ClassLoader cl = new URLClassLoader(new URL[] { root }, getClass().getClassLoader());
+        Thread.currentThread().setContextClassLoader(cl);
+
+        CommandManagerImpl manager = new CommandManagerImpl(false);
+        CommandDefinition def = manager.getCommandDefinition("warmed");
+
+        assertNull(def.getLoadedClass(cl));
+        assertFalse(warmed);
+
+        manager.warmCommands(true);
+
+        // Loaded and initialized, without anything asking for the class
+        assertSame(WarmedCommand.class, def.getLoadedClass(cl));
+        assertTrue(warmed);
+
+        for (CommandDefinition other : manager.commandDefinitions()) {
+            assertNotNull(other.getName(), other.getLoadedClass(cl));
+        }
+    }
+
+    /**
+     * Create a root with a command index, and the descriptors it was generated from.
+     */
+    private URL createIndexedRoot(final String path, final Properties[] descriptors) throws Exception {
+        URL url = createRoot(path, descriptors);
+
+        Properties index = new Properties();
+        StringBuffer ids = new StringBuffer();
+
+        for (Properties props : descriptors) {
+            String id = props.getProperty("name");
+            if (ids.length() != 0) {
+                ids.append(",");
+            }
+            ids.append(id);
+
+            for (Object key : props.keySet()) {
+                index.setProperty(id + "." + key, props.getProperty((String)key));
+            }
+        }
+
+        index.setProperty(CommandIndex.COMMANDS_PROPERTY, ids.toString());
+        store(index, new File(new File(dir, path), CommandIndex.INDEX_LOCATION));
+
+        return url;
+    }
+
+    public void testIndexedAndScannedRoots() throws Exception {
+        Properties indexed = descriptor("indexed", WarmedCommand.class);
+
+        URL[] roots = {
+            createIndexedRoot("indexed", new Properties[] { indexed }),
+            createRoot("scanned", new Properties[] { descriptor("scanned", WarmedCommand.class) }),
+        };
+
+        // Only the index of an indexed root is read, so the descriptor is not seen
+        Properties stale = descriptor("indexed", CommandManagerImplTest.class);
+        store(stale, new File(new File(dir, "indexed"), CommandIndex.DESCRIPTOR_LOCATION + "/indexed.properties"));
+
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(roots, null));
+
+        for (boolean lazy : new boolean[] { false, true }) {
+            CommandManagerImpl manager = new CommandManagerImpl(lazy);
+
+            assertEquals(WarmedCommand.class.getName(), manager.getCommandDefinition("indexed").getClassName());
+            assertEquals(WarmedCommand.class.getName(), manager.getCommandDefinition("scanned").getClassName());
+
+            assertEquals(2, manager.commandDefinitions().size());
+            assertEquals(2, manager.commandNames().size());
+            assertTrue(manager.commandNames().contains("indexed"));
+            assertTrue(manager.commandNames().contains("scanned"));
+        }
+    }
+
+    public void testScannedRootsOnly() throws Exception {
+        URL[] roots = {
+            createRoot("a", new Properties[] { descriptor("a", WarmedCommand.class) }),
+            createRoot("b", new Properties[] { descriptor("b", WarmedCommand.class) }),
+        };
+
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(roots, null));
+
+        CommandManagerImpl manager = new CommandManagerImpl(false);
+
+        assertEquals(2, manager.commandDefinitions().size());
+        assertEquals("a", manager.getCommandDefinition("a").getName());
+        assertEquals("b", manager.getCommandDefinition("b").getName());
+    }
+
+    public void testLazy() throws Exception {
+        CommandManagerImpl manager = new CommandManagerImpl(true);
+        assertTrue(manager.isLazy());
+
+        CommandDefinition def = manager.getCommandDefinition("set");
+        assertEquals("set", def.getName());
+        assertSame(def, manager.getCommandDefinition("set"));
+
+        // Aliases resolve too
+        assertEquals("exit", manager.getCommandDefinition("quit").getName());
+
+        try {
+            manager.getCommandDefinition("no-such-command");
+            fail("Found unknown command");
+        }
+        catch (CommandNotFoundException expected) {
+            // ignore
+        }
+
+        assertEquals(new CommandManagerImpl(false).commandNames(), manager.commandNames());
+    }
+
+    public static class WarmedCommand
+        extends CommandSupport
+    {
+        static {
+            warmed = true;
+        }
+
+        public WarmedCommand() {
+            super("warmed");
+        }
+
+        protected Object doExecute(final Object[] args) throws Exception {
+            return SUCCESS;
+        }
+    }
 }
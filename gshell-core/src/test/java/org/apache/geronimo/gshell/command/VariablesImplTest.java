@@ -266,4 +266,131 @@ public class VariablesImplTest
             // ignore
         }
     }
+
+    public void testNamesSnapshot() throws Exception {
+        VariablesImpl vars = new VariablesImpl();
+        vars.set("a", "b");
+
+        Iterator<String> iter = vars.names();
+
+        // Changes after the iterator was created are not seen, and do not break it
+        vars.set("c", "d");
+        vars.unset("a");
+
+        assertTrue(iter.hasNext());
+        assertEquals("a", iter.next());
+        assertFalse(iter.hasNext());
+    }
+
+    public void testMapCopied() throws Exception {
+        Map<String,Object> map = new HashMap<String,Object>();
+        map.put("a", "b");
+
+        VariablesImpl vars = new VariablesImpl(map);
+        map.put("a", "c");
+
+        assertEquals("b", vars.get("a"));
+    }
+
+    public void testConcurrentWriters() throws Exception {
+        final VariablesImpl vars = new VariablesImpl();
+        final int count = 200;
+
+        Thread[] threads = new Thread[4];
+        for (int i=0; i<threads.length; i++) {
+            final String prefix = "t" + i + ".";
+
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j=0; j<count; j++) {
+                        vars.set(prefix + j, j);
+
+                        // Iterate while others are writing
+                        Iterator<String> iter = vars.names();
+                        while (iter.hasNext()) {
+                            iter.next();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int size = 0;
+        Iterator<String> iter = vars.names();
+        while (iter.hasNext()) {
+            iter.next();
+            size++;
+        }
+
+        // No update was lost
+        assertEquals(threads.length * count, size);
+    }
+
+    public void testDeepChainSeesParentChanges() throws Exception {
+        VariablesImpl root = new VariablesImpl();
+        root.set("a", "1");
+
+        Variables vars = root;
+        for (int i=0; i<50; i++) {
+            vars = new VariablesImpl(vars);
+        }
+
+        assertEquals("1", vars.get("a"));
+        assertTrue(vars.isMutable("a"));
+
+        // Changes to any scope in the chain must be seen by scopes below it
+        root.set("a", "2");
+        assertEquals("2", vars.get("a"));
+
+        root.set("b", "3", false);
+        assertEquals("3", vars.get("b"));
+        assertFalse(vars.isMutable("b"));
+
+        root.unset("a");
+        assertNull(vars.get("a"));
+    }
+
+    public void testChildChangeKeepsParentIndex() throws Exception {
+        VariablesImpl root = new VariablesImpl();
+        root.set("a", "1");
+
+        VariablesImpl child = new VariablesImpl(root);
+        VariablesImpl sibling = new VariablesImpl(root);
+
+        Object rootIndex = root.index();
+        Object siblingIndex = sibling.index();
+        Object childIndex = child.index();
+
+        // Only the scope which changed is rebuilt
+        child.set("b", "2");
+        assertSame(rootIndex, root.index());
+        assertSame(siblingIndex, sibling.index());
+        assertNotSame(childIndex, child.index());
+        assertEquals("2", child.get("b"));
+        assertNull(sibling.get("b"));
+
+        // A parent change reaches all of its children
+        childIndex = child.index();
+        root.set("a", "3");
+        assertNotSame(rootIndex, root.index());
+        assertNotSame(siblingIndex, sibling.index());
+        assertNotSame(childIndex, child.index());
+        assertEquals("3", child.get("a"));
+        assertEquals("3", sibling.get("a"));
+    }
+
+    public void testNullValueDoesNotHideParent() throws Exception {
+        Variables parent = new VariablesImpl();
+        parent.set("a", "b");
+
+        VariablesImpl vars = new VariablesImpl(parent);
+        vars.set("a", null);
+
+        assertEquals("b", vars.get("a"));
+    }
 }
@@ -53,4 +53,38 @@ public class CommandLineBuilderTest
         assertEquals(1, shell.args.length);
         assertEquals("hi", shell.args[0]);
     }
+
+    public void testCached() throws Exception {
+        MockShell shell = new MockShell();
+        CommandLineBuilder builder = new CommandLineBuilder(shell);
+        CommandLineCache cache = builder.getCache();
+
+        builder.create("echo hi").execute();
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+
+        builder.create("echo hi").execute();
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+
+        assertEquals("echo", shell.commandName);
+        assertEquals(1, shell.args.length);
+        assertEquals("hi", shell.args[0]);
+    }
+
+    public void testCachedExpandsVariables() throws Exception {
+        MockShell shell = new MockShell();
+        CommandLineBuilder builder = new CommandLineBuilder(shell);
+
+        shell.getVariables().set("a", "1");
+        builder.create("echo $a").execute();
+        assertEquals("1", shell.args[0]);
+
+        // Same line, parsed tree comes from the cache but expansion sees the new value
+        shell.getVariables().set("a", "2");
+        builder.create("echo $a").execute();
+        assertEquals("2", shell.args[0]);
+        assertEquals(1, builder.getCache().getHitCount());
+    }
 }
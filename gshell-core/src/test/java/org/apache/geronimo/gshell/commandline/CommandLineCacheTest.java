@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.commandline.parser.ASTCommandLine;
+
+/**
+ * Unit tests for the {@link CommandLineCache} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CommandLineCacheTest
+    extends TestCase
+{
+    public void testConstructor() throws Exception {
+        try {
+            new CommandLineCache(-1);
+            fail("Accepted negative size");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        // Happy day
+        new CommandLineCache();
+        new CommandLineCache(0);
+    }
+
+    public void testHitAndMiss() throws Exception {
+        CommandLineCache cache = new CommandLineCache(2);
+        ASTCommandLine root = new ASTCommandLine(0);
+
+        assertNull(cache.get("a"));
+        cache.put("a", root);
+        assertSame(root, cache.get("a"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        CommandLineCache cache = new CommandLineCache(2);
+
+        cache.put("a", new ASTCommandLine(0));
+        cache.put("b", new ASTCommandLine(0));
+
+        // Touch 'a' so that 'b' becomes the eldest
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", new ASTCommandLine(0));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    public void testDisabled() throws Exception {
+        CommandLineCache cache = new CommandLineCache(0);
+
+        cache.put("a", new ASTCommandLine(0));
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a"));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import junit.framework.TestCase;
+import org.apache.commons.jexl.Expression;
+
+/**
+ * Unit tests for the {@link ExpressionCache} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ExpressionCacheTest
+    extends TestCase
+{
+    public void testConstructor() throws Exception {
+        try {
+            new ExpressionCache(-1);
+            fail("Accepted negative size");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        // Happy day
+        new ExpressionCache();
+        new ExpressionCache(0);
+    }
+
+    public void testHitAndMiss() throws Exception {
+        ExpressionCache cache = new ExpressionCache(2);
+
+        Expression expr = cache.get("a");
+        assertNotNull(expr);
+        assertSame(expr, cache.get("a"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    public void testEvictsOldest() throws Exception {
+        ExpressionCache cache = new ExpressionCache(2);
+
+        Expression a = cache.get("a");
+        cache.get("b");
+        cache.get("c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotSame(a, cache.get("a"));
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        ExpressionCache cache = new ExpressionCache(2);
+
+        Expression a = cache.get("a");
+        Expression b = cache.get("b");
+        assertSame(a, cache.get("a"));
+
+        cache.get("c");
+
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(a, cache.get("a"));
+        assertNotSame(b, cache.get("b"));
+    }
+
+    public void testShrinkEvictsLeastRecentlyUsed() throws Exception {
+        ExpressionCache cache = new ExpressionCache(3);
+
+        Expression a = cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        cache.get("a");
+
+        cache.setMaxSize(1);
+        assertEquals(1, cache.size());
+        assertSame(a, cache.get("a"));
+    }
+
+    public void testShrink() throws Exception {
+        ExpressionCache cache = new ExpressionCache(3);
+
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+
+        cache.setMaxSize(1);
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    public void testDisabled() throws Exception {
+        ExpressionCache cache = new ExpressionCache(0);
+
+        Expression expr = cache.get("a");
+        assertNotSame(expr, cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testSyntaxError() throws Exception {
+        ExpressionCache cache = new ExpressionCache(2);
+
+        try {
+            cache.get("a +");
+            fail("Should have thrown an exception");
+        }
+        catch (Exception expected) {
+            // ignore
+        }
+
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Unit tests for the {@link Pipe} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PipeTest
+    extends TestCase
+{
+    public void testConstructor() throws Exception {
+        try {
+            new Pipe(0);
+            fail("Accepted zero size");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        assertEquals(Pipe.DEFAULT_SIZE, new Pipe().getSize());
+    }
+
+    public void testReadWrite() throws Exception {
+        Pipe pipe = new Pipe(8);
+
+        OutputStream out = pipe.getOutputStream();
+        InputStream in = pipe.getInputStream();
+
+        out.write(new byte[] { 1, 2, 3, 4, 5 });
+        assertEquals(5, in.available());
+
+        byte[] buff = new byte[3];
+        assertEquals(3, in.read(buff));
+        assertEquals(1, buff[0]);
+        assertEquals(3, buff[2]);
+
+        // Wraps around the end of the buffer
+        out.write(new byte[] { 6, 7, 8, 9, 10 });
+        assertEquals(7, in.available());
+
+        for (int i = 4; i <= 10; i++) {
+            assertEquals(i, in.read());
+        }
+
+        out.close();
+        assertEquals(-1, in.read());
+    }
+
+    public void testWriterBlocksWhenFull() throws Exception {
+        final Pipe pipe = new Pipe(4);
+        final int total = 1000;
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    OutputStream out = pipe.getOutputStream();
+                    for (int i = 0; i < total; i++) {
+                        out.write(i);
+                    }
+                    out.close();
+                }
+                catch (IOException e) {
+                    fail(e.toString());
+                }
+            }
+        };
+        writer.start();
+
+        InputStream in = pipe.getInputStream();
+        int count = 0;
+
+        while (in.read() != -1) {
+            // Never more buffered than the size of the pipe
+            assertTrue(in.available() <= 4);
+            count++;
+        }
+
+        writer.join();
+        assertEquals(total, count);
+    }
+
+    public void testReaderClose() throws Exception {
+        final Pipe pipe = new Pipe(4);
+        final IOException[] failure = new IOException[1];
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    OutputStream out = pipe.getOutputStream();
+                    while (true) {
+                        out.write(new byte[16]);
+                    }
+                }
+                catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        writer.start();
+
+        // Once the reader is gone the blocked writer must fail
+        assertTrue(pipe.getInputStream().read() != -1);
+        pipe.getInputStream().close();
+
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        assertNotNull(failure[0]);
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.command.CommandDefinition;
+import org.apache.geronimo.gshell.command.CommandContext;
+import org.apache.geronimo.gshell.command.ObjectConsumer;
+import org.apache.geronimo.gshell.command.ObjectConsumerContext;
+import org.apache.geronimo.gshell.command.ObjectStream;
+import org.apache.geronimo.gshell.console.IO;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for the {@link Pipeline} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PipelineTest
+    extends TestCase
+{
+    private ByteArrayOutputStream output;
+
+    private Shell shell;
+
+    protected void setUp() throws Exception {
+        output = new ByteArrayOutputStream();
+        shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), output, new ByteArrayOutputStream()));
+
+        register("range", RangeCommand.class);
+        register("sum", SumCommand.class);
+        register("lines", LinesCommand.class);
+        register("array", ArrayCommand.class);
+        register("blocked", BlockedCommand.class);
+        register("take", TakeCommand.class);
+
+        RangeCommand.produced.set(0);
+    }
+
+    protected void tearDown() throws Exception {
+        shell = null;
+        output = null;
+    }
+
+    private void register(final String name, final Class<?> type) throws Exception {
+        Properties props = new Properties();
+        props.setProperty("name", name);
+        props.setProperty("class", type.getName());
+        props.setProperty("category", "test");
+
+        shell.getCommandManager().addCommandDefinition(new CommandDefinition(props));
+    }
+
+    private Object execute(final String[]... commands) throws Exception {
+        Pipeline pipeline = new Pipeline(shell);
+
+        for (String[] command : commands) {
+            pipeline.add(command);
+        }
+
+        return pipeline.execute();
+    }
+
+    private String lines(final String... values) {
+        StringBuffer buff = new StringBuffer();
+
+        for (String value : values) {
+            buff.append(value).append(System.getProperty("line.separator"));
+        }
+
+        return buff.toString();
+    }
+
+    public void testObjectsToConsumer() throws Exception {
+        Object result = execute(new String[] { "range", "100" }, new String[] { "sum" });
+
+        assertEquals(Command.SUCCESS, result);
+        assertEquals(lines("5050"), output.toString());
+    }
+
+    public void testConsumerReadsLazily() throws Exception {
+        execute(new String[] { "range", "1000000" }, new String[] { "sum", "3" });
+
+        assertEquals(lines("6"), output.toString());
+        assertEquals(3, RangeCommand.produced.get());
+    }
+
+    public void testObjectsToText() throws Exception {
+        Object result = execute(new String[] { "range", "3" }, new String[] { "lines" });
+
+        assertEquals(Command.SUCCESS, result);
+        assertEquals(lines("3 lines"), output.toString());
+    }
+
+    public void testObjectsOfLastCommand() throws Exception {
+        Object result = execute(new String[] { "lines" }, new String[] { "range", "2" });
+
+        assertEquals(Command.SUCCESS, result);
+        assertEquals(lines("1", "2"), output.toString());
+    }
+
+    public void testArrayNotObjects() throws Exception {
+        // Only streams are objects; other results are returned as they are
+        Object result = execute(new String[] { "array" }, new String[] { "sum" });
+        assertEquals(Command.SUCCESS, result);
+        assertEquals(lines("0"), output.toString());
+
+        output.reset();
+        result = execute(new String[] { "lines" }, new String[] { "array" });
+        assertTrue(result instanceof Object[]);
+        assertEquals("", output.toString());
+    }
+
+    public void testConsumerInterrupted() throws Exception {
+        BlockedCommand.release = new CountDownLatch(1);
+        TakeCommand.started = new CountDownLatch(1);
+        TakeCommand.interrupted = false;
+
+        final Object[] failure = new Object[1];
+
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    execute(new String[] { "blocked" }, new String[] { "take" });
+                }
+                catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        t.start();
+
+        try {
+            assertTrue(TakeCommand.started.await(5, TimeUnit.SECONDS));
+            t.interrupt();
+
+            t.join(5000);
+            assertFalse(t.isAlive());
+        }
+        finally {
+            BlockedCommand.release.countDown();
+        }
+
+        // The consumer stops, and keeps the interrupt
+        assertTrue(String.valueOf(failure[0]), failure[0] instanceof CancellationException);
+        assertTrue(TakeCommand.interrupted);
+    }
+
+    //
+    // MockCommand
+    //
+
+    /**
+     * Keeps the context, with none of the option handling and messages of {@link org.apache.geronimo.gshell.command.CommandSupport}.
+     */
+    public abstract static class MockCommand
+        implements Command
+    {
+        private final String name;
+
+        protected CommandContext context;
+
+        protected MockCommand(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void init(final CommandContext context) {
+            this.context = context;
+        }
+
+        public void abort() {
+            // ignore
+        }
+
+        public void destroy() {
+            context = null;
+        }
+    }
+
+    //
+    // RangeCommand
+    //
+
+    /**
+     * Produces the numbers from 1 to the given number, as they are read.
+     */
+    public static class RangeCommand
+        extends MockCommand
+    {
+        public static final AtomicInteger produced = new AtomicInteger();
+
+        public RangeCommand() {
+            super("range");
+        }
+
+        public Object execute(final Object... args) throws Exception {
+            final int max = Integer.parseInt(String.valueOf(args[0]));
+
+            return new ObjectStream(new Iterator<Object>() {
+                private int next = 1;
+
+                public boolean hasNext() {
+                    return next <= max;
+                }
+
+                public Object next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    produced.incrementAndGet();
+                    return next++;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        }
+    }
+
+    //
+    // SumCommand
+    //
+
+    /**
+     * Prints the sum of the numbers it takes; all of them, or only the given number of them.
+     */
+    public static class SumCommand
+        extends MockCommand
+        implements ObjectConsumer
+    {
+        public SumCommand() {
+            super("sum");
+        }
+
+        public Object execute(final Object... args) throws Exception {
+            int limit = args.length == 0 ? Integer.MAX_VALUE : Integer.parseInt(String.valueOf(args[0]));
+            Iterator<Object> input = ((ObjectConsumerContext)context).getInput();
+            long sum = 0;
+
+            for (int i = 0; i < limit && input.hasNext(); i++) {
+                sum += ((Number)input.next()).longValue();
+            }
+
+            context.getIO().out.println(sum);
+
+            return Command.SUCCESS;
+        }
+    }
+
+    //
+    // LinesCommand
+    //
+
+    /**
+     * Counts the lines of its text input.
+     */
+    public static class LinesCommand
+        extends MockCommand
+    {
+        public LinesCommand() {
+            super("lines");
+        }
+
+        public Object execute(final Object... args) throws Exception {
+            // Not a consumer, so never given objects
+            assertNull(((ObjectConsumerContext)context).getInput());
+
+            BufferedReader reader = new BufferedReader(context.getIO().in);
+            int count = 0;
+
+            while (reader.readLine() != null) {
+                count++;
+            }
+
+            context.getIO().out.println(count + " lines");
+
+            return Command.SUCCESS;
+        }
+    }
+
+    //
+    // ArrayCommand
+    //
+
+    /**
+     * Returns an array, which is not a stream of objects.
+     */
+    public static class ArrayCommand
+        extends MockCommand
+    {
+        public ArrayCommand() {
+            super("array");
+        }
+
+        public Object execute(final Object... args) throws Exception {
+            return new Object[] { 1, 2 };
+        }
+    }
+
+    //
+    // BlockedCommand
+    //
+
+    /**
+     * Blocks until released, and produces nothing.
+     */
+    public static class BlockedCommand
+        extends MockCommand
+    {
+        public static CountDownLatch release;
+
+        public BlockedCommand() {
+            super("blocked");
+        }
+
+        public Object execute(final Object... args) throws Exception {
+            release.await();
+
+            return Command.SUCCESS;
+        }
+    }
+
+    //
+    // TakeCommand
+    //
+
+    /**
+     * Takes one object, and records if it was left interrupted when that failed.
+     */
+    public static class TakeCommand
+        extends MockCommand
+        implements ObjectConsumer
+    {
+        public static CountDownLatch started;
+
+        public static volatile boolean interrupted;
+
+        public TakeCommand() {
+            super("take");
+        }
+
+        public Object execute(final Object... args) throws Exception {
+            started.countDown();
+
+            try {
+                ((ObjectConsumerContext)context).getInput().hasNext();
+            }
+            catch (CancellationException e) {
+                interrupted = Thread.currentThread().isInterrupted();
+                throw e;
+            }
+
+            return Command.SUCCESS;
+        }
+    }
+}
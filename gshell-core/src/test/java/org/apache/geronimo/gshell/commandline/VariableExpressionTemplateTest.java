@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.commandline;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.command.Variables;
+import org.apache.geronimo.gshell.command.VariablesImpl;
+
+/**
+ * Unit test for the {@link VariableExpressionTemplate} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class VariableExpressionTemplateTest
+    extends TestCase
+{
+    protected Variables vars;
+
+    protected void setUp() throws Exception {
+        vars = new VariablesImpl();
+    }
+
+    protected void tearDown() throws Exception {
+        vars = null;
+    }
+
+    public void testLiteral() throws Exception {
+        VariableExpressionTemplate template = VariableExpressionTemplate.compile("no expressions");
+        assertTrue(template.isLiteral());
+        assertEquals("no expressions", template.evaluate(vars));
+    }
+
+    public void testEmpty() throws Exception {
+        VariableExpressionTemplate template = VariableExpressionTemplate.compile("");
+        assertTrue(template.isLiteral());
+        assertEquals("", template.evaluate(vars));
+    }
+
+    public void testSimple() throws Exception {
+        vars.set("a", "1");
+
+        VariableExpressionTemplate template = VariableExpressionTemplate.compile("BEFORE$a AFTER");
+        assertFalse(template.isLiteral());
+        assertEquals("BEFORE1 AFTER", template.evaluate(vars));
+    }
+
+    public void testComplexFlatVariable() throws Exception {
+        vars.set("my.var", "this is my variable");
+        vars.set("my", "not used");
+
+        VariableExpressionTemplate template = VariableExpressionTemplate.compile("<${my.var}>");
+        assertEquals("<this is my variable>", template.evaluate(vars));
+    }
+
+    public void testReevaluateSeesChanges() throws Exception {
+        VariableExpressionTemplate template = VariableExpressionTemplate.compile("${a}-${b}");
+
+        vars.set("a", "1");
+        vars.set("b", "2");
+        assertEquals("1-2", template.evaluate(vars));
+
+        vars.set("a", "3");
+        assertEquals("3-2", template.evaluate(vars));
+    }
+
+    public void testParentLookup() throws Exception {
+        vars.set("a", "parent");
+        vars.set("b", "parent");
+
+        Variables child = new VariablesImpl(vars);
+        child.set("a", "child");
+
+        VariableExpressionTemplate template = VariableExpressionTemplate.compile("${a} ${b}");
+        assertEquals("child parent", template.evaluate(child));
+    }
+
+    public void testSyntaxError() throws Exception {
+        try {
+            VariableExpressionTemplate.compile("${java.home");
+            fail("Should have thrown an exception");
+        }
+        catch (VariableExpressionParser.SyntaxException expected) {
+            // ignore
+        }
+    }
+}
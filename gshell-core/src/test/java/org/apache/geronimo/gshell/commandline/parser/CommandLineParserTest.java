@@ -301,4 +301,205 @@ public class CommandLineParserTest
         // TODO: Verify 1 expression
         //
     }
+    //
+    // Pipelines
+    //
+
+    public void testPipeline1() throws Exception {
+        String input = "a b | c | d e f";
+
+        ASTCommandLine cl = parse(input);
+
+        // One pipeline of 3 expressions
+        assertEquals(1, cl.jjtGetNumChildren());
+
+        Node child = cl.jjtGetChild(0);
+        assertEquals(ASTPipeline.class, child.getClass());
+        assertEquals(3, child.jjtGetNumChildren());
+
+        for (int i=0; i<3; i++ ) {
+            assertEquals(ASTExpression.class, child.jjtGetChild(i).getClass());
+        }
+
+        assertEquals(2, child.jjtGetChild(0).jjtGetNumChildren());
+        assertEquals(1, child.jjtGetChild(1).jjtGetNumChildren());
+        assertEquals(3, child.jjtGetChild(2).jjtGetNumChildren());
+    }
+
+    public void testPipeline2() throws Exception {
+        String input = "a|b; c";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(2, cl.jjtGetNumChildren());
+        assertEquals(ASTPipeline.class, cl.jjtGetChild(0).getClass());
+        assertEquals(ASTExpression.class, cl.jjtGetChild(1).getClass());
+    }
+
+    public void testNotPipeline1() throws Exception {
+        String input = "a \\| b '|' \"|\"";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(1, cl.jjtGetNumChildren());
+
+        Node child = cl.jjtGetChild(0);
+        assertEquals(ASTExpression.class, child.getClass());
+        assertEquals(5, child.jjtGetNumChildren());
+    }
+
+    public void testMissingPipeTarget() throws Exception {
+        try {
+            parse("a |");
+            fail("Accepted pipe without a command");
+        }
+        catch (ParseException expected) {
+            // ignore
+        }
+    }
+
+    //
+    // Background jobs and groups
+    //
+
+    public void testBackground1() throws Exception {
+        String input = "a & b c & d";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(3, cl.jjtGetNumChildren());
+        assertEquals(ASTBackground.class, cl.jjtGetChild(0).getClass());
+        assertEquals(ASTBackground.class, cl.jjtGetChild(1).getClass());
+        assertEquals(ASTExpression.class, cl.jjtGetChild(2).getClass());
+
+        assertEquals(ASTExpression.class, cl.jjtGetChild(1).jjtGetChild(0).getClass());
+        assertEquals(2, cl.jjtGetChild(1).jjtGetChild(0).jjtGetNumChildren());
+    }
+
+    public void testBackground2() throws Exception {
+        String input = "a | b &; c&";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(2, cl.jjtGetNumChildren());
+
+        Node child = cl.jjtGetChild(0);
+        assertEquals(ASTBackground.class, child.getClass());
+        assertEquals(ASTPipeline.class, child.jjtGetChild(0).getClass());
+
+        assertEquals(ASTBackground.class, cl.jjtGetChild(1).getClass());
+    }
+
+    public void testMissingBackgroundJob() throws Exception {
+        try {
+            parse("a & & b");
+            fail("Accepted & without a command");
+        }
+        catch (ParseException expected) {
+            // ignore
+        }
+    }
+
+    public void testGroup1() throws Exception {
+        String input = "(a; b | c;) & d";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(2, cl.jjtGetNumChildren());
+
+        Node child = cl.jjtGetChild(0);
+        assertEquals(ASTBackground.class, child.getClass());
+
+        Node group = child.jjtGetChild(0);
+        assertEquals(ASTGroup.class, group.getClass());
+        assertEquals(2, group.jjtGetNumChildren());
+        assertEquals(ASTExpression.class, group.jjtGetChild(0).getClass());
+        assertEquals(ASTPipeline.class, group.jjtGetChild(1).getClass());
+    }
+
+    public void testNotGroup1() throws Exception {
+        String input = "a \\( b \\& '(' \"&)\"";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(1, cl.jjtGetNumChildren());
+
+        Node child = cl.jjtGetChild(0);
+        assertEquals(ASTExpression.class, child.getClass());
+        assertEquals(6, child.jjtGetNumChildren());
+    }
+
+    public void testUnclosedGroup() throws Exception {
+        try {
+            parse("( a ; b");
+            fail("Accepted group without )");
+        }
+        catch (ParseException expected) {
+            // ignore
+        }
+    }
+
+    //
+    // Expressions
+    //
+
+    private void assertPlainStrings(final String input, final String... values) throws Exception {
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(1, cl.jjtGetNumChildren());
+
+        Node child = cl.jjtGetChild(0);
+        assertEquals(ASTExpression.class, child.getClass());
+        assertEquals(values.length, child.jjtGetNumChildren());
+
+        for (int i=0; i<values.length; i++) {
+            Node node = child.jjtGetChild(i);
+            assertEquals(ASTPlainString.class, node.getClass());
+            assertEquals(values[i], ((ASTPlainString)node).getValue());
+        }
+    }
+
+    public void testExpression1() throws Exception {
+        assertPlainStrings("echo ${x.length()}", "echo", "${x.length()}");
+    }
+
+    public void testExpression2() throws Exception {
+        assertPlainStrings("echo ${a || b}", "echo", "${a || b}");
+    }
+
+    public void testExpression3() throws Exception {
+        assertPlainStrings("echo ${a && b}", "echo", "${a && b}");
+    }
+
+    public void testExpression4() throws Exception {
+        assertPlainStrings("echo ${a; b} x${a|b}y${c}", "echo", "${a; b}", "x${a|b}y${c}");
+    }
+
+    public void testExpressionInPipeline() throws Exception {
+        String input = "(echo ${x.length()} | a ${a || b}) & b";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(2, cl.jjtGetNumChildren());
+
+        Node group = cl.jjtGetChild(0).jjtGetChild(0);
+        assertEquals(ASTGroup.class, group.getClass());
+        assertEquals(1, group.jjtGetNumChildren());
+
+        Node pipeline = group.jjtGetChild(0);
+        assertEquals(ASTPipeline.class, pipeline.getClass());
+        assertEquals(2, pipeline.jjtGetNumChildren());
+        assertEquals("${x.length()}", ((ASTPlainString)pipeline.jjtGetChild(0).jjtGetChild(1)).getValue());
+        assertEquals("${a || b}", ((ASTPlainString)pipeline.jjtGetChild(1).jjtGetChild(1)).getValue());
+    }
+
+    public void testUnclosedExpression() throws Exception {
+        // Without its }, an expression is no different from other plain strings
+        String input = "echo ${a | b";
+
+        ASTCommandLine cl = parse(input);
+
+        assertEquals(1, cl.jjtGetNumChildren());
+        assertEquals(ASTPipeline.class, cl.jjtGetChild(0).getClass());
+    }
 }
@@ -55,17 +55,52 @@ public class CommandLineParserVisitorTest
 
         assertNull(v.simpleNode);
         assertNotNull(v.commandLine);
+        assertNull(v.pipeline);
         assertNotNull(v.expression);
         assertNotNull(v.quotedString);
         assertNotNull(v.opaqueString);
         assertNotNull(v.plainString);
     }
 
+    public void testVisitor2() throws Exception {
+        String input = "a | b";
+
+        ASTCommandLine cl = parse(input);
+
+        MockCommandLineVisitor v = new MockCommandLineVisitor();
+
+        cl.jjtAccept(v, null);
+
+        assertNull(v.simpleNode);
+        assertNotNull(v.commandLine);
+        assertNotNull(v.pipeline);
+        assertNotNull(v.expression);
+    }
+
+    public void testVisitor3() throws Exception {
+        String input = "( a ; b ) & c";
+
+        ASTCommandLine cl = parse(input);
+
+        MockCommandLineVisitor v = new MockCommandLineVisitor();
+
+        cl.jjtAccept(v, null);
+
+        assertNull(v.simpleNode);
+        assertNotNull(v.background);
+        assertNotNull(v.group);
+        assertNull(v.pipeline);
+        assertNotNull(v.expression);
+    }
+
     private static class MockCommandLineVisitor
         implements CommandLineParserVisitor
     {
         private SimpleNode simpleNode;
         private ASTCommandLine commandLine;
+        private ASTPipeline pipeline;
+        private ASTBackground background;
+        private ASTGroup group;
         private ASTExpression expression;
         private ASTQuotedString quotedString;
         private ASTOpaqueString opaqueString;
@@ -83,6 +118,24 @@ public class CommandLineParserVisitorTest
             return node.childrenAccept(this, data);
         }
 
+        public Object visit(ASTPipeline node, Object data) {
+            this.pipeline = node;
+
+            return node.childrenAccept(this, data);
+        }
+
+        public Object visit(ASTBackground node, Object data) {
+            this.background = node;
+
+            return node.childrenAccept(this, data);
+        }
+
+        public Object visit(ASTGroup node, Object data) {
+            this.group = node;
+
+            return node.childrenAccept(this, data);
+        }
+
         public Object visit(ASTExpression node, Object data) {
             this.expression = node;
 
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.maven
+
+import org.codehaus.mojo.groovy.GroovyMojoSupport
+
+/**
+ * Merges all command descriptors of the project into a single, validated command index,
+ * so that commands can be discovered at runtime without scanning for descriptors.
+ *
+ * @goal command-index
+ * @phase process-classes
+ *
+ * @version $Id$
+ */
+class CommandIndexMojo
+    extends GroovyMojoSupport
+{
+    static final String DESCRIPTOR_LOCATION = 'META-INF/org.apache.geronimo.gshell.command'
+    
+    static final String INDEX_LOCATION = DESCRIPTOR_LOCATION + '.index'
+    
+    static final List REQUIRED_PROPERTIES = [ 'name', 'class', 'category' ]
+    
+    /**
+     * Where the descriptors are read from, and the index is written to.
+     *
+     * @parameter expression="${project.build.outputDirectory}"
+     * @required
+     */
+    File outputDirectory
+    
+    /**
+     * Check that the class of each command has been compiled into the output directory.
+     *
+     * @parameter default-value="true"
+     */
+    boolean verifyClasses
+    
+    void execute() {
+        def dir = new File(outputDirectory, DESCRIPTOR_LOCATION)
+        if (!dir.directory) {
+            log.info('No command descriptors found')
+            return
+        }
+        
+        def files = dir.listFiles().findAll { it.name.endsWith('.properties') }.sort { it.name }
+        
+        def index = new Properties()
+        def ids = []
+        def names = [:]
+        
+        files.each { file ->
+            def id = file.name - '.properties'
+            
+            // Ids are used as property prefixes and listed comma separated
+            if (id.contains('.') || id.contains(',')) {
+                fail("Command descriptor name must not contain '.' or ',': $file")
+            }
+            
+            def props = new Properties()
+            file.withInputStream { props.load(it) }
+            
+            REQUIRED_PROPERTIES.each { key ->
+                if (!props.getProperty(key)?.trim()) {
+                    fail("Missing '$key' property in command descriptor: $file")
+                }
+            }
+            
+            def name = props.getProperty('name').trim()
+            if (names[name]) {
+                fail("Duplicate command name '$name' in: $file and ${names[name]}")
+            }
+            names[name] = file
+            
+            if (verifyClasses) {
+                def classname = props.getProperty('class').trim()
+                def classFile = new File(outputDirectory, classname.replace('.', '/') + '.class')
+                if (!classFile.exists()) {
+                    fail("Missing class '$classname' for command descriptor: $file")
+                }
+            }
+            
+            props.each { key, value ->
+                index.setProperty("${id}.${key}", value)
+            }
+            ids << id
+        }
+        
+        if (ids.empty) {
+            log.info('No command descriptors found')
+            return
+        }
+        
+        index.setProperty('commands', ids.join(','))
+        
+        def indexFile = new File(outputDirectory, INDEX_LOCATION)
+        indexFile.withOutputStream { index.store(it, 'GShell command index; generated, do not edit') }
+        
+        log.info("Indexed ${ids.size()} command(s) in: $indexFile")
+    }
+}
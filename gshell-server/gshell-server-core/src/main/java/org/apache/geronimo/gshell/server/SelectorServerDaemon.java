@@ -0,0 +1,833 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.lang.NullArgumentException;
+import org.apache.geronimo.gshell.ExitNotification;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.ShellFactory;
+import org.apache.geronimo.gshell.command.StandardVariables;
+import org.apache.geronimo.gshell.console.Console;
+import org.apache.geronimo.gshell.console.ConsoleFactory;
+import org.apache.geronimo.gshell.console.IO;
+import org.apache.geronimo.gshell.console.SimpleConsole;
+import org.apache.log4j.NDC;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Line-mode shell server which multiplexes all client connections onto a single
+ * non-blocking {@link Selector} thread.
+ *
+ * <p>
+ * Idle connections do not hold a thread.  Input is buffered by the selector thread, and
+ * only once a complete line is available is a worker taken from the executor to run it
+ * with the connection's {@link Shell}.  Output written by commands is queued and sent
+ * by the selector thread as the client accepts it.
+ *
+ * <p>
+ * A connection is not read from while a line is waiting for its worker, or while as much
+ * input as the max line length is buffered, so a client can not make the server buffer more
+ * than that.  A line longer than the max line length gets the connection closed.
+ *
+ * <p>
+ * Each connection gets its {@link IO} from a {@link Console} created by the configured
+ * {@link ConsoleFactory}; since lines are assembled here, the console is not used to read
+ * lines, so character-at-a-time editing (JLine) is not available in this mode.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SelectorServerDaemon
+    implements Runnable
+{
+    private static final Log log = LogFactory.getLog(SelectorServerDaemon.class);
+
+    /** Maximum output queued per connection before writers wait for the client. */
+    private static final int MAX_PENDING_OUTPUT = 64 * 1024;
+
+    public static final int DEFAULT_MAX_LINE_LENGTH = 8 * 1024;
+
+    private final int port;
+
+    private final ConsoleFactory consoleFactory;
+
+    private final Executor workers;
+
+    private ShellFactory shellFactory;
+
+    private int backlog = SocketServerDaemon.DEFAULT_BACKLOG;
+
+    private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+
+    private volatile int maxSessions;
+
+    private Selector selector;
+
+    private ServerSocketChannel serverChannel;
+
+    private volatile boolean running;
+
+    private Thread selectorThread;
+
+    /** Connections whose interest in writing has changed since the last select. */
+    private final Queue<Connection> updates = new ConcurrentLinkedQueue<Connection>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicLong rejectedConnections = new AtomicLong();
+
+    public SelectorServerDaemon(final int port, final ConsoleFactory consoleFactory, final Executor workers) {
+        if (consoleFactory == null) {
+            throw new NullArgumentException("consoleFactory");
+        }
+        if (workers == null) {
+            throw new NullArgumentException("workers");
+        }
+
+        this.port = port;
+        this.consoleFactory = consoleFactory;
+        this.workers = workers;
+    }
+
+    public SelectorServerDaemon(final int port, final Executor workers) {
+        this(port, new SimpleConsoleFactory(), workers);
+    }
+
+    /**
+     * Set the factory which creates the shell of each connection; by default one is created when started.
+     */
+    public void setShellFactory(final ShellFactory shellFactory) {
+        if (shellFactory == null) {
+            throw new NullArgumentException("shellFactory");
+        }
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+
+        this.shellFactory = shellFactory;
+    }
+
+    public ShellFactory getShellFactory() {
+        return shellFactory;
+    }
+
+    public void setBacklog(final int backlog) {
+        if (backlog < 1) {
+            throw new IllegalArgumentException("Backlog must be >= 1: " + backlog);
+        }
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+
+        this.backlog = backlog;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Set the maximum length of a line, and of input buffered per connection.
+     */
+    public void setMaxLineLength(final int maxLineLength) {
+        if (maxLineLength < 1) {
+            throw new IllegalArgumentException("Max line length must be >= 1: " + maxLineLength);
+        }
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+
+        this.maxLineLength = maxLineLength;
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Set the maximum number of open connections; 0 for no limit.
+     */
+    public void setMaxSessions(final int maxSessions) {
+        if (maxSessions < 0) {
+            throw new IllegalArgumentException("Max sessions must be >= 0: " + maxSessions);
+        }
+
+        this.maxSessions = maxSessions;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    /**
+     * Get the port the daemon listens on, which is only known once started if configured as 0.
+     *
+     * @return  The local port; or -1 if not started
+     */
+    public int getLocalPort() {
+        ServerSocketChannel tmp = serverChannel;
+
+        return tmp != null && running ? tmp.socket().getLocalPort() : -1;
+    }
+
+    public void start() throws Exception {
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+
+        log.info("Starting...");
+
+        // Discover commands up front, so that connections only need to create their session state
+        if (shellFactory == null) {
+            shellFactory = new ShellFactory();
+        }
+
+        selector = Selector.open();
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().bind(new InetSocketAddress(port), backlog);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+
+        selectorThread = new Thread(this);
+        selectorThread.setName("SelectorServerDaemon@" + selectorThread.hashCode());
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+
+        log.info("Started");
+    }
+
+    public void stop() throws Exception {
+        if (!running) {
+            throw new IllegalStateException("Not started");
+        }
+
+        running = false;
+        selector.wakeup();
+
+        // Connections and the port are closed by the selector thread once it sees the flag
+        selectorThread.join();
+        selectorThread = null;
+    }
+
+    //
+    // Runnable
+    //
+
+    public void run() {
+        log.info("Listening for connections on port: " + port);
+
+        while (running) {
+            try {
+                selector.select();
+
+                Connection conn;
+                while ((conn = updates.poll()) != null) {
+                    conn.updateInterest();
+                }
+
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    }
+                    else {
+                        conn = (Connection)key.attachment();
+
+                        try {
+                            if (key.isReadable()) {
+                                conn.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                conn.write();
+                            }
+                        }
+                        catch (IOException e) {
+                            log.debug("Connection failed: " + conn, e);
+                            conn.close();
+                        }
+                    }
+                }
+            }
+            catch (Throwable t) {
+                log.error("Unexpected; ignoring", t);
+            }
+        }
+
+        shutdown();
+
+        log.info("Stopped");
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+
+        int max = maxSessions;
+        if (max > 0 && connections.get() >= max) {
+            log.warn("Max sessions (" + max + ") reached; rejecting client: " + channel.socket());
+            rejectedConnections.incrementAndGet();
+            channel.close();
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        Connection conn = new Connection(channel);
+        conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+        connections.incrementAndGet();
+
+        log.info("Accepted client: " + conn);
+
+        // Create the shell off the selector thread, it shows the first prompt when ready
+        conn.busy = true;
+        conn.dispatch();
+    }
+
+    private void shutdown() {
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                ((Connection)attachment).close();
+            }
+        }
+
+        try {
+            serverChannel.close();
+            selector.close();
+        }
+        catch (IOException e) {
+            log.error("Failure while closing; ignoring", e);
+        }
+    }
+
+    //
+    // Connection
+    //
+
+    /**
+     * State of a single client connection.
+     *
+     * <p>
+     * Input and output buffers are guarded by the connection monitor; the selector thread only
+     * ever appends input and drains output, and at most one worker runs lines at a time.
+     */
+    private class Connection
+        implements Runnable
+    {
+        private final SocketChannel channel;
+
+        private SelectionKey key;
+
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+
+        private byte[] input = new byte[256];
+
+        private int inputCount;
+
+        private ByteBuffer output = ByteBuffer.allocate(1024);
+
+        /** True while a worker owns the connection. */
+        private boolean busy;
+
+        private boolean eof;
+
+        private boolean closeWhenFlushed;
+
+        /** True while the selector does not read, until the worker takes some input. */
+        private boolean readSuspended;
+
+        /** True once a line longer than the max line length has been received. */
+        private boolean overflow;
+
+        private volatile boolean closed;
+
+        private IO io;
+
+        private Shell shell;
+
+        public Connection(final SocketChannel channel) {
+            assert channel != null;
+
+            this.channel = channel;
+        }
+
+        public String toString() {
+            return String.valueOf(channel.socket());
+        }
+
+        //
+        // Selector thread
+        //
+
+        public void read() throws IOException {
+            readBuffer.clear();
+
+            int n = channel.read(readBuffer);
+            if (n == -1) {
+                synchronized (this) {
+                    eof = true;
+                    notifyAll();
+
+                    if (busy) {
+                        // Let the worker finish, it closes once done
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                        return;
+                    }
+                }
+
+                close();
+                return;
+            }
+
+            boolean dispatch;
+
+            synchronized (this) {
+                ensureInputCapacity(inputCount + n);
+                readBuffer.flip();
+                readBuffer.get(input, inputCount, n);
+                inputCount += n;
+
+                // Wake up a command which is reading its input
+                notifyAll();
+
+                // A worker also deals with lines which are too long
+                dispatch = !busy && (indexOfLine() != -1 || inputCount >= maxLineLength);
+                if (dispatch) {
+                    busy = true;
+                }
+
+                updateInterest();
+            }
+
+            if (dispatch) {
+                dispatch();
+            }
+        }
+
+        public void write() throws IOException {
+            synchronized (this) {
+                output.flip();
+                channel.write(output);
+                output.compact();
+
+                // Wake up writers waiting for room
+                notifyAll();
+
+                if (output.position() == 0) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+                    if (closeWhenFlushed) {
+                        close();
+                    }
+                }
+            }
+        }
+
+        public synchronized void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+
+            int ops = key.interestOps();
+
+            readSuspended = !eof && !wantsInput();
+            if (readSuspended) {
+                ops &= ~SelectionKey.OP_READ;
+            }
+            else if (!eof) {
+                ops |= SelectionKey.OP_READ;
+            }
+
+            if (output.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            else if (closeWhenFlushed) {
+                close();
+                return;
+            }
+
+            key.interestOps(ops);
+        }
+
+        /**
+         * Check if more input may be read; not while a line waits for the worker, or the buffer is full.
+         */
+        private boolean wantsInput() {
+            assert Thread.holdsLock(this);
+
+            return inputCount < maxLineLength && !(busy && indexOfLine() != -1);
+        }
+
+        /**
+         * Have the selector read again, if it stopped and the worker has now taken enough input.
+         */
+        private void inputConsumed() {
+            assert Thread.holdsLock(this);
+
+            if (readSuspended && wantsInput()) {
+                requestUpdate();
+            }
+        }
+
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            synchronized (this) {
+                closed = true;
+                eof = true;
+                notifyAll();
+            }
+
+            key.cancel();
+
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                log.error("Failure while closing channel; ignoring", e);
+            }
+
+            connections.decrementAndGet();
+
+            log.info("Closed client: " + this);
+        }
+
+        private void ensureInputCapacity(final int size) {
+            if (size > input.length) {
+                byte[] tmp = new byte[Math.max(size, input.length * 2)];
+                System.arraycopy(input, 0, tmp, 0, inputCount);
+                input = tmp;
+            }
+        }
+
+        private int indexOfLine() {
+            for (int i=0; i<inputCount; i++) {
+                if (input[i] == '\n') {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        //
+        // Workers
+        //
+
+        public void dispatch() {
+            try {
+                workers.execute(this);
+            }
+            catch (RejectedExecutionException e) {
+                log.warn("Worker rejected; closing client: " + this);
+                close();
+            }
+        }
+
+        /**
+         * Take the next complete line, or release the connection if there is none.
+         *
+         * @return  The line; or null if there is none, or it is too long
+         */
+        private synchronized String nextLine() {
+            int i = indexOfLine();
+
+            if (i == -1 ? inputCount >= maxLineLength : i > maxLineLength) {
+                // Stays busy, so nothing else is dispatched until closed
+                overflow = true;
+                return null;
+            }
+
+            if (i == -1) {
+                busy = false;
+                inputConsumed();
+                return null;
+            }
+
+            int len = i;
+            if (len > 0 && input[len - 1] == '\r') {
+                len--;
+            }
+
+            String line = new String(input, 0, len);
+            consumeInput(i + 1);
+            inputConsumed();
+
+            return line;
+        }
+
+        private void consumeInput(final int n) {
+            System.arraycopy(input, n, input, 0, inputCount - n);
+            inputCount -= n;
+        }
+
+        public void run() {
+            NDC.push(toString());
+
+            try {
+                if (shell == null) {
+                    Console console = consoleFactory.create(new ConnectionInputStream(), new ConnectionOutputStream());
+                    io = console.getIO();
+                    shell = shellFactory.create(io);
+
+                    prompt();
+                }
+
+                String line;
+                while (!closed && (line = nextLine()) != null) {
+                    if (!execute(line)) {
+                        synchronized (this) {
+                            closeWhenFlushed = true;
+                        }
+                        requestUpdate();
+                        return;
+                    }
+
+                    prompt();
+                }
+
+                if (overflow) {
+                    log.warn("Line longer than " + maxLineLength + " bytes; closing client: " + this);
+
+                    io.err.println("Line longer than " + maxLineLength + " bytes; closing connection");
+                    io.flush();
+                }
+
+                synchronized (this) {
+                    if ((eof || overflow) && !closed) {
+                        closeWhenFlushed = true;
+                        requestUpdate();
+                    }
+                }
+            }
+            catch (Throwable t) {
+                log.error("Service failure", t);
+                close();
+            }
+            finally {
+                NDC.pop();
+            }
+        }
+
+        /**
+         * Execute a line.
+         *
+         * @return  False if the shell has exited
+         */
+        private boolean execute(final String line) {
+            if (line.trim().length() == 0) {
+                return true;
+            }
+
+            try {
+                shell.execute(line);
+            }
+            catch (ExitNotification n) {
+                return false;
+            }
+            catch (Exception e) {
+                log.error("Exception", e);
+            }
+            finally {
+                io.flush();
+            }
+
+            return true;
+        }
+
+        private void prompt() {
+            Object prompt = shell.getVariables().get(StandardVariables.PROMPT);
+            if (prompt != null) {
+                io.out.print(prompt);
+            }
+            io.flush();
+        }
+
+        private void requestUpdate() {
+            updates.add(this);
+            selector.wakeup();
+        }
+
+        //
+        // ConnectionInputStream
+        //
+
+        /**
+         * Input for commands which read from the client; blocks until the selector has received more.
+         */
+        private class ConnectionInputStream
+            extends InputStream
+        {
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = read(b, 0, 1);
+                return n == -1 ? -1 : b[0] & 0xff;
+            }
+
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+
+                synchronized (Connection.this) {
+                    while (inputCount == 0) {
+                        if (eof) {
+                            return -1;
+                        }
+
+                        try {
+                            Connection.this.wait();
+                        }
+                        catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                    }
+
+                    int n = Math.min(len, inputCount);
+                    System.arraycopy(input, 0, b, off, n);
+                    consumeInput(n);
+                    inputConsumed();
+
+                    return n;
+                }
+            }
+
+            public int available() {
+                synchronized (Connection.this) {
+                    return inputCount;
+                }
+            }
+        }
+
+        //
+        // ConnectionOutputStream
+        //
+
+        /**
+         * Output which is queued for the selector thread to send; flushing hands it over.
+         */
+        private class ConnectionOutputStream
+            extends OutputStream
+        {
+            public void write(final int b) throws IOException {
+                write(new byte[] { (byte)b }, 0, 1);
+            }
+
+            public void write(final byte[] b, int off, int len) throws IOException {
+                synchronized (Connection.this) {
+                    while (len > 0) {
+                        if (closed) {
+                            throw new IOException("Connection closed");
+                        }
+
+                        if (output.position() >= MAX_PENDING_OUTPUT) {
+                            // Client is not keeping up, wait for the selector to drain some
+                            requestUpdate();
+
+                            try {
+                                Connection.this.wait();
+                            }
+                            catch (InterruptedException e) {
+                                throw new InterruptedIOException();
+                            }
+                            continue;
+                        }
+
+                        if (output.remaining() < len) {
+                            int size = Math.min(MAX_PENDING_OUTPUT, Math.max(output.capacity() * 2, output.position() + len));
+                            if (size > output.capacity()) {
+                                ByteBuffer tmp = ByteBuffer.allocate(size);
+                                output.flip();
+                                tmp.put(output);
+                                output = tmp;
+                            }
+                        }
+
+                        int n = Math.min(len, output.remaining());
+                        output.put(b, off, n);
+                        off += n;
+                        len -= n;
+                    }
+                }
+            }
+
+            public void flush() {
+                requestUpdate();
+            }
+        }
+    }
+
+    //
+    // SimpleConsoleFactory
+    //
+
+    /**
+     * Creates plain consoles over the given streams.
+     */
+    private static class SimpleConsoleFactory
+        implements ConsoleFactory
+    {
+        public Console create(final InputStream input, final OutputStream output) {
+            return new SimpleConsole(new IO(input, output));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the executors which {@link SocketServerDaemon} runs client sessions with.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionExecutors
+{
+    private SessionExecutors() {
+        // Static factory
+    }
+
+    /**
+     * Create an executor which starts a new daemon thread for every session.
+     *
+     * <p>
+     * There is no limit on the number of threads, other than the max sessions of the daemon.
+     */
+    public static Executor newThreadPerSessionExecutor(final String name) {
+        final ThreadFactory factory = newThreadFactory(name);
+
+        return new Executor() {
+            public void execute(final Runnable task) {
+                factory.newThread(task).start();
+            }
+        };
+    }
+
+    /**
+     * Create an executor with a bounded number of threads and a bounded queue of sessions waiting for one.
+     *
+     * <p>
+     * Threads are started as sessions arrive, up to the maximum, and are then kept for reuse.
+     *
+     * @param name          The base name of pool threads
+     * @param maxThreads    The maximum number of sessions which run at the same time
+     * @param queueSize     The maximum number of sessions which wait for a thread
+     * @param policy        What to do with sessions once the queue is full
+     */
+    public static ExecutorService newBoundedExecutor(final String name, final int maxThreads, final int queueSize,
+                                                     final RejectedExecutionHandler policy)
+    {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Max threads must be >= 1: " + maxThreads);
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be >= 1: " + queueSize);
+        }
+
+        return new ThreadPoolExecutor(
+            maxThreads, maxThreads,
+            0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize),
+            newThreadFactory(name),
+            policy);
+    }
+
+    /**
+     * Create a bounded executor which rejects sessions once the queue is full.
+     */
+    public static ExecutorService newBoundedExecutor(final String name, final int maxThreads, final int queueSize) {
+        return newBoundedExecutor(name, maxThreads, queueSize, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        assert name != null;
+
+        final ThreadGroup group = new ThreadGroup(name);
+        final AtomicInteger counter = new AtomicInteger();
+
+        return new ThreadFactory() {
+            public Thread newThread(final Runnable task) {
+                Thread t = new Thread(group, task, name + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
@@ -24,6 +24,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.commons.lang.NullArgumentException;
 import org.apache.geronimo.gshell.Shell;
 import org.apache.geronimo.gshell.InteractiveShell;
+import org.apache.geronimo.gshell.ShellFactory;
 import org.apache.geronimo.gshell.command.CommandException;
 import org.apache.geronimo.gshell.console.IO;
 import org.apache.geronimo.gshell.console.Console;
@@ -52,6 +53,9 @@ public class ShellServer
 
     private final ConsoleFactory consoleFactory;
 
+    /** Commands are discovered once for the server, not once per connection. */
+    private final ShellFactory shellFactory = new ShellFactory();
+
     public ShellServer() throws Exception {
         ResourceFinder resourceFinder = new ResourceFinder("META-INF/");
         Map<String, Class> resourcesMap = resourceFinder.mapAvailableImplementations(ConsoleFactory.class);
@@ -76,6 +80,10 @@ public class ShellServer
         }
     }
 
+    public ShellFactory getShellFactory() {
+        return shellFactory;
+    }
+
     public void service(final Socket socket) throws CommandException, IOException {
         if (socket == null) {
             throw new NullArgumentException("socket");
@@ -108,11 +116,12 @@ public class ShellServer
         //
 
         IO io = null;
+        Shell shell = null;
         try {
             Console console = consoleFactory.create(input, output);
 
             io = console.getIO();
-            Shell shell = new Shell(io);
+            shell = shellFactory.create(io);
 
             InteractiveShell interp = new InteractiveShell(console, shell);
             interp.run();
@@ -121,6 +130,9 @@ public class ShellServer
             throw new CommandException(e);
         }
         finally {
+            if (shell != null) {
+                shell.getJobManager().close();
+            }
             if (io != null) {
                 io.close();
             }
@@ -26,6 +26,10 @@ import org.apache.log4j.NDC;
 
 import java.net.Socket;
 import java.net.ServerSocket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 //
 // NOTE: Some bits lifted from XBean Telnet module
@@ -34,6 +38,11 @@ import java.net.ServerSocket;
 /**
  * Daemon service which listens for socket connections and spawns client threads.
  *
+ * <p>
+ * Sessions are run by a pluggable {@link Executor}, by default a new thread per session;
+ * see {@link SessionExecutors} for a bounded pool.  Connections beyond the max sessions
+ * limit, or which the executor rejects, are closed right away.
+ *
  * @version $Rev$ $Date$
  */
 public class SocketServerDaemon
@@ -43,13 +52,29 @@ public class SocketServerDaemon
 
     private final SocketHandler handler;
 
+    public static final int DEFAULT_BACKLOG = 20;
+
     private final int port;
 
-    private ServerSocket serverSocket;
+    private volatile ServerSocket serverSocket;
+
+    private Thread listener;
+
+    private Executor executor = SessionExecutors.newThreadPerSessionExecutor("SocketHandler");
+
+    private int backlog = DEFAULT_BACKLOG;
+
+    private volatile int maxSessions;
+
+    private volatile boolean running;
 
-    private ThreadGroup threads = new ThreadGroup("SocketServerDaemon");
+    private final AtomicInteger activeSessions = new AtomicInteger();
 
-    private boolean running;
+    private final AtomicInteger queuedSessions = new AtomicInteger();
+
+    private final AtomicLong acceptedSessions = new AtomicLong();
+
+    private final AtomicLong rejectedSessions = new AtomicLong();
 
     public SocketServerDaemon(final int port, final SocketHandler handler) {
         if (handler == null) {
@@ -60,6 +85,97 @@ public class SocketServerDaemon
         this.handler = handler;
     }
 
+    private void ensureNotRunning() {
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+    }
+
+    /**
+     * Set the executor which runs client sessions; the daemon does not shut it down when stopped.
+     */
+    public void setExecutor(final Executor executor) {
+        if (executor == null) {
+            throw new NullArgumentException("executor");
+        }
+
+        ensureNotRunning();
+
+        this.executor = executor;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the maximum length of the queue of connections waiting to be accepted.
+     */
+    public void setBacklog(final int backlog) {
+        if (backlog < 1) {
+            throw new IllegalArgumentException("Backlog must be >= 1: " + backlog);
+        }
+
+        ensureNotRunning();
+
+        this.backlog = backlog;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Set the maximum number of active plus queued sessions; 0 for no limit.
+     */
+    public void setMaxSessions(final int maxSessions) {
+        if (maxSessions < 0) {
+            throw new IllegalArgumentException("Max sessions must be >= 0: " + maxSessions);
+        }
+
+        this.maxSessions = maxSessions;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public int getQueuedSessions() {
+        return queuedSessions.get();
+    }
+
+    public long getAcceptedSessions() {
+        return acceptedSessions.get();
+    }
+
+    public long getRejectedSessions() {
+        return rejectedSessions.get();
+    }
+
+    /**
+     * Get the port the daemon listens on, which is only known once started if configured as 0.
+     *
+     * @return  The local port; or -1 if not started
+     */
+    public int getLocalPort() {
+        ServerSocket tmp = serverSocket;
+
+        return tmp != null ? tmp.getLocalPort() : -1;
+    }
+
+    public String toString() {
+        return "SocketServerDaemon{ port=" + port +
+                ", active=" + activeSessions +
+                ", queued=" + queuedSessions +
+                ", accepted=" + acceptedSessions +
+                ", rejected=" + rejectedSessions +
+                " }";
+    }
+
     public void start() throws Exception {
         if (running) {
             throw new IllegalStateException("Already started");
@@ -67,13 +183,14 @@ public class SocketServerDaemon
 
         log.info("Starting...");
 
+        serverSocket = new ServerSocket(port, backlog);
+
         running = true;
 
-        serverSocket = new ServerSocket(port, 20);
-        Thread d = new Thread(this);
-        d.setName("SocketServerDaemon@" + d.hashCode());
-        d.setDaemon(true);
-        d.start();
+        listener = new Thread(this);
+        listener.setName("SocketServerDaemon@" + listener.hashCode());
+        listener.setDaemon(true);
+        listener.start();
 
         log.info("Started");
     }
@@ -83,10 +200,15 @@ public class SocketServerDaemon
             throw new IllegalStateException("Not started");
         }
 
+        // Stop the accept loop before closing the socket it is blocked on
+        running = false;
+
         serverSocket.close();
         serverSocket = null;
 
-        running = false;
+        // The port is only released once the accept loop has let go of it
+        listener.join();
+        listener = null;
     }
 
     public void service(final Socket socket) {
@@ -94,39 +216,88 @@ public class SocketServerDaemon
             throw new NullArgumentException("socket");
         }
 
-        log.info("Starting new thread for client: " + socket);
+        int max = maxSessions;
+        if (max > 0 && activeSessions.get() + queuedSessions.get() >= max) {
+            log.warn("Max sessions (" + max + ") reached; rejecting client: " + socket);
+            reject(socket);
+            return;
+        }
+
+        log.info("Starting session for client: " + socket);
+
+        queuedSessions.incrementAndGet();
+
+        try {
+            executor.execute(new Session(socket));
+        }
+        catch (RejectedExecutionException e) {
+            queuedSessions.decrementAndGet();
+
+            log.warn("Session rejected by executor; closing client: " + socket);
+            reject(socket);
+            return;
+        }
+
+        acceptedSessions.incrementAndGet();
+    }
+
+    private void reject(final Socket socket) {
+        assert socket != null;
+
+        rejectedSessions.incrementAndGet();
+
+        try {
+            socket.close();
+        }
+        catch (Throwable t) {
+            log.error("Failure while closing socket; ignoring", t);
+        }
+    }
+
+    //
+    // Session
+    //
+
+    /**
+     * Handles a single client socket, and closes it once done.
+     */
+    private class Session
+        implements Runnable
+    {
+        private final Socket socket;
+
+        public Session(final Socket socket) {
+            assert socket != null;
 
-        //
-        // TODO: Maybe use a thread-pool here?
-        //
+            this.socket = socket;
+        }
+
+        public void run() {
+            queuedSessions.decrementAndGet();
+            activeSessions.incrementAndGet();
 
-        Thread d = new Thread(threads, new Runnable() {
-            public void run() {
-                NDC.push(socket.toString());
+            NDC.push(socket.toString());
 
+            try {
+                handler.handle(socket);
+            }
+            catch (Throwable e) {
+                log.error("Service failure", e);
+            }
+            finally {
                 try {
-                    handler.handle(socket);
-                }
-                catch (Throwable e) {
-                    log.error("Service failure", e);
+                    // Socket always non-null
+                    socket.close();
                 }
-                finally {
-                    try {
-                        // Socket always non-null
-                        socket.close();
-                    }
-                    catch (Throwable t) {
-                        log.error("Failure while closing socket; ignoring", t);
-                    }
-
-                    NDC.pop();
+                catch (Throwable t) {
+                    log.error("Failure while closing socket; ignoring", t);
                 }
-            }
-        });
 
-        d.setName("SocketHandler@" + d.hashCode());
-        d.setDaemon(true);
-        d.start();
+                NDC.pop();
+
+                activeSessions.decrementAndGet();
+            }
+        }
     }
 
     //
@@ -134,21 +305,31 @@ public class SocketServerDaemon
     //
 
     public void run() {
-        log.info("Listening for connections on port: " + port);
+        // Keep our own reference, stop() clears the field
+        ServerSocket listener = serverSocket;
+
+        log.info("Listening for connections on port: " + listener.getLocalPort());
 
         while (running) {
             try {
-                Socket socket = serverSocket.accept();
+                Socket socket = listener.accept();
                 socket.setTcpNoDelay(true);
 
                 if (running) {
                     service(socket);
                 }
+                else {
+                    socket.close();
+                }
             }
             catch (Throwable t) {
-                log.error("Unexpected; ignoring", t);
+                if (running) {
+                    log.error("Unexpected; ignoring", t);
+                }
             }
         }
+
+        log.info("Stopped listening for connections");
     }
 
     //
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.server;
+
+import junit.framework.TestCase;
+
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.ShellFactory;
+import org.apache.geronimo.gshell.command.CommandException;
+import org.apache.geronimo.gshell.command.StandardVariables;
+import org.apache.geronimo.gshell.console.IO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the {@link SelectorServerDaemon} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SelectorServerDaemonTest
+    extends TestCase
+{
+    private ExecutorService workers;
+
+    private SelectorServerDaemon daemon;
+
+    private final List<Socket> sockets = new ArrayList<Socket>();
+
+    /** Lines executed by all shells, in order. */
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+
+    /** Counted down once a shell executes <tt>block</tt>. */
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    /** Released to let <tt>block</tt> complete. */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    protected void setUp() throws Exception {
+        workers = Executors.newCachedThreadPool();
+
+        daemon = new SelectorServerDaemon(0, workers);
+        daemon.setShellFactory(new TestShellFactory());
+    }
+
+    protected void tearDown() throws Exception {
+        release.countDown();
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        if (daemon.getLocalPort() != -1) {
+            daemon.stop();
+        }
+
+        workers.shutdownNow();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", daemon.getLocalPort());
+        socket.setSoTimeout(5000);
+        sockets.add(socket);
+
+        return socket;
+    }
+
+    private void send(final Socket socket, final String text) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write(text.getBytes());
+        output.flush();
+    }
+
+    private BufferedReader reader(final Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    }
+
+    private void waitForConnections(final int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+
+        while (daemon.getConnections() != count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(count, daemon.getConnections());
+    }
+
+    public void testSettings() throws Exception {
+        assertEquals(SelectorServerDaemon.DEFAULT_MAX_LINE_LENGTH, daemon.getMaxLineLength());
+
+        try {
+            daemon.setMaxLineLength(0);
+            fail("Accepted zero max line length");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        try {
+            daemon.setMaxSessions(-1);
+            fail("Accepted negative max sessions");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        assertEquals(-1, daemon.getLocalPort());
+        daemon.start();
+        assertTrue(daemon.getLocalPort() > 0);
+
+        try {
+            daemon.setMaxLineLength(10);
+            fail("Changed max line length while running");
+        }
+        catch (IllegalStateException expected) {
+            // ignore
+        }
+    }
+
+    public void testPartialLines() throws Exception {
+        daemon.start();
+
+        Socket socket = connect();
+        BufferedReader reader = reader(socket);
+
+        send(socket, "ec");
+        Thread.sleep(100);
+        send(socket, "ho a");
+        Thread.sleep(100);
+        assertTrue(executed.isEmpty());
+
+        send(socket, "\r\n");
+        assertEquals("ran echo a", reader.readLine());
+        assertEquals(Collections.singletonList("echo a"), executed);
+    }
+
+    public void testSeveralLinesInOneRead() throws Exception {
+        daemon.start();
+
+        Socket socket = connect();
+        BufferedReader reader = reader(socket);
+
+        send(socket, "a\nb\r\n\nc\n");
+
+        assertEquals("ran a", reader.readLine());
+        assertEquals("ran b", reader.readLine());
+        assertEquals("ran c", reader.readLine());
+    }
+
+    public void testLinesWhileBusy() throws Exception {
+        daemon.setMaxLineLength(16);
+        daemon.start();
+
+        Socket socket = connect();
+        BufferedReader reader = reader(socket);
+
+        send(socket, "block\n");
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // Not read while a line waits, but run in order once the worker is done
+        send(socket, "a\nb\nc\n");
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("ran block", reader.readLine());
+        assertEquals("ran a", reader.readLine());
+        assertEquals("ran b", reader.readLine());
+        assertEquals("ran c", reader.readLine());
+    }
+
+    public void testInputBoundedWhileBusy() throws Exception {
+        daemon.setMaxLineLength(16);
+        daemon.start();
+
+        final Socket socket = connect();
+
+        send(socket, "block\n");
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch written = new CountDownLatch(1);
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    byte[] bytes = new byte[1024 * 1024];
+                    Arrays.fill(bytes, (byte)'x');
+
+                    for (int i = 0; i < 64; i++) {
+                        socket.getOutputStream().write(bytes);
+                    }
+                }
+                catch (IOException e) {
+                    // Closed for the line being too long
+                }
+
+                written.countDown();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+
+        // The server stops reading, so the client can not get far
+        assertFalse(written.await(1, TimeUnit.SECONDS));
+
+        release.countDown();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        waitForConnections(0);
+    }
+
+    public void testLineTooLong() throws Exception {
+        daemon.setMaxLineLength(16);
+        daemon.start();
+
+        Socket socket = connect();
+        BufferedReader reader = reader(socket);
+
+        send(socket, "ok\n");
+        assertEquals("ran ok", reader.readLine());
+
+        send(socket, "0123456789012345678901234567890123456789");
+
+        String line = reader.readLine();
+        assertNotNull(line);
+        assertTrue(line, line.indexOf("Line longer than 16 bytes") != -1);
+        assertNull(reader.readLine());
+
+        waitForConnections(0);
+        assertEquals(Collections.singletonList("ok"), executed);
+    }
+
+    public void testDisconnect() throws Exception {
+        daemon.start();
+
+        Socket socket = connect();
+        send(socket, "a\n");
+        assertEquals("ran a", reader(socket).readLine());
+        waitForConnections(1);
+
+        socket.close();
+        waitForConnections(0);
+    }
+
+    public void testDisconnectWhileBusy() throws Exception {
+        daemon.start();
+
+        Socket socket = connect();
+        send(socket, "block\n");
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        socket.close();
+        Thread.sleep(100);
+
+        // Kept until the worker is done
+        assertEquals(1, daemon.getConnections());
+
+        release.countDown();
+        waitForConnections(0);
+    }
+
+    public void testSessionLimit() throws Exception {
+        daemon.setMaxSessions(1);
+        daemon.start();
+
+        Socket first = connect();
+        send(first, "a\n");
+        assertEquals("ran a", reader(first).readLine());
+
+        Socket second = connect();
+        assertEquals(-1, second.getInputStream().read());
+        assertEquals(1, daemon.getRejectedConnections());
+
+        first.close();
+        waitForConnections(0);
+
+        Socket third = connect();
+        send(third, "b\n");
+        assertEquals("ran b", reader(third).readLine());
+        assertEquals(1, daemon.getRejectedConnections());
+    }
+
+    public void testStop() throws Exception {
+        daemon.start();
+
+        Socket socket = connect();
+        send(socket, "a\n");
+        assertEquals("ran a", reader(socket).readLine());
+
+        daemon.stop();
+        assertEquals(-1, daemon.getLocalPort());
+        assertEquals(-1, socket.getInputStream().read());
+    }
+
+    //
+    // TestShellFactory
+    //
+
+    /**
+     * Creates shells which echo the lines they are given, instead of running commands.
+     */
+    private class TestShellFactory
+        extends ShellFactory
+    {
+        public TestShellFactory() throws CommandException {
+            super();
+        }
+
+        public Shell create(final IO io) throws CommandException {
+            Shell shell = new Shell(io, getCommandManager(), getCommandLineCache()) {
+                public Object execute(final String line) throws Exception {
+                    executed.add(line);
+
+                    if (line.equals("block")) {
+                        blocked.countDown();
+                        release.await();
+                    }
+
+                    io.out.println("ran " + line);
+
+                    return null;
+                }
+            };
+
+            shell.getVariables().set(StandardVariables.PROMPT, "");
+
+            return shell;
+        }
+    }
+}
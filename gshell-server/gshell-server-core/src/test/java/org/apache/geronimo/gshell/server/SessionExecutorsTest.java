@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.server;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the {@link SessionExecutors} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SessionExecutorsTest
+    extends TestCase
+{
+    public void testThreadPerSession() throws Exception {
+        Executor executor = SessionExecutors.newThreadPerSessionExecutor("Test");
+
+        final Thread[] threads = new Thread[2];
+        final CountDownLatch done = new CountDownLatch(2);
+
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+
+            executor.execute(new Runnable() {
+                public void run() {
+                    threads[n] = Thread.currentThread();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertNotSame(threads[0], threads[1]);
+        assertTrue(threads[0].isDaemon());
+        assertTrue(threads[0].getName().startsWith("Test-"));
+    }
+
+    public void testBoundedArguments() throws Exception {
+        try {
+            SessionExecutors.newBoundedExecutor("Test", 0, 1);
+            fail("Accepted zero threads");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        try {
+            SessionExecutors.newBoundedExecutor("Test", 1, 0);
+            fail("Accepted zero queue size");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testBoundedRejectsWhenFull() throws Exception {
+        ExecutorService executor = SessionExecutors.newBoundedExecutor("Test", 1, 1);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Runnable blocker = new Runnable() {
+            public void run() {
+                started.countDown();
+
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+
+        try {
+            // One running, one queued
+            executor.execute(blocker);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            executor.execute(blocker);
+
+            try {
+                executor.execute(blocker);
+                fail("Accepted more sessions than threads and queue");
+            }
+            catch (RejectedExecutionException expected) {
+                // ignore
+            }
+        }
+        finally {
+            release.countDown();
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
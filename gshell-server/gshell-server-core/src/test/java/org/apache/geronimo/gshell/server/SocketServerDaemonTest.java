@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.geronimo.gshell.server;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the {@link SocketServerDaemon} class.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SocketServerDaemonTest
+    extends TestCase
+{
+    private ServerSocket listener;
+
+    private final List<Socket> sockets = new ArrayList<Socket>();
+
+    /** Released to let blocked sessions complete. */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final SocketServerDaemon.SocketHandler blockingHandler = new SocketServerDaemon.SocketHandler() {
+        public void handle(final Socket socket) throws Exception {
+            release.await();
+        }
+    };
+
+    protected void setUp() throws Exception {
+        listener = new ServerSocket(0);
+    }
+
+    protected void tearDown() throws Exception {
+        release.countDown();
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        listener.close();
+    }
+
+    /**
+     * Connect a client, and return its socket; the server side is added to the server sockets.
+     */
+    private Socket connect(final List<Socket> servers) throws IOException {
+        Socket client = new Socket("127.0.0.1", listener.getLocalPort());
+        client.setSoTimeout(5000);
+        sockets.add(client);
+
+        Socket server = listener.accept();
+        sockets.add(server);
+        servers.add(server);
+
+        return client;
+    }
+
+    private void assertClosed(final Socket client) throws IOException {
+        InputStream input = client.getInputStream();
+
+        assertEquals(-1, input.read());
+    }
+
+    private void waitForSessions(final SocketServerDaemon daemon, final int active, final int queued) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+
+        while ((daemon.getActiveSessions() != active || daemon.getQueuedSessions() != queued) &&
+               System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(active, daemon.getActiveSessions());
+        assertEquals(queued, daemon.getQueuedSessions());
+    }
+
+    public void testConstructorArgsNull() throws Exception {
+        try {
+            new SocketServerDaemon(0, null);
+            fail("Accepted null handler");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testSettings() throws Exception {
+        SocketServerDaemon daemon = new SocketServerDaemon(0, blockingHandler);
+
+        assertEquals(SocketServerDaemon.DEFAULT_BACKLOG, daemon.getBacklog());
+        daemon.setBacklog(5);
+        assertEquals(5, daemon.getBacklog());
+
+        try {
+            daemon.setBacklog(0);
+            fail("Accepted zero backlog");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        assertEquals(0, daemon.getMaxSessions());
+        daemon.setMaxSessions(3);
+        assertEquals(3, daemon.getMaxSessions());
+
+        try {
+            daemon.setMaxSessions(-1);
+            fail("Accepted negative max sessions");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+
+        try {
+            daemon.setExecutor(null);
+            fail("Accepted null executor");
+        }
+        catch (IllegalArgumentException expected) {
+            // ignore
+        }
+    }
+
+    public void testSettingsWhileRunning() throws Exception {
+        SocketServerDaemon daemon = new SocketServerDaemon(0, blockingHandler);
+        daemon.start();
+
+        try {
+            try {
+                daemon.setBacklog(5);
+                fail("Changed backlog while running");
+            }
+            catch (IllegalStateException expected) {
+                // ignore
+            }
+
+            try {
+                daemon.setExecutor(SessionExecutors.newThreadPerSessionExecutor("Test"));
+                fail("Changed executor while running");
+            }
+            catch (IllegalStateException expected) {
+                // ignore
+            }
+
+            // Only checked as sessions arrive, so it may be changed
+            daemon.setMaxSessions(5);
+        }
+        finally {
+            daemon.stop();
+        }
+    }
+
+    public void testMaxSessions() throws Exception {
+        SocketServerDaemon daemon = new SocketServerDaemon(0, blockingHandler);
+        daemon.setMaxSessions(2);
+
+        List<Socket> servers = new ArrayList<Socket>();
+        connect(servers);
+        connect(servers);
+        Socket rejected = connect(servers);
+
+        for (Socket server : servers) {
+            daemon.service(server);
+        }
+
+        assertClosed(rejected);
+        waitForSessions(daemon, 2, 0);
+
+        assertEquals(2, daemon.getAcceptedSessions());
+        assertEquals(1, daemon.getRejectedSessions());
+
+        // Room again once sessions complete
+        release.countDown();
+        waitForSessions(daemon, 0, 0);
+
+        servers.clear();
+        connect(servers);
+        daemon.service(servers.get(0));
+
+        assertEquals(3, daemon.getAcceptedSessions());
+        assertEquals(1, daemon.getRejectedSessions());
+    }
+
+    public void testQueuedSessions() throws Exception {
+        ExecutorService executor = SessionExecutors.newBoundedExecutor("Test", 1, 1);
+
+        SocketServerDaemon daemon = new SocketServerDaemon(0, blockingHandler);
+        daemon.setExecutor(executor);
+
+        try {
+            List<Socket> servers = new ArrayList<Socket>();
+            connect(servers);
+
+            daemon.service(servers.get(0));
+            waitForSessions(daemon, 1, 0);
+
+            // Waits for the only thread
+            connect(servers);
+            daemon.service(servers.get(1));
+            assertEquals(1, daemon.getQueuedSessions());
+
+            // Rejected by the executor, as the queue is full
+            Socket rejected = connect(servers);
+            daemon.service(servers.get(2));
+            assertClosed(rejected);
+
+            assertEquals(1, daemon.getActiveSessions());
+            assertEquals(1, daemon.getQueuedSessions());
+            assertEquals(2, daemon.getAcceptedSessions());
+            assertEquals(1, daemon.getRejectedSessions());
+
+            release.countDown();
+            waitForSessions(daemon, 0, 0);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testSessionClosesSocket() throws Exception {
+        final CountDownLatch handled = new CountDownLatch(1);
+
+        SocketServerDaemon daemon = new SocketServerDaemon(0, new SocketServerDaemon.SocketHandler() {
+            public void handle(final Socket socket) throws Exception {
+                socket.getOutputStream().write('x');
+                handled.countDown();
+            }
+        });
+
+        daemon.setExecutor(new Executor() {
+            public void execute(final Runnable task) {
+                task.run();
+            }
+        });
+
+        List<Socket> servers = new ArrayList<Socket>();
+        Socket client = connect(servers);
+        daemon.service(servers.get(0));
+
+        assertEquals(0, handled.getCount());
+        assertEquals('x', client.getInputStream().read());
+        assertClosed(client);
+        assertEquals(0, daemon.getActiveSessions());
+    }
+
+    public void testStartStop() throws Exception {
+        final CountDownLatch handled = new CountDownLatch(1);
+
+        SocketServerDaemon daemon = new SocketServerDaemon(0, new SocketServerDaemon.SocketHandler() {
+            public void handle(final Socket socket) throws Exception {
+                handled.countDown();
+            }
+        });
+
+        assertEquals(-1, daemon.getLocalPort());
+
+        daemon.start();
+        int port = daemon.getLocalPort();
+        assertTrue(port > 0);
+
+        try {
+            daemon.start();
+            fail("Started twice");
+        }
+        catch (IllegalStateException expected) {
+            // ignore
+        }
+
+        Socket client = new Socket("127.0.0.1", port);
+        sockets.add(client);
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+
+        daemon.stop();
+        assertEquals(-1, daemon.getLocalPort());
+
+        try {
+            sockets.add(new Socket("127.0.0.1", port));
+            fail("Still accepting connections once stopped");
+        }
+        catch (ConnectException expected) {
+            // ignore
+        }
+
+        try {
+            daemon.stop();
+            fail("Stopped twice");
+        }
+        catch (IllegalStateException expected) {
+            // ignore
+        }
+
+        // May be started again
+        daemon.start();
+        daemon.stop();
+    }
+}
@@ -19,9 +19,14 @@
 
 package org.apache.geronimo.gshell.server.telnet;
 
+import java.io.EOFException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.wimpi.telnetd.TelnetD;
 
 import net.wimpi.telnetd.net.Connection;
 import net.wimpi.telnetd.net.ConnectionEvent;
@@ -29,6 +34,7 @@ import net.wimpi.telnetd.io.BasicTerminalIO;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.commons.lang.NullArgumentException;
 
 import jline.Terminal;
 import jline.ConsoleReader;
@@ -36,18 +42,41 @@ import jline.ConsoleReader;
 import org.apache.geronimo.gshell.console.JLineConsole;
 import org.apache.geronimo.gshell.console.IO;
 import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.ShellFactory;
 import org.apache.geronimo.gshell.InteractiveShell;
+import org.apache.geronimo.gshell.command.CommandException;
 
 /**
  * Adapter to integrate GShell as a TelnetD shell.
  *
+ * <p>
+ * All sessions of a server create their shell with the same {@link ShellFactory}, so commands
+ * are only discovered once per server.
+ *
+ * <p>
+ * The terminal only writes a byte at a time, and by default flushes after each; so output is
+ * collected in a buffer, and written to the terminal in one go once flushed or full, flushing
+ * the terminal only then.
+ *
  * @version $Rev$ $Date$
  */
 public class ShellImpl
     implements net.wimpi.telnetd.shell.Shell
 {
+    /**
+     * System property to configure the size of the output buffer of sessions; 1 writes every byte as it comes.
+     */
+    public static final String BUFFER_SIZE_PROPERTY = ShellImpl.class.getName() + ".bufferSize";
+
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    /** Factories by server; TelnetD creates sessions by class name, so they can not be handed one. */
+    private static final Map<TelnetD,ShellFactory> shellFactories = new WeakHashMap<TelnetD,ShellFactory>();
+
     private Log log = LogFactory.getLog(this.getClass());
 
+    private volatile InteractiveShell interp;
+
     //
     // Shell
     //
@@ -72,26 +101,202 @@ public class ShellImpl
 
         ConsoleReader reader = new ConsoleReader(io.inputStream, io.out, /* bindings */ null, term);
         JLineConsole console = new JLineConsole(io, reader);
-        Shell shell = new Shell(console.getIO());
+        Shell shell = getShellFactory(TelnetD.getReference()).create(console.getIO());
+
+        interp = new InteractiveShell(console, shell);
 
-        InteractiveShell interp = new InteractiveShell(console, shell);
-        interp.run();
+        try {
+            interp.run();
+        }
+        finally {
+            shell.getJobManager().close();
+        }
     }
 
     private InputStream createInputStream(final BasicTerminalIO io) {
-        return new InputStream() {
-            public int read() throws IOException {
+        return new TerminalInputStream(io);
+    }
+
+    private OutputStream createOutputStream(final BasicTerminalIO io) {
+        int size = Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE).intValue();
+
+        return new TerminalOutputStream(io, Math.max(1, size));
+    }
+
+    //
+    // TerminalInputStream
+    //
+
+    /**
+     * Reads keys from the terminal.
+     *
+     * <p>
+     * Single reads return what the terminal returns, including its codes of special keys, as
+     * {@link TelnetTerminal} expects.  Reads of many bytes block only for the first key, and
+     * return special keys as the bytes a terminal would send; those without any are dropped.
+     * Once the client has disconnected, reads return end of stream, so the session ends.
+     */
+    private static class TerminalInputStream
+        extends InputStream
+    {
+        private static final byte[] NONE = {};
+
+        private final BasicTerminalIO io;
+
+        /** Bytes of the last key which did not fit the last read. */
+        private byte[] pending = NONE;
+
+        private int pendingOffset;
+
+        public TerminalInputStream(final BasicTerminalIO io) {
+            this.io = io;
+        }
+
+        public synchronized int read() throws IOException {
+            if (pendingOffset < pending.length) {
+                return pending[pendingOffset++] & 0xff;
+            }
+
+            return readKey();
+        }
+
+        private int readKey() throws IOException {
+            try {
                 return io.read();
             }
-        };
+            catch (EOFException e) {
+                return -1;
+            }
+        }
+
+        public synchronized int read(final byte[] bytes, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (pendingOffset == pending.length) {
+                int c = readKey();
+                if (c == -1) {
+                    return -1;
+                }
+
+                pending = toBytes(c);
+                pendingOffset = 0;
+            }
+
+            int n = Math.min(len, pending.length - pendingOffset);
+            System.arraycopy(pending, pendingOffset, bytes, off, n);
+            pendingOffset += n;
+
+            return n;
+        }
+
+        public synchronized int available() {
+            return pending.length - pendingOffset;
+        }
+
+        private byte[] toBytes(final int c) {
+            if (c < 256) {
+                return new byte[] { (byte)c };
+            }
+
+            switch (c) {
+                case BasicTerminalIO.TABULATOR:
+                    return new byte[] { '\t' };
+
+                case BasicTerminalIO.BACKSPACE:
+                    return new byte[] { '\b' };
+
+                case BasicTerminalIO.DELETE:
+                    return new byte[] { 127 };
+
+                case BasicTerminalIO.UP:
+                    return new byte[] { 27, '[', 'A' };
+
+                case BasicTerminalIO.DOWN:
+                    return new byte[] { 27, '[', 'B' };
+
+                case BasicTerminalIO.RIGHT:
+                    return new byte[] { 27, '[', 'C' };
+
+                case BasicTerminalIO.LEFT:
+                    return new byte[] { 27, '[', 'D' };
+            }
+
+            return NONE;
+        }
     }
 
-    private OutputStream createOutputStream(final BasicTerminalIO io) {
-        return new OutputStream() {
-            public void write(int b) throws IOException {
-                io.write((byte)b);
+    //
+    // TerminalOutputStream
+    //
+
+    /**
+     * Buffers output, and writes it to the terminal with a single flush.
+     */
+    private static class TerminalOutputStream
+        extends OutputStream
+    {
+        private final BasicTerminalIO io;
+
+        private final byte[] buffer;
+
+        private int count;
+
+        public TerminalOutputStream(final BasicTerminalIO io, final int size) {
+            this.io = io;
+            this.buffer = new byte[size];
+        }
+
+        public synchronized void write(final int b) throws IOException {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+
+            buffer[count++] = (byte)b;
+        }
+
+        public synchronized void write(final byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(bytes, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
             }
-        };
+        }
+
+        public synchronized void flush() throws IOException {
+            flushBuffer();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count == 0) {
+                return;
+            }
+
+            // Locks out other writers of the terminal, while it does not flush itself
+            synchronized (io) {
+                boolean autoflush = io.isAutoflushing();
+                io.setAutoflushing(false);
+
+                try {
+                    for (int i = 0; i < count; i++) {
+                        io.write(buffer[i]);
+                    }
+                }
+                finally {
+                    io.setAutoflushing(autoflush);
+                    count = 0;
+                }
+
+                io.flush();
+            }
+        }
     }
 
     //
@@ -120,6 +325,48 @@ public class ShellImpl
         assert event != null;
         
         log.info("Connection sent break: " + event);
+
+        // Same as Ctrl-C on a local console
+        InteractiveShell tmp = interp;
+        if (tmp != null) {
+            tmp.interrupt();
+        }
+    }
+
+    /**
+     * Set the factory which creates the shells of the sessions of the given server.
+     */
+    public static void setShellFactory(final TelnetD server, final ShellFactory factory) {
+        if (server == null) {
+            throw new NullArgumentException("server");
+        }
+        if (factory == null) {
+            throw new NullArgumentException("factory");
+        }
+
+        synchronized (shellFactories) {
+            shellFactories.put(server, factory);
+        }
+    }
+
+    /**
+     * Get the factory which creates the shells of the sessions of the given server, creating it if not set.
+     */
+    public static ShellFactory getShellFactory(final TelnetD server) throws CommandException {
+        if (server == null) {
+            throw new NullArgumentException("server");
+        }
+
+        synchronized (shellFactories) {
+            ShellFactory factory = shellFactories.get(server);
+
+            if (factory == null) {
+                factory = new ShellFactory();
+                shellFactories.put(server, factory);
+            }
+
+            return factory;
+        }
     }
 
     //
@@ -23,6 +23,7 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 
+import org.apache.geronimo.gshell.ShellFactory;
 import org.apache.geronimo.gshell.command.Command;
 import org.apache.geronimo.gshell.command.CommandSupport;
 import org.apache.geronimo.gshell.command.MessageSource;
@@ -41,7 +42,9 @@ import net.wimpi.telnetd.TelnetD;
 public class TelnetdCommand
     extends CommandSupport
 {
-    private int port = 5057;
+    private static final int DEFAULT_PORT = 5057;
+
+    private int port = DEFAULT_PORT;
 
     public TelnetdCommand() {
         super("telnetd");
@@ -67,6 +70,9 @@ public class TelnetdCommand
             String tmp = line.getOptionValue('p');
             port = Integer.parseInt(tmp);
         }
+        else {
+            port = DEFAULT_PORT;
+        }
 
         return false;
     }
@@ -82,6 +88,10 @@ public class TelnetdCommand
         //
         
         TelnetD telnetd = TelnetD.createTelnetD(props);
+
+        // Discover commands now, instead of when the first client connects
+        ShellImpl.setShellFactory(telnetd, new ShellFactory());
+
         telnetd.start();
 
         //
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.geronimo.gshell.testsuite;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.gshell.Shell;
+import org.apache.geronimo.gshell.command.Command;
+import org.apache.geronimo.gshell.commands.standard.CatCommand;
+import org.apache.geronimo.gshell.console.IO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * Tests for the <tt>cat</tt> command.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CatCommandTest
+    extends TestCase
+{
+    private static final String NL = System.getProperty("line.separator");
+
+    private File dir;
+
+    private ByteArrayOutputStream out;
+
+    private Shell shell;
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("cat", ".test");
+        dir.delete();
+        dir.mkdirs();
+
+        out = new ByteArrayOutputStream();
+        shell = new Shell(new IO(new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream()));
+    }
+
+    protected void tearDown() throws Exception {
+        System.getProperties().remove(CatCommand.TRANSFER_PROPERTY);
+
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private File createFile(final String name, final String text) throws IOException {
+        File file = new File(dir, name);
+
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(text.getBytes());
+        }
+        finally {
+            output.close();
+        }
+
+        return file;
+    }
+
+    private String cat(final Object... args) throws Exception {
+        out.reset();
+
+        assertEquals(Command.SUCCESS, shell.execute("cat", args));
+
+        return out.toString();
+    }
+
+    private void setInput(final String text) throws Exception {
+        shell = new Shell(new IO(new ByteArrayInputStream(text.getBytes()), out, new ByteArrayOutputStream()));
+    }
+
+    private void disableTransfer() {
+        System.setProperty(CatCommand.TRANSFER_PROPERTY, "false");
+    }
+
+    public void testFile() throws Exception {
+        File file = createFile("file.txt", "a\n\nb\n");
+
+        assertEquals("a\n\nb\n", cat(file.getPath()));
+        assertEquals("     1  a\n     2  \n     3  b\n", cat("-n", file.getPath()));
+    }
+
+    public void testEmptyFile() throws Exception {
+        File file = createFile("empty.txt", "");
+
+        assertEquals("", cat(file.getPath()));
+        assertEquals("", cat("-n", file.getPath()));
+    }
+
+    public void testNoTrailingNewline() throws Exception {
+        File file = createFile("nonl.txt", "a\nb");
+
+        // Copied as it is
+        assertEquals("a\nb", cat(file.getPath()));
+        assertEquals("     1  a\n     2  b", cat("-n", file.getPath()));
+    }
+
+    public void testCRLF() throws Exception {
+        File file = createFile("crlf.txt", "a\r\nb\r\n");
+
+        assertEquals("a\r\nb\r\n", cat(file.getPath()));
+        assertEquals("     1  a\r\n     2  b\r\n", cat("-n", file.getPath()));
+    }
+
+    public void testFiles() throws Exception {
+        File a = createFile("a.txt", "a");
+        File b = createFile("b.txt", "b\n");
+
+        assertEquals("ab\n", cat(a.getPath(), b.getPath()));
+    }
+
+    public void testStdin() throws Exception {
+        setInput("a\r\nb");
+        assertEquals("a\r\nb", cat());
+
+        setInput("a\r\nb");
+        assertEquals("a\r\nb", cat("-"));
+
+        // Numbered line by line
+        setInput("a\r\nb");
+        assertEquals("     1  a" + NL + "     2  b" + NL, cat("-n"));
+    }
+
+    public void testTransferDisabled() throws Exception {
+        disableTransfer();
+
+        // Printed line by line, which ends every line with the line separator
+        File file = createFile("nonl.txt", "a\nb");
+        assertEquals("a" + NL + "b" + NL, cat(file.getPath()));
+        assertEquals("     1  a" + NL + "     2  b" + NL, cat("-n", file.getPath()));
+
+        file = createFile("crlf.txt", "a\r\n\r\nb\r\n");
+        assertEquals("a" + NL + NL + "b" + NL, cat(file.getPath()));
+        assertEquals("     1  a" + NL + "     2  " + NL + "     3  b" + NL, cat("-n", file.getPath()));
+
+        file = createFile("empty.txt", "");
+        assertEquals("", cat(file.getPath()));
+
+        setInput("a\r\nb");
+        assertEquals("a" + NL + "b" + NL, cat());
+    }
+
+    public void testWorkingDirectory() throws Exception {
+        createFile("relative.txt", "relative\n");
+        shell.getVariables().set("gshell.cwd", dir.getPath());
+
+        assertEquals("relative\n", cat("relative.txt"));
+    }
+
+    public void testTimeoutAbortsBlockedStdin() throws Exception {
+        PipedOutputStream writer = new PipedOutputStream();
+        shell = new Shell(new IO(new PipedInputStream(writer), out, new ByteArrayOutputStream()));
+
+        try {
+            // Written, but never closed, so cat blocks reading for more
+            writer.write("partial".getBytes());
+            writer.flush();
+
+            assertEquals(Command.TIMEOUT, shell.execute(shell.getIO(), 500, "cat", new Object[0]));
+            assertEquals("partial", out.toString());
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Create a named pipe.
+     *
+     * @return  True if created; else false where named pipes are not available
+     */
+    private boolean mkfifo(final File file) throws Exception {
+        try {
+            return Runtime.getRuntime().exec(new String[] { "mkfifo", file.getPath() }).waitFor() == 0;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void testTimeoutAbortsBlockedRead() throws Exception {
+        final File fifo = new File(dir, "fifo");
+        if (!mkfifo(fifo)) {
+            // Skipped where there are no named pipes; see testTimeoutAbortsBlockedStdin
+            return;
+        }
+
+        final OutputStream[] writer = new OutputStream[1];
+
+        // Opening either end blocks until the other is opened
+        Thread opener = new Thread() {
+            public void run() {
+                try {
+                    writer[0] = new FileOutputStream(fifo);
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        opener.start();
+
+        final Object[] result = new Object[1];
+
+        Thread runner = new Thread() {
+            public void run() {
+                try {
+                    result[0] = shell.execute(shell.getIO(), 500, "cat", new Object[] { fifo.getPath() });
+                }
+                catch (Exception e) {
+                    result[0] = e;
+                }
+            }
+        };
+        runner.start();
+
+        opener.join(5000);
+        assertNotNull(writer[0]);
+
+        try {
+            // Written, but never closed, so cat blocks reading for more
+            writer[0].write("partial".getBytes());
+            writer[0].flush();
+
+            runner.join(5000);
+            assertFalse("Blocked read not aborted", runner.isAlive());
+            assertEquals(Command.TIMEOUT, result[0]);
+            assertEquals("partial", out.toString());
+        }
+        finally {
+            writer[0].close();
+        }
+    }
+}
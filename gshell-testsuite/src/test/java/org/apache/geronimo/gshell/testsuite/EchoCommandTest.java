@@ -50,4 +50,19 @@ public class EchoCommandTest
         assertNotNull(line1);
         assertEquals("1", line1);
     }
+
+    public void testOptionsNotRetained() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IO io = new IO(System.in, out);
+
+        // The second echo may reuse the instance from the first, it must not keep -n
+        Shell shell = new Shell(io);
+        shell.execute("echo -n 1; echo 2; echo 3");
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+
+        assertEquals("12", reader.readLine());
+        assertEquals("3", reader.readLine());
+    }
 }